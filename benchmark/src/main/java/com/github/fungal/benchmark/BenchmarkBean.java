@@ -0,0 +1,94 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+/**
+ * The bean used in the generated kernel homes
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class BenchmarkBean
+{
+   /** The name */
+   private String name;
+
+   /** The dependency */
+   private BenchmarkBean dependency;
+
+   /**
+    * Constructor
+    */
+   public BenchmarkBean()
+   {
+      this.name = null;
+      this.dependency = null;
+   }
+
+   /**
+    * Get the name
+    * @return The value
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * Set the name
+    * @param v The value
+    */
+   public void setName(String v)
+   {
+      this.name = v;
+   }
+
+   /**
+    * Get the dependency
+    * @return The value
+    */
+   public BenchmarkBean getDependency()
+   {
+      return dependency;
+   }
+
+   /**
+    * Set the dependency
+    * @param v The value
+    */
+   public void setDependency(BenchmarkBean v)
+   {
+      this.dependency = v;
+   }
+
+   /**
+    * Start
+    */
+   public void start()
+   {
+   }
+
+   /**
+    * Stop
+    */
+   public void stop()
+   {
+   }
+}
@@ -0,0 +1,139 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.Kernel;
+import com.github.fungal.api.KernelFactory;
+import com.github.fungal.api.configuration.KernelConfiguration;
+import com.github.fungal.api.deployer.MainDeployer;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the deploy / undeploy throughput of the generated deployments through
+ * the main deployer of a running kernel. Each operation deploys all deployments
+ * in order, and undeploys them in reverse order
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class DeploymentBenchmark
+{
+   /** The number of beans */
+   @Param({"100", "1000"})
+   public int beans;
+
+   /** The number of deployments */
+   @Param({"10"})
+   public int files;
+
+   /** The shape of the dependency graph */
+   @Param({"CHAIN", "FAN_OUT", "DIAMOND", "RANDOM"})
+   public Shape shape;
+
+   /** Parallel deploy */
+   @Param({"true", "false"})
+   public boolean parallelDeploy;
+
+   /** The home */
+   private KernelHome home;
+
+   /** The kernel */
+   private Kernel kernel;
+
+   /**
+    * Start the kernel
+    * @exception Throwable If the kernel cannot be started
+    */
+   @Setup(Level.Trial)
+   public void startup() throws Throwable
+   {
+      home = KernelHome.create(shape, beans, files, false);
+
+      KernelConfiguration kc = new KernelConfiguration()
+         .name("benchmark")
+         .home(home.getURL())
+         .remoteAccess(false)
+         .hotDeployment(false)
+         .parallelDeploy(parallelDeploy);
+
+      kernel = KernelFactory.create(kc);
+      kernel.startup();
+   }
+
+   /**
+    * Deploy and undeploy the deployments
+    * @return The number of deployments
+    * @exception Throwable If a deployment fails
+    */
+   @Benchmark
+   public int deployUndeploy() throws Throwable
+   {
+      MainDeployer mainDeployer = kernel.getMainDeployer();
+      List<URL> deployments = home.getDeployments();
+
+      for (URL url : deployments)
+      {
+         mainDeployer.deploy(url);
+      }
+
+      for (int i = deployments.size() - 1; i >= 0; i--)
+      {
+         mainDeployer.undeploy(deployments.get(i));
+      }
+
+      return deployments.size();
+   }
+
+   /**
+    * Shutdown the kernel
+    * @exception Throwable If the kernel cannot be stopped
+    */
+   @TearDown(Level.Trial)
+   public void shutdown() throws Throwable
+   {
+      if (kernel != null)
+         kernel.shutdown();
+
+      home.delete();
+   }
+}
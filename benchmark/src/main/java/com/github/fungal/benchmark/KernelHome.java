@@ -0,0 +1,271 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.util.FileUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A generated kernel home.
+ *
+ * The beans are numbered from <code>0</code>, and a bean only depends on beans
+ * with a lower number. The beans are split into deployments of consecutive beans,
+ * so the deployments can be deployed in order
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class KernelHome
+{
+   /** The seed for the random graphs */
+   private static final long SEED = 42L;
+
+   /** The maximum number of dependencies for a bean in a random graph */
+   private static final int RANDOM_DEPENDENCIES = 3;
+
+   /** The root */
+   private File root;
+
+   /** The deployments */
+   private List<URL> deployments;
+
+   /**
+    * Constructor
+    * @param root The root
+    * @param deployments The deployments
+    */
+   private KernelHome(File root, List<URL> deployments)
+   {
+      this.root = root;
+      this.deployments = deployments;
+   }
+
+   /**
+    * Create a kernel home
+    * @param shape The shape of the dependency graph
+    * @param beans The number of beans
+    * @param files The number of deployments
+    * @param deploy Should the deployments be deployed during startup; otherwise they are
+    *               placed in the <code>benchmark</code> directory
+    * @return The home
+    * @exception IOException If the home cannot be created
+    */
+   public static KernelHome create(Shape shape, int beans, int files, boolean deploy) throws IOException
+   {
+      if (shape == null)
+         throw new IllegalArgumentException("Shape is null");
+
+      if (beans <= 0)
+         throw new IllegalArgumentException("Beans is less than 1");
+
+      if (files <= 0)
+         throw new IllegalArgumentException("Files is less than 1");
+
+      File root = File.createTempFile("fungal-benchmark", "");
+      if (!root.delete() || !root.mkdirs())
+         throw new IOException("Unable to create " + root);
+
+      new File(root, "system").mkdirs();
+      new File(root, "deploy").mkdirs();
+      new File(root, "config").mkdirs();
+      new File(root, "lib").mkdirs();
+
+      File directory = new File(root, deploy ? "deploy" : "benchmark");
+      directory.mkdirs();
+
+      Random random = new Random(SEED);
+      List<URL> deployments = new ArrayList<URL>(files);
+      int perFile = (beans + files - 1) / files;
+
+      for (int f = 0; f < files && f * perFile < beans; f++)
+      {
+         File file = new File(directory, "beans-" + f + ".xml");
+         PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+         try
+         {
+            pw.println("<deployment>");
+
+            for (int b = f * perFile; b < Math.min(beans, (f + 1) * perFile); b++)
+            {
+               List<Integer> dependencies = getDependencies(shape, b, random);
+
+               pw.println("  <bean name=\"" + getName(b) + "\" class=\"" + BenchmarkBean.class.getName() + "\">");
+               pw.println("    <property name=\"name\">" + getName(b) + "</property>");
+
+               for (int i = 0; i < dependencies.size(); i++)
+               {
+                  if (i == 0)
+                  {
+                     pw.println("    <property name=\"dependency\"><inject bean=\"" +
+                                getName(dependencies.get(i).intValue()) + "\"/></property>");
+                  }
+                  else
+                  {
+                     pw.println("    <depends>" + getName(dependencies.get(i).intValue()) + "</depends>");
+                  }
+               }
+
+               pw.println("  </bean>");
+            }
+
+            pw.println("</deployment>");
+         }
+         finally
+         {
+            pw.close();
+         }
+
+         deployments.add(file.toURI().toURL());
+      }
+
+      return new KernelHome(root, Collections.unmodifiableList(deployments));
+   }
+
+   /**
+    * Get the name of a bean
+    * @param bean The number of the bean
+    * @return The name
+    */
+   public static String getName(int bean)
+   {
+      return "Bean" + bean;
+   }
+
+   /**
+    * Get the dependencies of a bean
+    * @param shape The shape of the dependency graph
+    * @param bean The number of the bean
+    * @param random The random number generator
+    * @return The numbers of the beans that the bean depends on
+    */
+   private static List<Integer> getDependencies(Shape shape, int bean, Random random)
+   {
+      List<Integer> result = new ArrayList<Integer>(RANDOM_DEPENDENCIES);
+
+      if (bean == 0)
+         return result;
+
+      switch (shape)
+      {
+         case CHAIN:
+            result.add(Integer.valueOf(bean - 1));
+            break;
+
+         case FAN_OUT:
+            result.add(Integer.valueOf(0));
+            break;
+
+         case DIAMOND:
+            int position = bean % 4;
+
+            if (position == 0)
+            {
+               result.add(Integer.valueOf(bean - 1));
+            }
+            else if (position == 3)
+            {
+               result.add(Integer.valueOf(bean - 1));
+               result.add(Integer.valueOf(bean - 2));
+            }
+            else
+            {
+               result.add(Integer.valueOf(bean - position));
+            }
+            break;
+
+         case RANDOM:
+            Set<Integer> s = new LinkedHashSet<Integer>(RANDOM_DEPENDENCIES);
+            int count = 1 + random.nextInt(RANDOM_DEPENDENCIES);
+
+            for (int i = 0; i < count; i++)
+            {
+               s.add(Integer.valueOf(random.nextInt(bean)));
+            }
+
+            result.addAll(s);
+            break;
+
+         default:
+            throw new IllegalArgumentException("Unknown shape: " + shape);
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the URL of the home
+    * @return The value
+    */
+   public URL getURL()
+   {
+      try
+      {
+         return root.toURI().toURL();
+      }
+      catch (IOException ioe)
+      {
+         throw new IllegalStateException(ioe.getMessage(), ioe);
+      }
+   }
+
+   /**
+    * Get the deployments in deployment order
+    * @return The value
+    */
+   public List<URL> getDeployments()
+   {
+      return deployments;
+   }
+
+   /**
+    * Delete the home
+    * @exception IOException If the home cannot be deleted
+    */
+   public void delete() throws IOException
+   {
+      new FileUtil().delete(root);
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder("KernelHome[");
+      sb = sb.append("Root=" + root + ",");
+      sb = sb.append("Deployments=" + deployments.size());
+      sb = sb.append("]");
+
+      return sb.toString();
+   }
+}
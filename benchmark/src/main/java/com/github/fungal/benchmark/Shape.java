@@ -0,0 +1,41 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+/**
+ * The shape of the bean dependency graph in a generated kernel home
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public enum Shape
+{
+   /** Each bean depends on the previous bean */
+   CHAIN,
+
+   /** All beans depend on the first bean */
+   FAN_OUT,
+
+   /** Groups of four beans; two beans depend on the top bean, and the bottom bean depends on both */
+   DIAMOND,
+
+   /** Each bean depends on up to three random beans defined before it */
+   RANDOM;
+}
@@ -0,0 +1,142 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.benchmark;
+
+import com.github.fungal.api.Kernel;
+import com.github.fungal.api.KernelFactory;
+import com.github.fungal.api.configuration.KernelConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time from kernel startup until all beans in the generated home
+ * are started. Run with <code>-prof gc</code> and divide the normalized allocation
+ * rate by the number of beans to get the allocation per bean
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark
+{
+   /** The number of beans */
+   @Param({"100", "1000"})
+   public int beans;
+
+   /** The number of deployments */
+   @Param({"10"})
+   public int files;
+
+   /** The shape of the dependency graph */
+   @Param({"CHAIN", "FAN_OUT", "DIAMOND", "RANDOM"})
+   public Shape shape;
+
+   /** Parallel deploy */
+   @Param({"true", "false"})
+   public boolean parallelDeploy;
+
+   /** The home */
+   private KernelHome home;
+
+   /** The kernel */
+   private Kernel kernel;
+
+   /**
+    * Create the home
+    * @exception Exception If the home cannot be created
+    */
+   @Setup(Level.Trial)
+   public void createHome() throws Exception
+   {
+      home = KernelHome.create(shape, beans, files, true);
+   }
+
+   /**
+    * Create the kernel
+    * @exception Exception If the kernel cannot be created
+    */
+   @Setup(Level.Invocation)
+   public void createKernel() throws Exception
+   {
+      KernelConfiguration kc = new KernelConfiguration()
+         .name("benchmark")
+         .home(home.getURL())
+         .remoteAccess(false)
+         .hotDeployment(false)
+         .parallelDeploy(parallelDeploy);
+
+      kernel = KernelFactory.create(kc);
+   }
+
+   /**
+    * Start the kernel
+    * @return The kernel
+    * @exception Throwable If the kernel cannot be started
+    */
+   @Benchmark
+   public Kernel startup() throws Throwable
+   {
+      kernel.startup();
+
+      return kernel;
+   }
+
+   /**
+    * Shutdown the kernel
+    * @exception Throwable If the kernel cannot be stopped
+    */
+   @TearDown(Level.Invocation)
+   public void shutdown() throws Throwable
+   {
+      if (kernel != null)
+         kernel.shutdown();
+
+      kernel = null;
+   }
+
+   /**
+    * Delete the home
+    * @exception Exception If the home cannot be deleted
+    */
+   @TearDown(Level.Trial)
+   public void deleteHome() throws Exception
+   {
+      home.delete();
+   }
+}
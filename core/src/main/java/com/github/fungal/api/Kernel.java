@@ -25,6 +25,10 @@ import com.github.fungal.api.deployer.MainDeployer;
 import com.github.fungal.spi.deployers.Deployment;
 
 import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.MBeanServer;
 
@@ -63,6 +67,13 @@ public interface Kernel
     */
    public Deployment getDeployment(URL deployment);
 
+   /**
+    * Get the deployment units whose URL starts with a prefix
+    * @param prefix The prefix, f.ex. the URL of a directory
+    * @return The deployment units in deployment order
+    */
+   public List<Deployment> getDeployments(URL prefix);
+
    /**
     * Get a bean
     * @param name The bean name
@@ -72,6 +83,32 @@ public interface Kernel
     */
    public <T> T getBean(String name, Class<T> expectedType) throws Throwable;
 
+   /**
+    * Get the beans of a type
+    * @param type The class or interface of the beans
+    * @return The bean instances by name
+    */
+   public <T> Map<String, T> getBeansOfType(Class<T> type);
+
+   /**
+    * Get a bean once it has been started
+    * @param name The bean name
+    * @param expectedType The expected type for the bean
+    * @return The future for the bean instance; the future fails if the bean fails to start
+    */
+   public <T> Future<T> getBeanAsync(String name, Class<T> expectedType);
+
+   /**
+    * Wait for a bean to be started
+    * @param name The bean name
+    * @param expectedType The expected type for the bean
+    * @param timeout The maximum time to wait
+    * @param unit The time unit of the timeout
+    * @return The bean instance
+    * @exception Throwable If the bean fails to start, or isn't started within the timeout
+    */
+   public <T> T awaitBean(String name, Class<T> expectedType, long timeout, TimeUnit unit) throws Throwable;
+
    /**
     * Startup
     * @exception Throwable Thrown if an error occurs
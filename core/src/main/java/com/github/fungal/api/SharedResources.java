@@ -0,0 +1,617 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api;
+
+import com.github.fungal.deployment.Deployment;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * The resources shared by kernels in the same virtual machine.
+ *
+ * Kernels configured with the same instance use the same executor, and share
+ * the parsed deployment descriptors and the manifests of the archives on their
+ * class paths. Each kernel starts its beans with its own bounded number of the
+ * threads of the executor, so a bean that blocks only holds up its own kernel.
+ * Descriptors are shared by content, so a descriptor deployed by several
+ * kernels is only parsed once, and a descriptor is released once no URL has
+ * its content. The class metadata of a bean class is always shared by the
+ * kernels that load it from the same class loader.
+ *
+ * The resources must be shut down once all the kernels using them have been
+ * shut down.
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ * @see com.github.fungal.api.configuration.KernelConfiguration#sharedResources(SharedResources)
+ */
+public final class SharedResources
+{
+   /** The executor service */
+   private ExecutorService executorService;
+
+   /** Is the executor service owned by the shared resources */
+   private boolean ownExecutorService;
+
+   /** The parsed deployment descriptors by content hash */
+   private ConcurrentMap<String, Deployment> descriptors;
+
+   /** The content hash of the descriptors by URL */
+   private Map<String, String> urls;
+
+   /** The archives by path */
+   private ConcurrentMap<String, Archive> archives;
+
+   /** Hits */
+   private AtomicLong hits;
+
+   /** Misses */
+   private AtomicLong misses;
+
+   /**
+    * Constructor; the executor service is created, and shut down with the shared resources
+    */
+   public SharedResources()
+   {
+      this(new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                                  new SynchronousQueue<Runnable>(), new SharedThreadFactory("fungal-shared-")), true);
+   }
+
+   /**
+    * Constructor; the executor service must not be bounded, as deployments wait for their
+    * beans, and isn't shut down with the shared resources
+    * @param executorService The executor service
+    */
+   public SharedResources(ExecutorService executorService)
+   {
+      this(executorService, false);
+   }
+
+   /**
+    * Constructor
+    * @param executorService The executor service
+    * @param ownExecutorService Is the executor service owned by the shared resources
+    */
+   private SharedResources(ExecutorService executorService, boolean ownExecutorService)
+   {
+      if (executorService == null)
+         throw new IllegalArgumentException("ExecutorService is null");
+
+      this.executorService = executorService;
+      this.ownExecutorService = ownExecutorService;
+      this.descriptors = new ConcurrentHashMap<String, Deployment>();
+      this.urls = new HashMap<String, String>();
+      this.archives = new ConcurrentHashMap<String, Archive>();
+      this.hits = new AtomicLong(0);
+      this.misses = new AtomicLong(0);
+   }
+
+   /**
+    * Get the executor service
+    * @return The executor service
+    */
+   public ExecutorService getExecutorService()
+   {
+      return executorService;
+   }
+
+   /**
+    * Create an executor service for the beans of a kernel. The beans are started by
+    * the threads of the shared executor service, but no more than the specified number
+    * of beans of the kernel are started at the same time. Shutting down the executor
+    * service doesn't shut down the shared executor service
+    * @param threads The maximum number of beans started at the same time
+    * @return The executor service
+    */
+   public ExecutorService newBeanExecutorService(int threads)
+   {
+      if (threads <= 0)
+         throw new IllegalArgumentException("Threads is invalid");
+
+      return new BeanExecutorService(executorService, threads);
+   }
+
+   /**
+    * Get a parsed deployment descriptor
+    * @param url The URL of the descriptor
+    * @param hash The hash of the content of the descriptor
+    * @return The descriptor; <code>null</code> if it hasn't been parsed
+    */
+   public Deployment getDescriptor(URL url, String hash)
+   {
+      if (url == null)
+         throw new IllegalArgumentException("URL is null");
+
+      if (hash == null)
+         throw new IllegalArgumentException("Hash is null");
+
+      Deployment deployment = null;
+
+      synchronized (urls)
+      {
+         deployment = descriptors.get(hash);
+
+         if (deployment != null)
+            setHash(url, hash);
+      }
+
+      if (deployment != null)
+      {
+         hits.incrementAndGet();
+      }
+      else
+      {
+         misses.incrementAndGet();
+      }
+
+      return deployment;
+   }
+
+   /**
+    * Add a parsed deployment descriptor; the descriptor must not be changed afterwards.
+    * The descriptor previously parsed for the URL is released, unless another URL has
+    * the same content
+    * @param url The URL of the descriptor
+    * @param hash The hash of the content of the descriptor
+    * @param deployment The descriptor
+    * @return The shared descriptor, which is the existing one if it was added by another kernel
+    */
+   public Deployment addDescriptor(URL url, String hash, Deployment deployment)
+   {
+      if (url == null)
+         throw new IllegalArgumentException("URL is null");
+
+      if (hash == null)
+         throw new IllegalArgumentException("Hash is null");
+
+      if (deployment == null)
+         throw new IllegalArgumentException("Deployment is null");
+
+      synchronized (urls)
+      {
+         Deployment existing = descriptors.putIfAbsent(hash, deployment);
+         setHash(url, hash);
+
+         return existing != null ? existing : deployment;
+      }
+   }
+
+   /**
+    * Set the content hash of a URL, and release the descriptor of the previous
+    * content if no other URL has it; the caller must hold the lock on the URLs
+    * @param url The URL
+    * @param hash The hash of the content
+    */
+   private void setHash(URL url, String hash)
+   {
+      String previous = urls.put(url.toExternalForm(), hash);
+
+      if (previous != null && !previous.equals(hash) && !urls.containsValue(previous))
+         descriptors.remove(previous);
+   }
+
+   /**
+    * Get the manifest of an archive; the manifest is read again if the size
+    * or the modification time of the archive has changed
+    * @param file The archive
+    * @return The manifest; <code>null</code> if the archive doesn't have a manifest
+    * @exception IOException Thrown if the archive can't be read
+    */
+   public Manifest getManifest(File file) throws IOException
+   {
+      if (file == null)
+         throw new IllegalArgumentException("File is null");
+
+      String path = file.getAbsolutePath();
+      long lastModified = file.lastModified();
+      long length = file.length();
+
+      Archive archive = archives.get(path);
+
+      if (archive != null && archive.lastModified == lastModified && archive.length == length)
+      {
+         hits.incrementAndGet();
+         return archive.manifest;
+      }
+
+      misses.incrementAndGet();
+
+      JarFile jarFile = null;
+      try
+      {
+         jarFile = new JarFile(file);
+         archive = new Archive(lastModified, length, jarFile.getManifest());
+      }
+      finally
+      {
+         if (jarFile != null)
+         {
+            try
+            {
+               jarFile.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+
+      archives.put(path, archive);
+
+      return archive.manifest;
+   }
+
+   /**
+    * Get the number of parsed deployment descriptors
+    * @return The value
+    */
+   public int getDescriptorCount()
+   {
+      return descriptors.size();
+   }
+
+   /**
+    * Get the number of archives
+    * @return The value
+    */
+   public int getArchiveCount()
+   {
+      return archives.size();
+   }
+
+   /**
+    * Get the number of lookups served by the shared resources
+    * @return The value
+    */
+   public long getHitCount()
+   {
+      return hits.get();
+   }
+
+   /**
+    * Get the number of lookups that had to parse or read the resource
+    * @return The value
+    */
+   public long getMissCount()
+   {
+      return misses.get();
+   }
+
+   /**
+    * Shutdown; the executor service is shut down if it was created by the shared resources
+    */
+   public void shutdown()
+   {
+      if (ownExecutorService)
+         executorService.shutdown();
+
+      synchronized (urls)
+      {
+         descriptors.clear();
+         urls.clear();
+      }
+
+      archives.clear();
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   @Override
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder("SharedResources[");
+      sb = sb.append("ExecutorService=" + executorService + ",");
+      sb = sb.append("Descriptors=" + descriptors.size() + ",");
+      sb = sb.append("Archives=" + archives.size() + ",");
+      sb = sb.append("Hits=" + hits.get() + ",");
+      sb = sb.append("Misses=" + misses.get());
+      sb = sb.append("]");
+
+      return sb.toString();
+   }
+
+   /**
+    * An archive
+    */
+   private static class Archive
+   {
+      /** The modification time */
+      private long lastModified;
+
+      /** The size */
+      private long length;
+
+      /** The manifest; may be <code>null</code> */
+      private Manifest manifest;
+
+      /**
+       * Constructor
+       * @param lastModified The modification time
+       * @param length The size
+       * @param manifest The manifest
+       */
+      Archive(long lastModified, long length, Manifest manifest)
+      {
+         this.lastModified = lastModified;
+         this.length = length;
+         this.manifest = manifest;
+      }
+   }
+
+   /**
+    * The executor service for the beans of a kernel, which runs its tasks
+    * with a bounded number of the threads of the shared executor service
+    */
+   private static class BeanExecutorService extends AbstractExecutorService
+   {
+      /** The shared executor */
+      private Executor executor;
+
+      /** The maximum number of active workers */
+      private int threads;
+
+      /** The tasks */
+      private Queue<Runnable> tasks;
+
+      /** The number of active workers */
+      private AtomicInteger active;
+
+      /** Is shutdown */
+      private volatile boolean shutdown;
+
+      /**
+       * Constructor
+       * @param executor The shared executor
+       * @param threads The maximum number of active workers
+       */
+      BeanExecutorService(Executor executor, int threads)
+      {
+         this.executor = executor;
+         this.threads = threads;
+         this.tasks = new ConcurrentLinkedQueue<Runnable>();
+         this.active = new AtomicInteger(0);
+         this.shutdown = false;
+      }
+
+      /**
+       * Execute a task
+       * @param command The task
+       */
+      public void execute(Runnable command)
+      {
+         if (command == null)
+            throw new NullPointerException("Command is null");
+
+         if (shutdown)
+            throw new RejectedExecutionException("BeanExecutorService is shutdown");
+
+         tasks.offer(command);
+         startWorker();
+      }
+
+      /**
+       * Start a worker on the shared executor, unless all workers are active
+       */
+      private void startWorker()
+      {
+         while (!tasks.isEmpty())
+         {
+            int current = active.get();
+
+            if (current >= threads)
+               return;
+
+            if (active.compareAndSet(current, current + 1))
+            {
+               try
+               {
+                  executor.execute(new Worker());
+               }
+               catch (RejectedExecutionException ree)
+               {
+                  workerDone();
+                  throw ree;
+               }
+               return;
+            }
+         }
+      }
+
+      /**
+       * A worker is done
+       */
+      private void workerDone()
+      {
+         if (active.decrementAndGet() == 0 && shutdown && tasks.isEmpty())
+         {
+            synchronized (this)
+            {
+               notifyAll();
+            }
+         }
+      }
+
+      /**
+       * Shutdown
+       */
+      public void shutdown()
+      {
+         shutdown = true;
+
+         if (isTerminated())
+         {
+            synchronized (this)
+            {
+               notifyAll();
+            }
+         }
+      }
+
+      /**
+       * Shutdown now
+       * @return The tasks that weren't started
+       */
+      public List<Runnable> shutdownNow()
+      {
+         shutdown();
+
+         List<Runnable> result = new ArrayList<Runnable>();
+         Runnable task = tasks.poll();
+         while (task != null)
+         {
+            result.add(task);
+            task = tasks.poll();
+         }
+
+         return result;
+      }
+
+      /**
+       * Is shutdown
+       * @return The value
+       */
+      public boolean isShutdown()
+      {
+         return shutdown;
+      }
+
+      /**
+       * Is terminated
+       * @return The value
+       */
+      public boolean isTerminated()
+      {
+         return shutdown && active.get() == 0 && tasks.isEmpty();
+      }
+
+      /**
+       * Await termination
+       * @param timeout The timeout
+       * @param unit The time unit
+       * @return True if terminated; otherwise false
+       * @exception InterruptedException Thrown if interrupted
+       */
+      public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+      {
+         long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+         while (!isTerminated())
+         {
+            long remaining = deadline - System.nanoTime();
+
+            if (remaining <= 0)
+               return false;
+
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+         }
+
+         return true;
+      }
+
+      /**
+       * A worker that runs tasks until there are none left
+       */
+      class Worker implements Runnable
+      {
+         /**
+          * Run
+          */
+         public void run()
+         {
+            try
+            {
+               Runnable task = tasks.poll();
+               while (task != null)
+               {
+                  task.run();
+                  task = tasks.poll();
+               }
+            }
+            finally
+            {
+               workerDone();
+
+               // A task may have been added after the last poll, or the task failed
+               if (!tasks.isEmpty())
+                  startWorker();
+            }
+         }
+      }
+   }
+
+   /**
+    * The thread factory for the shared executor services
+    */
+   private static class SharedThreadFactory implements ThreadFactory
+   {
+      /** The prefix of the thread names */
+      private String prefix;
+
+      /** The thread number */
+      private AtomicInteger threadNumber;
+
+      /**
+       * Constructor
+       * @param prefix The prefix of the thread names
+       */
+      SharedThreadFactory(String prefix)
+      {
+         this.prefix = prefix;
+         this.threadNumber = new AtomicInteger(1);
+      }
+
+      /**
+       * Create a new thread
+       * @param r The runnable
+       * @return The thread
+       */
+      public Thread newThread(Runnable r)
+      {
+         Thread t = new Thread(r, prefix + threadNumber.getAndIncrement());
+         t.setDaemon(true);
+         return t;
+      }
+   }
+}
@@ -20,6 +20,8 @@
 
 package com.github.fungal.api.classloading;
 
+import com.github.fungal.api.SharedResources;
+
 import java.lang.reflect.Constructor;
 import java.net.URL;
 
@@ -68,6 +70,23 @@ public class ClassLoaderFactory
     */
    public static synchronized KernelClassLoader create(int type, URL[] urls, ClassLoader parent)
       throws IllegalArgumentException, IllegalStateException
+   {
+      return create(type, urls, parent, null);
+   }
+
+   /**
+    * Create a class loader
+    * @param type The class loader type
+    * @param urls The resource URLs
+    * @param parent The parent class loader
+    * @param sharedResources The resources shared with other kernels; may be <code>null</code>
+    * @return The kernel class loader
+    * @exception IllegalArgumentException Thrown if unknown type is passed
+    * @exception IllegalStateException Thrown if a classloader can't be created
+    */
+   public static synchronized KernelClassLoader create(int type, URL[] urls, ClassLoader parent,
+                                                       SharedResources sharedResources)
+      throws IllegalArgumentException, IllegalStateException
    {
       if (type == TYPE_PARENT_FIRST)
       {
@@ -102,9 +121,10 @@ public class ClassLoaderFactory
          try
          {
             Class<?> clz = Class.forName(CLASSLOADER_EXPORT, true, ClassLoaderFactory.class.getClassLoader());
-            Constructor<?> constructor = clz.getDeclaredConstructor(URL[].class, ClassLoader.class);
+            Constructor<?> constructor =
+               clz.getDeclaredConstructor(URL[].class, ClassLoader.class, SharedResources.class);
 
-            return (KernelClassLoader)constructor.newInstance(urls, parent);
+            return (KernelClassLoader)constructor.newInstance(urls, parent, sharedResources);
          }
          catch (Throwable t)
          {
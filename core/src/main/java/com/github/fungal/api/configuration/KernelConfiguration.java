@@ -20,8 +20,10 @@
 
 package com.github.fungal.api.configuration;
 
+import com.github.fungal.api.SharedResources;
 import com.github.fungal.api.classloading.ClassLoaderFactory;
 import com.github.fungal.api.events.EventListener;
+import com.github.fungal.api.events.LifecycleListener;
 import com.github.fungal.api.remote.Command;
 
 import java.net.URL;
@@ -32,8 +34,10 @@ import java.util.List;
 /**
  * Kernel configuration implementation
  * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ * @see com.github.fungal.api.SharedResources
  * @see com.github.fungal.api.classloading.ClassLoaderFactory
  * @see com.github.fungal.api.events.EventListener
+ * @see com.github.fungal.api.events.LifecycleListener
  * @see com.github.fungal.api.remote.Command
  */
 public class KernelConfiguration
@@ -65,6 +69,33 @@ public class KernelConfiguration
    /** Do parallel deployment in deploy */
    private boolean parallelDeploy;
 
+   /** Use the fork/join deployment engine */
+   private boolean forkJoinDeploy;
+
+   /** Schedule beans while the deployment descriptor is parsed */
+   private boolean streamingDeploy;
+
+   /** Do parallel shutdown of beans */
+   private boolean parallelShutdown;
+
+   /** Bean shutdown timeout in seconds */
+   private int beanShutdownTimeout;
+
+   /** Call the deployer phases in parallel */
+   private boolean parallelDeployerPhases;
+
+   /** Deployer phases timeout in seconds */
+   private int deployerPhasesTimeout;
+
+   /** Lazy beans */
+   private boolean lazyBeans;
+
+   /** Lazy bean timeout in seconds */
+   private int lazyBeanTimeout;
+
+   /** Deployment plan */
+   private boolean deploymentPlan;
+
    /** Bind address */
    private String bindAddress;
 
@@ -86,6 +117,12 @@ public class KernelConfiguration
    /** Event listeners */
    private List<EventListener> eventListeners;
 
+   /** Lifecycle listeners */
+   private List<LifecycleListener> lifecycleListeners;
+
+   /** Event queue size */
+   private int eventQueueSize;
+
    /** Commands */
    private List<Command> commands;
 
@@ -104,6 +141,36 @@ public class KernelConfiguration
    /** RMI server port */
    private int rmiServerPort;
 
+   /** Use virtual threads */
+   private boolean virtualThreads;
+
+   /** Thread pool: Core size */
+   private int threadPoolCoreSize;
+
+   /** Thread pool: Max size */
+   private int threadPoolMaxSize;
+
+   /** Thread pool: Keep alive in seconds */
+   private int threadPoolKeepAlive;
+
+   /** Thread pool: Queue */
+   private ThreadPoolQueue threadPoolQueue;
+
+   /** Thread pool: Queue capacity */
+   private int threadPoolQueueCapacity;
+
+   /** Thread pool: Rejection policy */
+   private RejectionPolicy threadPoolRejectionPolicy;
+
+   /** Stall threshold in seconds */
+   private int stallThreshold;
+
+   /** Fail stalled beans */
+   private boolean failStalledBeans;
+
+   /** Shared resources */
+   private SharedResources sharedResources;
+
    /**
     * Constructor
     */
@@ -118,6 +185,15 @@ public class KernelConfiguration
       deploy = "deploy";
       repository = "repository";
       parallelDeploy = true;
+      forkJoinDeploy = false;
+      streamingDeploy = false;
+      parallelShutdown = true;
+      beanShutdownTimeout = 0;
+      parallelDeployerPhases = false;
+      deployerPhasesTimeout = 0;
+      lazyBeans = false;
+      lazyBeanTimeout = 30;
+      deploymentPlan = false;
       bindAddress = null;
       threadGroup = null;
       remoteAccess = true;
@@ -125,12 +201,24 @@ public class KernelConfiguration
       hotDeployment = true;
       hotDeploymentInterval = 5;
       eventListeners = null;
+      lifecycleListeners = null;
+      eventQueueSize = 4096;
       commands = null;
       deploymentOrder = null;
       usePlatformMBeanServer = false;
       remoteJmxAccess = false;
       rmiRegistryPort = 1203;
       rmiServerPort = 1204;
+      virtualThreads = false;
+      threadPoolCoreSize = Runtime.getRuntime().availableProcessors();
+      threadPoolMaxSize = Integer.MAX_VALUE;
+      threadPoolKeepAlive = 60;
+      threadPoolQueue = ThreadPoolQueue.SYNCHRONOUS;
+      threadPoolQueueCapacity = 1024;
+      threadPoolRejectionPolicy = RejectionPolicy.ABORT;
+      stallThreshold = 0;
+      failStalledBeans = false;
+      sharedResources = null;
    }
 
    /**
@@ -324,6 +412,207 @@ public class KernelConfiguration
       return parallelDeploy;
    }
 
+   /**
+    * Set if deployment units and beans should be deployed by the fork/join
+    * deployment engine; default <code>false</code>
+    * @param value The value
+    * @return The configuration
+    */
+   public KernelConfiguration forkJoinDeploy(boolean value)
+   {
+      this.forkJoinDeploy = value;
+
+      return this;
+   }
+
+   /**
+    * Get if deployment units and beans should be deployed by the fork/join
+    * deployment engine
+    * @return The value
+    */
+   public boolean isForkJoinDeploy()
+   {
+      return forkJoinDeploy;
+   }
+
+   /**
+    * Set if beans should be scheduled while the deployment descriptor is parsed,
+    * instead of validating all the descriptors of a startup stage first. Not used
+    * for descriptors in the deployment plan; default <code>false</code>
+    * @param value The value
+    * @return The configuration
+    */
+   public KernelConfiguration streamingDeploy(boolean value)
+   {
+      this.streamingDeploy = value;
+
+      return this;
+   }
+
+   /**
+    * Get if beans should be scheduled while the deployment descriptor is parsed
+    * @return The value
+    */
+   public boolean isStreamingDeploy()
+   {
+      return streamingDeploy;
+   }
+
+   /**
+    * Set if beans should be stopped in parallel in reverse dependency
+    * order; default <code>true</code>
+    * @param value The value
+    * @return The configuration
+    */
+   public KernelConfiguration parallelShutdown(boolean value)
+   {
+      this.parallelShutdown = value;
+
+      return this;
+   }
+
+   /**
+    * Get if beans should be stopped in parallel in reverse dependency order
+    * @return The value
+    */
+   public boolean isParallelShutdown()
+   {
+      return parallelShutdown;
+   }
+
+   /**
+    * Set the time in seconds that the kernel waits for a bean to stop before
+    * it is reported as a straggler; <code>0</code> waits forever; default <code>0</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration beanShutdownTimeout(int v)
+   {
+      this.beanShutdownTimeout = v;
+
+      return this;
+   }
+
+   /**
+    * Get the time in seconds that the kernel waits for a bean to stop
+    * @return The value
+    */
+   public int getBeanShutdownTimeout()
+   {
+      return beanShutdownTimeout;
+   }
+
+   /**
+    * Set if the deployer phases beans should be called in parallel on the
+    * kernel thread pool; default <code>false</code>
+    * @param value The value
+    * @return The configuration
+    */
+   public KernelConfiguration parallelDeployerPhases(boolean value)
+   {
+      this.parallelDeployerPhases = value;
+
+      return this;
+   }
+
+   /**
+    * Get if the deployer phases beans should be called in parallel
+    * @return The value
+    */
+   public boolean isParallelDeployerPhases()
+   {
+      return parallelDeployerPhases;
+   }
+
+   /**
+    * Set the time in seconds that the kernel waits for a deployer phase when
+    * called in parallel; <code>0</code> waits forever; default <code>0</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration deployerPhasesTimeout(int v)
+   {
+      this.deployerPhasesTimeout = v;
+
+      return this;
+   }
+
+   /**
+    * Get the time in seconds that the kernel waits for a deployer phase
+    * @return The value
+    */
+   public int getDeployerPhasesTimeout()
+   {
+      return deployerPhasesTimeout;
+   }
+
+   /**
+    * Set if beans should be created on first use, unless the bean
+    * specifies otherwise; default <code>false</code>
+    * @param value The value
+    * @return The configuration
+    */
+   public KernelConfiguration lazyBeans(boolean value)
+   {
+      this.lazyBeans = value;
+
+      return this;
+   }
+
+   /**
+    * Get if beans should be created on first use
+    * @return The value
+    */
+   public boolean isLazyBeans()
+   {
+      return lazyBeans;
+   }
+
+   /**
+    * Set the number of seconds <code>getBean</code> waits for a lazy bean to start,
+    * when the bean waits for its dependencies; default <code>30</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration lazyBeanTimeout(int v)
+   {
+      this.lazyBeanTimeout = v;
+
+      return this;
+   }
+
+   /**
+    * Get the number of seconds <code>getBean</code> waits for a lazy bean to start
+    * @return The value
+    */
+   public int getLazyBeanTimeout()
+   {
+      return lazyBeanTimeout;
+   }
+
+   /**
+    * Set if the kernel should store a deployment plan under the home directory
+    * after startup, and reuse it for unchanged deployment descriptors on the
+    * next startup; default <code>false</code>
+    * @param value The value
+    * @return The configuration
+    */
+   public KernelConfiguration deploymentPlan(boolean value)
+   {
+      this.deploymentPlan = value;
+
+      return this;
+   }
+
+   /**
+    * Get if the kernel should use a deployment plan
+    * @return The value
+    */
+   public boolean isDeploymentPlan()
+   {
+      return deploymentPlan;
+   }
+
    /**
     * Set the bind address; default <code>null</code>
     * @param ba The value
@@ -477,6 +766,56 @@ public class KernelConfiguration
       return Collections.unmodifiableList(eventListeners);
    }
 
+   /**
+    * Add a lifecycle listener
+    * @param ll The lifecycle listener
+    * @return The configuration
+    */
+   public KernelConfiguration lifecycleListener(LifecycleListener ll)
+   {
+      if (lifecycleListeners == null)
+         lifecycleListeners = new ArrayList<LifecycleListener>(1);
+
+      lifecycleListeners.add(ll);
+
+      return this;
+   }
+
+   /**
+    * Get the lifecycle listeners
+    * @return The value
+    */
+   public List<LifecycleListener> getLifecycleListeners()
+   {
+      if (lifecycleListeners == null)
+         return Collections.emptyList();
+
+      return Collections.unmodifiableList(lifecycleListeners);
+   }
+
+   /**
+    * Set the number of lifecycle notifications that can be queued for the
+    * lifecycle listeners; notifications are dropped when the queue is full;
+    * default <code>4096</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration eventQueueSize(int v)
+   {
+      this.eventQueueSize = v;
+
+      return this;
+   }
+
+   /**
+    * Get the number of lifecycle notifications that can be queued
+    * @return The value
+    */
+   public int getEventQueueSize()
+   {
+      return eventQueueSize;
+   }
+
    /**
     * Add a command
     * @param c The command
@@ -611,4 +950,219 @@ public class KernelConfiguration
    {
       return rmiServerPort;
    }
+
+   /**
+    * Use virtual threads for the kernel thread pool if the virtual machine
+    * supports them; default <code>false</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration virtualThreads(boolean v)
+   {
+      this.virtualThreads = v;
+
+      return this;
+   }
+
+   /**
+    * Use virtual threads ?
+    * @return The value
+    */
+   public boolean isVirtualThreads()
+   {
+      return virtualThreads;
+   }
+
+   /**
+    * Set the number of core threads in the kernel thread pool; default is the number of processors
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration threadPoolCoreSize(int v)
+   {
+      this.threadPoolCoreSize = v;
+
+      return this;
+   }
+
+   /**
+    * Get the number of core threads in the kernel thread pool
+    * @return The value
+    */
+   public int getThreadPoolCoreSize()
+   {
+      return threadPoolCoreSize;
+   }
+
+   /**
+    * Set the maximum number of threads in the kernel thread pool; default <code>Integer.MAX_VALUE</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration threadPoolMaxSize(int v)
+   {
+      this.threadPoolMaxSize = v;
+
+      return this;
+   }
+
+   /**
+    * Get the maximum number of threads in the kernel thread pool
+    * @return The value
+    */
+   public int getThreadPoolMaxSize()
+   {
+      return threadPoolMaxSize;
+   }
+
+   /**
+    * Set the keep alive in seconds for idle threads in the kernel thread pool; default <code>60</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration threadPoolKeepAlive(int v)
+   {
+      this.threadPoolKeepAlive = v;
+
+      return this;
+   }
+
+   /**
+    * Get the keep alive in seconds for idle threads in the kernel thread pool
+    * @return The value
+    */
+   public int getThreadPoolKeepAlive()
+   {
+      return threadPoolKeepAlive;
+   }
+
+   /**
+    * Set the queue type of the kernel thread pool; default <code>ThreadPoolQueue.SYNCHRONOUS</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration threadPoolQueue(ThreadPoolQueue v)
+   {
+      this.threadPoolQueue = v;
+
+      return this;
+   }
+
+   /**
+    * Get the queue type of the kernel thread pool
+    * @return The value
+    */
+   public ThreadPoolQueue getThreadPoolQueue()
+   {
+      return threadPoolQueue;
+   }
+
+   /**
+    * Set the capacity of a <code>ThreadPoolQueue.BOUNDED</code> queue; default <code>1024</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration threadPoolQueueCapacity(int v)
+   {
+      this.threadPoolQueueCapacity = v;
+
+      return this;
+   }
+
+   /**
+    * Get the capacity of a <code>ThreadPoolQueue.BOUNDED</code> queue
+    * @return The value
+    */
+   public int getThreadPoolQueueCapacity()
+   {
+      return threadPoolQueueCapacity;
+   }
+
+   /**
+    * Set the rejection policy of the kernel thread pool; default <code>RejectionPolicy.ABORT</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration threadPoolRejectionPolicy(RejectionPolicy v)
+   {
+      this.threadPoolRejectionPolicy = v;
+
+      return this;
+   }
+
+   /**
+    * Get the rejection policy of the kernel thread pool
+    * @return The value
+    */
+   public RejectionPolicy getThreadPoolRejectionPolicy()
+   {
+      return threadPoolRejectionPolicy;
+   }
+
+   /**
+    * Set the time in seconds that a bean can wait for its dependencies, or run its
+    * lifecycle methods, before it is reported as stalled; <code>0</code> disables
+    * the watchdog; default <code>0</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration stallThreshold(int v)
+   {
+      this.stallThreshold = v;
+
+      return this;
+   }
+
+   /**
+    * Get the time in seconds before a bean is reported as stalled
+    * @return The value
+    */
+   public int getStallThreshold()
+   {
+      return stallThreshold;
+   }
+
+   /**
+    * Set if stalled beans should be failed, such that the deployments waiting
+    * for them can complete; default <code>false</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration failStalledBeans(boolean v)
+   {
+      this.failStalledBeans = v;
+
+      return this;
+   }
+
+   /**
+    * Fail stalled beans ?
+    * @return The value
+    */
+   public boolean isFailStalledBeans()
+   {
+      return failStalledBeans;
+   }
+
+   /**
+    * Set the resources shared with other kernels in the virtual machine. The kernel
+    * uses the shared executor service instead of creating a thread pool; default <code>null</code>
+    * @param v The value
+    * @return The configuration
+    */
+   public KernelConfiguration sharedResources(SharedResources v)
+   {
+      this.sharedResources = v;
+
+      return this;
+   }
+
+   /**
+    * Get the resources shared with other kernels
+    * @return The value; <code>null</code> if the kernel doesn't share resources
+    */
+   public SharedResources getSharedResources()
+   {
+      return sharedResources;
+   }
 }
@@ -0,0 +1,98 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.events;
+
+/**
+ * A lifecycle notification
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class Notification
+{
+   /** The event */
+   private LifecycleEvent event;
+
+   /** The name */
+   private String name;
+
+   /** The timestamp */
+   private long timestamp;
+
+   /**
+    * Constructor
+    * @param event The event
+    * @param name The name of the bean, or the URL of the deployment
+    * @param timestamp The timestamp
+    */
+   public Notification(LifecycleEvent event, String name, long timestamp)
+   {
+      if (event == null)
+         throw new IllegalArgumentException("Event is null");
+
+      if (name == null)
+         throw new IllegalArgumentException("Name is null");
+
+      this.event = event;
+      this.name = name;
+      this.timestamp = timestamp;
+   }
+
+   /**
+    * Get the event
+    * @return The value
+    */
+   public LifecycleEvent getEvent()
+   {
+      return event;
+   }
+
+   /**
+    * Get the name of the bean, or the URL of the deployment
+    * @return The value
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * Get the timestamp in milliseconds
+    * @return The value
+    */
+   public long getTimestamp()
+   {
+      return timestamp;
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder("Notification[");
+      sb = sb.append("Event=" + event + ",");
+      sb = sb.append("Name=" + name + ",");
+      sb = sb.append("Timestamp=" + timestamp);
+      sb = sb.append("]");
+
+      return sb.toString();
+   }
+}
@@ -0,0 +1,354 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.api.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The reflection metadata of a class.
+ *
+ * The declared methods, constructors and fields of a class and its super classes
+ * are read once, and kept in maps by name and by number of parameters. The metadata
+ * is attached to the class itself, so it doesn't prevent the class from being
+ * unloaded, and is shared by all users of the class
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class ClassMetadata
+{
+   /** The metadata */
+   private static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>()
+   {
+      /**
+       * Create the metadata for a class
+       * @param type The class
+       * @return The metadata
+       */
+      protected ClassMetadata computeValue(Class<?> type)
+      {
+         return new ClassMetadata(type);
+      }
+   };
+
+   /** Marker for a method that doesn't exist */
+   private static final Object ABSENT = new Object();
+
+   /** The class */
+   private Class<?> clz;
+
+   /** The declared methods by name */
+   private volatile Map<String, List<Method>> declaredMethods;
+
+   /** The declared methods with a single parameter by name */
+   private volatile Map<String, List<Method>> setters;
+
+   /** The declared constructors by number of parameters */
+   private volatile Map<Integer, List<Constructor<?>>> constructors;
+
+   /** The declared fields by name */
+   private volatile Map<String, List<Field>> fields;
+
+   /** The public methods */
+   private volatile List<Method> methods;
+
+   /** The public methods by signature; the value is the method or the absent marker */
+   private ConcurrentMap<String, Object> publicMethods;
+
+   /**
+    * Constructor
+    * @param clz The class
+    */
+   private ClassMetadata(Class<?> clz)
+   {
+      this.clz = clz;
+      this.declaredMethods = null;
+      this.setters = null;
+      this.constructors = null;
+      this.fields = null;
+      this.methods = null;
+      this.publicMethods = new ConcurrentHashMap<String, Object>();
+   }
+
+   /**
+    * Get the metadata for a class
+    * @param clz The class
+    * @return The metadata
+    */
+   public static ClassMetadata getMetadata(Class<?> clz)
+   {
+      if (clz == null)
+         throw new IllegalArgumentException("Clz is null");
+
+      return METADATA.get(clz);
+   }
+
+   /**
+    * Get the class
+    * @return The value
+    */
+   public Class<?> getType()
+   {
+      return clz;
+   }
+
+   /**
+    * Get the methods with a name declared by the class and its super classes
+    * @param name The name of the methods
+    * @return The methods ordered from the class to <code>java.lang.Object</code>
+    */
+   public List<Method> getDeclaredMethods(String name)
+   {
+      if (declaredMethods == null)
+         scanMethods();
+
+      List<Method> result = declaredMethods.get(name);
+
+      if (result == null)
+         return Collections.emptyList();
+
+      return result;
+   }
+
+   /**
+    * Get the methods with a name and a single parameter declared by the class and its super classes
+    * @param name The name of the methods
+    * @return The methods ordered from the class to <code>java.lang.Object</code>
+    */
+   public List<Method> getSetters(String name)
+   {
+      if (setters == null)
+         scanMethods();
+
+      List<Method> result = setters.get(name);
+
+      if (result == null)
+         return Collections.emptyList();
+
+      return result;
+   }
+
+   /**
+    * Get the constructors declared by the class and its super classes
+    * @param parameters The number of parameters
+    * @return The constructors ordered from the class to <code>java.lang.Object</code>
+    */
+   public List<Constructor<?>> getDeclaredConstructors(int parameters)
+   {
+      if (constructors == null)
+      {
+         Map<Integer, List<Constructor<?>>> m = new HashMap<Integer, List<Constructor<?>>>();
+
+         for (Class<?> c = clz; c != null; c = c.getSuperclass())
+         {
+            for (Constructor<?> con : c.getDeclaredConstructors())
+            {
+               Integer key = Integer.valueOf(con.getParameterTypes().length);
+               List<Constructor<?>> l = m.get(key);
+               if (l == null)
+               {
+                  l = new ArrayList<Constructor<?>>(1);
+                  m.put(key, l);
+               }
+               l.add(con);
+            }
+         }
+
+         constructors = seal(m);
+      }
+
+      List<Constructor<?>> result = constructors.get(Integer.valueOf(parameters));
+
+      if (result == null)
+         return Collections.emptyList();
+
+      return result;
+   }
+
+   /**
+    * Get the fields with a name declared by the class and its super classes
+    * @param name The name of the fields
+    * @return The fields ordered from the class to <code>java.lang.Object</code>
+    */
+   public List<Field> getDeclaredFields(String name)
+   {
+      if (fields == null)
+      {
+         Map<String, List<Field>> m = new HashMap<String, List<Field>>();
+
+         for (Class<?> c = clz; c != null; c = c.getSuperclass())
+         {
+            for (Field f : c.getDeclaredFields())
+            {
+               List<Field> l = m.get(f.getName());
+               if (l == null)
+               {
+                  l = new ArrayList<Field>(1);
+                  m.put(f.getName(), l);
+               }
+               l.add(f);
+            }
+         }
+
+         fields = seal(m);
+      }
+
+      List<Field> result = fields.get(name);
+
+      if (result == null)
+         return Collections.emptyList();
+
+      return result;
+   }
+
+   /**
+    * Get the public methods of the class
+    * @return The methods
+    */
+   public List<Method> getMethods()
+   {
+      if (methods == null)
+         methods = Collections.unmodifiableList(Arrays.asList(clz.getMethods()));
+
+      return methods;
+   }
+
+   /**
+    * Get a public method of the class
+    * @param name The name of the method
+    * @param parameterTypes The parameter types; <code>null</code> for no parameters
+    * @return The method; <code>null</code> if the class doesn't have the method
+    */
+   public Method getMethod(String name, Class<?>... parameterTypes)
+   {
+      String key = name;
+
+      if (parameterTypes != null && parameterTypes.length > 0)
+      {
+         StringBuilder sb = new StringBuilder(name);
+         sb = sb.append('(');
+         for (int i = 0; i < parameterTypes.length; i++)
+         {
+            if (i > 0)
+               sb = sb.append(',');
+            sb = sb.append(parameterTypes[i].getName());
+         }
+         sb = sb.append(')');
+         key = sb.toString();
+      }
+
+      Object value = publicMethods.get(key);
+
+      if (value == null)
+      {
+         try
+         {
+            value = clz.getMethod(name, parameterTypes);
+         }
+         catch (NoSuchMethodException nsme)
+         {
+            value = ABSENT;
+         }
+
+         Object existing = publicMethods.putIfAbsent(key, value);
+         if (existing != null)
+            value = existing;
+      }
+
+      return value != ABSENT ? (Method)value : null;
+   }
+
+   /**
+    * Scan the declared methods
+    */
+   private void scanMethods()
+   {
+      Map<String, List<Method>> all = new HashMap<String, List<Method>>();
+      Map<String, List<Method>> single = new HashMap<String, List<Method>>();
+
+      for (Class<?> c = clz; c != null; c = c.getSuperclass())
+      {
+         for (Method m : c.getDeclaredMethods())
+         {
+            add(all, m);
+
+            if (m.getParameterTypes().length == 1)
+               add(single, m);
+         }
+      }
+
+      setters = seal(single);
+      declaredMethods = seal(all);
+   }
+
+   /**
+    * Add a method to a map
+    * @param m The map
+    * @param method The method
+    */
+   private static void add(Map<String, List<Method>> m, Method method)
+   {
+      List<Method> l = m.get(method.getName());
+      if (l == null)
+      {
+         l = new ArrayList<Method>(1);
+         m.put(method.getName(), l);
+      }
+      l.add(method);
+   }
+
+   /**
+    * Make the lists of a map unmodifiable
+    * @param m The map
+    * @return The map
+    */
+   private static <K, V> Map<K, List<V>> seal(Map<K, List<V>> m)
+   {
+      for (Map.Entry<K, List<V>> entry : m.entrySet())
+      {
+         entry.setValue(Collections.unmodifiableList(entry.getValue()));
+      }
+
+      return m;
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder("ClassMetadata[");
+      sb = sb.append("Type=" + clz.getName());
+      sb = sb.append("]");
+
+      return sb.toString();
+   }
+}
@@ -169,22 +169,10 @@ public class Injection
     */
    protected Method findMethod(Class<?> clz, String methodName, String propertyType)
    {
-      Class<?> c = clz;
-
-      while (c != null)
+      for (Method method : ClassMetadata.getMetadata(clz).getSetters(methodName))
       {
-         Method[] methods = c.getDeclaredMethods();
-         for (int i = 0; i < methods.length; i++)
-         {
-            Method method = methods[i];
-            if (methodName.equals(method.getName()) && method.getParameterTypes().length == 1)
-            {
-               if (propertyType == null || propertyType.equals(method.getParameterTypes()[0].getName()))
-                  return method;
-            }
-         }
-
-         c = c.getSuperclass();
+         if (propertyType == null || propertyType.equals(method.getParameterTypes()[0].getName()))
+            return method;
       }
       
       return null;
@@ -199,22 +187,10 @@ public class Injection
     */
    protected Field findField(Class<?> clz, String fieldName, String fieldType)
    {
-      Class<?> c = clz;
-
-      while (c != null)
+      for (Field field : ClassMetadata.getMetadata(clz).getDeclaredFields(fieldName))
       {
-         Field[] fields = c.getDeclaredFields();
-         for (int i = 0; i < fields.length; i++)
-         {
-            Field field = fields[i];
-            if (fieldName.equals(field.getName()))
-            {
-               if (fieldType == null || fieldType.equals(field.getType().getName()))
-                  return field;
-            }
-         }
-
-         c = c.getSuperclass();
+         if (fieldType == null || fieldType.equals(field.getType().getName()))
+            return field;
       }
       
       return null;
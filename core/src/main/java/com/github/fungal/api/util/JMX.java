@@ -220,7 +220,7 @@ public class JMX
             }
          }
 
-         Method[] methods = instance.getClass().getMethods();
+         List<Method> methods = ClassMetadata.getMetadata(instance.getClass()).getMethods();
          for (Method method : methods)
          {
             if (!method.getDeclaringClass().getName().startsWith("java."))
@@ -449,11 +449,11 @@ public class JMX
 
                   if (!mai.isIs())
                   {
-                     method = instance.getClass().getMethod("get" + name, (Class[])null);
+                     method = getMethod(instance, "get" + name, (Class[])null);
                   }
                   else
                   {
-                     method = instance.getClass().getMethod("is" + name, (Class[])null);
+                     method = getMethod(instance, "is" + name, (Class[])null);
                   }
 
                   method.setAccessible(true);
@@ -505,6 +505,25 @@ public class JMX
          return info;
       }
 
+      /**
+       * Get a public method of the instance
+       * @param instance The instance
+       * @param name The name of the method
+       * @param parameterTypes The parameter types
+       * @return The method
+       * @exception NoSuchMethodException If the method doesn't exist
+       */
+      private Method getMethod(Object instance, String name, Class<?>... parameterTypes)
+         throws NoSuchMethodException
+      {
+         Method method = ClassMetadata.getMetadata(instance.getClass()).getMethod(name, parameterTypes);
+
+         if (method == null)
+            throw new NoSuchMethodException(instance.getClass().getName() + "." + name);
+
+         return method;
+      }
+
       /**
        * {@inheritDoc}
        */
@@ -560,7 +579,7 @@ public class JMX
                         paramTypes = l.toArray(new Class<?>[l.size()]);
                      }
 
-                     Method method = instance.getClass().getMethod(actionName, paramTypes);
+                     Method method = getMethod(instance, actionName, paramTypes);
                      method.setAccessible(true);
 
                      return method.invoke(instance, params);
@@ -603,7 +622,7 @@ public class JMX
                try
                {
                   Class<?> type = Class.forName(mai.getType(), true, instance.getClass().getClassLoader());
-                  Method method = instance.getClass().getMethod("set" + name, new Class<?>[] {type});
+                  Method method = getMethod(instance, "set" + name, new Class<?>[] {type});
                   method.setAccessible(true);
 
                   method.invoke(instance, new Object[] {attribute.getValue()});
@@ -20,14 +20,18 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Represents a bean
  */
-public class BeanType
+public class BeanType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
    private ConstructorType constructor;
    private List<PropertyType> property;
    private List<DependsType> depends;
@@ -46,6 +50,7 @@ public class BeanType
    private String name;
    private String interfaze;
    private String clazz;
+   private Boolean lazy;
 
    /**
     * Constructor
@@ -70,6 +75,7 @@ public class BeanType
       name = null;
       interfaze = null;
       clazz = null;
+      lazy = null;
    }
 
    /**
@@ -359,4 +365,22 @@ public class BeanType
    {
       clazz = value;
    }
+
+   /**
+    * Get the lazy value
+    * @return The value; <code>null</code> if the kernel default should be used
+    */
+   public Boolean getLazy()
+   {
+      return lazy;
+   }
+
+   /**
+    * Set the lazy value
+    * @param value The value
+    */
+   public void setLazy(Boolean value)
+   {
+      lazy = value;
+   }
 }
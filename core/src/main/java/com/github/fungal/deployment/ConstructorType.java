@@ -20,6 +20,7 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,8 +28,11 @@ import java.util.List;
 /**
  * Represents a constructor
  */
-public class ConstructorType
+public class ConstructorType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
    private List<ParameterType> parameter;
    private FactoryType factory;
    private String factoryMethod;
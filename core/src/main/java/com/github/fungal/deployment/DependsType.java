@@ -20,11 +20,16 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
+
 /**
  * Represents a depends element
  */
-public class DependsType
+public class DependsType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
    private String value;
 
    /**
@@ -20,14 +20,18 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Represents a deployment
  */
-public class Deployment
+public class Deployment implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
    private List<BeanType> bean;
 
    /**
@@ -20,11 +20,16 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
+
 /**
  * Represents a destroy element
  */
-public class DestroyType
+public class DestroyType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
    /** The method attribute */
    private String method;
 
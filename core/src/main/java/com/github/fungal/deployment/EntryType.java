@@ -20,11 +20,16 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
+
 /**
  * Represents an entry
  */
-public class EntryType
+public class EntryType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
    private KeyType key;
    private ValueType value;
    
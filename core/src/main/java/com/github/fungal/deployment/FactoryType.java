@@ -20,11 +20,16 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
+
 /**
  * Represents a factory element
  */
-public class FactoryType
+public class FactoryType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
    private String bean;
 
    /**
@@ -20,11 +20,16 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
+
 /**
  * Represents an ignore create element
  */
-public class IgnoreCreateType
+public class IgnoreCreateType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
 
    /**
     * Constructor
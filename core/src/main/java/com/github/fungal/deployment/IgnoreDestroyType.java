@@ -20,11 +20,16 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
+
 /**
  * Represents an ignore destroy element
  */
-public class IgnoreDestroyType
+public class IgnoreDestroyType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
 
    /**
     * Constructor
@@ -20,11 +20,16 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
+
 /**
  * Represents an ignore stop element
  */
-public class IgnoreStopType
+public class IgnoreStopType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
 
    /**
     * Constructor
@@ -20,6 +20,7 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,8 +28,11 @@ import java.util.List;
 /**
  * Represents a list
  */
-public class ListType
+public class ListType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
    private List<ValueType> value;
    private String clazz;
    private String elementClass;
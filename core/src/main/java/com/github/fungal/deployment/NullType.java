@@ -20,11 +20,16 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
+
 /**
  * Represents a null element
  */
-public class NullType
+public class NullType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
 
    /**
     * Constructor
@@ -20,14 +20,18 @@
 
 package com.github.fungal.deployment;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Represents a parameter element
  */
-public class ParameterType
+public class ParameterType implements Serializable
 {
+   /** Serial version UID */
+   private static final long serialVersionUID = 1L;
+
    private List<Object> content;
    private String clazz;
 
@@ -60,6 +60,18 @@ public class Unmarshaller
     * @exception IOException If an I/O error occurs
     */
    public Deployment unmarshal(URL url) throws IOException
+   {
+      return unmarshal(url, null);
+   }
+
+   /**
+    * Unmarshal; the listener is notified of each bean as soon as it has been read
+    * @param url The URL
+    * @param listener The listener; may be <code>null</code>
+    * @return The result
+    * @exception IOException If an I/O error occurs
+    */
+   public Deployment unmarshal(URL url, Listener listener) throws IOException
    {
       if (url == null)
          throw new IllegalArgumentException("File is null");
@@ -67,8 +79,6 @@ public class Unmarshaller
       InputStream is = null;
       try
       {
-         Deployment deployment = new Deployment();
-
          if ("file".equals(url.getProtocol()))
          {
             File file = new File(url.toURI());
@@ -86,6 +96,57 @@ public class Unmarshaller
 
          is = new BufferedInputStream(is, 4096);
 
+         return unmarshal(is, listener);
+      }
+      catch (IOException ioe)
+      {
+         throw ioe;
+      }
+      catch (Throwable t)
+      {
+         throw new IOException(t.getMessage(), t);
+      }
+      finally
+      {
+         try
+         {
+            if (is != null)
+               is.close();
+         }
+         catch (IOException ioe)
+         {
+            // Ignore
+         }
+      }
+   }
+
+   /**
+    * Unmarshal
+    * @param is The input stream
+    * @return The result
+    * @exception IOException If an I/O error occurs
+    */
+   public Deployment unmarshal(InputStream is) throws IOException
+   {
+      return unmarshal(is, null);
+   }
+
+   /**
+    * Unmarshal; the listener is notified of each bean as soon as it has been read
+    * @param is The input stream
+    * @param listener The listener; may be <code>null</code>
+    * @return The result
+    * @exception IOException If an I/O error occurs
+    */
+   public Deployment unmarshal(InputStream is, Listener listener) throws IOException
+   {
+      if (is == null)
+         throw new IllegalArgumentException("InputStream is null");
+
+      try
+      {
+         Deployment deployment = new Deployment();
+
          XMLInputFactory xmlInputFactory = null;
 
          try
@@ -109,7 +170,13 @@ public class Unmarshaller
                case XMLStreamReader.START_ELEMENT :
 
                   if ("bean".equals(xmlStreamReader.getLocalName()))
-                     deployment.getBean().add(readBean(xmlStreamReader));
+                  {
+                     BeanType bean = readBean(xmlStreamReader);
+                     deployment.getBean().add(bean);
+
+                     if (listener != null)
+                        listener.bean(bean);
+                  }
 
                   break;
                default :
@@ -122,18 +189,6 @@ public class Unmarshaller
       {
          throw new IOException(t.getMessage(), t);
       }
-      finally
-      {
-         try
-         {
-            if (is != null)
-               is.close();
-         }
-         catch (IOException ioe)
-         {
-            // Ignore
-         }
-      }
    }
 
    /**
@@ -161,6 +216,10 @@ public class Unmarshaller
          {
             result.setInterface(xmlStreamReader.getAttributeValue(i));
          }
+         else if ("lazy".equals(name))
+         {
+            result.setLazy(Boolean.valueOf(xmlStreamReader.getAttributeValue(i).trim()));
+         }
       }
 
       int eventCode = xmlStreamReader.next();
@@ -1192,4 +1251,16 @@ public class Unmarshaller
 
       return result;
    }
+
+   /**
+    * A listener for the beans of a deployment
+    */
+   public interface Listener
+   {
+      /**
+       * A bean has been read
+       * @param bean The bean
+       */
+      public void bean(BeanType bean);
+   }
 }
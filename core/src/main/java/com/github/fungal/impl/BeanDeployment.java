@@ -20,10 +20,9 @@
 
 package com.github.fungal.impl;
 
+import com.github.fungal.api.configuration.KernelConfiguration;
 import com.github.fungal.spi.deployers.Deployment;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.Collections;
 import java.util.HashSet;
@@ -31,6 +30,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * A bean deployment for Fungal
@@ -45,7 +45,7 @@ public class BeanDeployment implements Deployment
    private List<String> beans;
 
    /** Uninstall methods */
-   private Map<String, List<Method>> uninstall;
+   private Map<String, List<BeanFactory.Invoker>> uninstall;
 
    /** Stop */
    private Map<String, String> stops;
@@ -75,7 +75,7 @@ public class BeanDeployment implements Deployment
     */
    public BeanDeployment(URL deployment, 
                          List<String> beans, 
-                         Map<String, List<Method>> uninstall,
+                         Map<String, List<BeanFactory.Invoker>> uninstall,
                          Map<String, String> stops,
                          Map<String, String> destroys,
                          Set<String> ignoreStops,
@@ -156,80 +156,141 @@ public class BeanDeployment implements Deployment
     */
    public void destroy() throws Throwable
    {
-      List<String> shutdownBeans = new LinkedList<String>(beans);
-      Collections.reverse(shutdownBeans);
+      KernelConfiguration kernelConfiguration = kernel.getKernelConfiguration();
 
-      for (String name : shutdownBeans)
+      if (kernelConfiguration.isParallelShutdown())
+      {
+         TeardownScheduler teardown = new TeardownScheduler(kernel.getInternalExecutorService(),
+                                                            kernelConfiguration.getBeanShutdownTimeout());
+         schedule(teardown);
+         teardown.run();
+      }
+      else
       {
-         kernel.setBeanStatus(name, ServiceLifecycle.STOPPING);
+         List<String> shutdownBeans = new LinkedList<String>(beans);
+         Collections.reverse(shutdownBeans);
+
+         for (String name : shutdownBeans)
+         {
+            destroyBean(name);
+         }
+      }
+   }
 
-         Object bean = kernel.getBean(name);
+   /**
+    * Add the beans of the deployment to a teardown
+    * @param teardown The teardown scheduler
+    */
+   void schedule(TeardownScheduler teardown)
+   {
+      List<String> shutdownBeans = new LinkedList<String>(beans);
+      Collections.reverse(shutdownBeans);
 
-         if (bean != null)
+      for (final String name : shutdownBeans)
+      {
+         teardown.add(name, new Callable<Void>()
          {
-            List<Method> l = uninstall.get(name);
-            if (l != null)
+            public Void call() throws Exception
             {
-               for (Method m : l)
+               try
                {
-                  try
-                  {
-                     m.setAccessible(true);
-                     m.invoke(bean, (Object[])null);
-                  }
-                  catch (InvocationTargetException ite)
-                  {
-                     throw ite.getTargetException();
-                  }
+                  destroyBean(name);
                }
-            }
-
-            if (ignoreStops == null || !ignoreStops.contains(name))
-            {
-               try
+               catch (Exception e)
                {
-                  String methodName = "stop";
-                  if (stops != null && stops.containsKey(name))
-                     methodName = stops.get(name);
-
-                  Method stopMethod = bean.getClass().getMethod(methodName, (Class[])null);
-                  stopMethod.setAccessible(true);
-                  stopMethod.invoke(bean, (Object[])null);
+                  throw e;
                }
-               catch (NoSuchMethodException nsme)
+               catch (Error e)
                {
-                  // No stop method
+                  throw e;
                }
-               catch (InvocationTargetException ite)
+               catch (Throwable t)
                {
-                  throw ite.getTargetException();
+                  throw new Exception(t.getMessage(), t);
                }
+
+               return null;
             }
+         });
 
-            if (ignoreDestroys == null || !ignoreDestroys.contains(name))
+         Set<String> dependencies = kernel.getBeanDependants(name);
+         if (dependencies != null)
+         {
+            for (String dependency : dependencies)
             {
-               try
-               {
-                  String methodName = "destroy";
-                  if (destroys != null && destroys.containsKey(name))
-                     methodName = destroys.get(name);
-
-                  Method destroyMethod = bean.getClass().getMethod(methodName, (Class[])null);
-                  destroyMethod.setAccessible(true);
-                  destroyMethod.invoke(bean, (Object[])null);
-               }
-               catch (NoSuchMethodException nsme)
-               {
-                  // No destroy method
-               }
-               catch (InvocationTargetException ite)
-               {
-                  throw ite.getTargetException();
-               }
+               teardown.addDependency(name, dependency);
             }
          }
+      }
+   }
+
+   /**
+    * Destroy a bean
+    * @param name The name of the bean
+    * @exception Throwable If the bean cant be stopped
+    */
+   private void destroyBean(String name) throws Throwable
+   {
+      kernel.setBeanStatus(name, ServiceLifecycle.STOPPING);
+
+      Object bean = kernel.getBean(name);
+
+      if (bean != null)
+         stopBean(name, bean, uninstall, stops, destroys, ignoreStops, ignoreDestroys);
+
+      kernel.removeBean(name);
+   }
+
+   /**
+    * Invoke the uninstall, stop and destroy methods of a bean
+    * @param name The name of the bean
+    * @param bean The bean
+    * @param uninstall Uninstall methods for beans
+    * @param stops Stop methods for beans
+    * @param destroys Destroy methods for beans
+    * @param ignoreStops Ignore stop methods for beans
+    * @param ignoreDestroys Ignore destroy methods for beans
+    * @exception Throwable If the bean cant be stopped
+    */
+   static void stopBean(String name, Object bean,
+                        Map<String, List<BeanFactory.Invoker>> uninstall,
+                        Map<String, String> stops,
+                        Map<String, String> destroys,
+                        Set<String> ignoreStops,
+                        Set<String> ignoreDestroys)
+      throws Throwable
+   {
+      BeanFactory factory = BeanFactory.getFactory(bean.getClass());
+
+      List<BeanFactory.Invoker> l = uninstall.get(name);
+      if (l != null)
+      {
+         for (BeanFactory.Invoker m : l)
+         {
+            m.invoke(bean);
+         }
+      }
+
+      if (ignoreStops == null || !ignoreStops.contains(name))
+      {
+         String methodName = "stop";
+         if (stops != null && stops.containsKey(name))
+            methodName = stops.get(name);
+
+         BeanFactory.Invoker stopMethod = factory.getMethod(methodName);
+         if (stopMethod != null)
+            stopMethod.invoke(bean);
+      }
+
+      if (ignoreDestroys == null || !ignoreDestroys.contains(name))
+      {
+         String methodName = "destroy";
+         if (destroys != null && destroys.containsKey(name))
+            methodName = destroys.get(name);
 
-         kernel.removeBean(name);
+         BeanFactory.Invoker destroyMethod = factory.getMethod(methodName);
+         if (destroyMethod != null)
+            destroyMethod.invoke(bean);
       }
    }
 }
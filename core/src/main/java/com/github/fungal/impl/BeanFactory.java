@@ -0,0 +1,386 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.api.util.ClassMetadata;
+import com.github.fungal.deployment.InjectType;
+import com.github.fungal.deployment.NullType;
+import com.github.fungal.deployment.ParameterType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The bean factory for a class.
+ *
+ * The constructors, factory methods, property setters and lifecycle methods of
+ * a class are resolved once through its {@link ClassMetadata}, and compiled into
+ * method handles that are reused for every bean of the class. The factories are
+ * attached to the class itself, so they are shared across redeployments and
+ * kernels, and are released together with the class
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+final class BeanFactory
+{
+   /** The factories */
+   private static final ClassValue<BeanFactory> FACTORIES = new ClassValue<BeanFactory>()
+   {
+      /**
+       * Create the factory for a class
+       * @param type The class
+       * @return The factory
+       */
+      protected BeanFactory computeValue(Class<?> type)
+      {
+         return new BeanFactory(type);
+      }
+   };
+
+   /** Marker for a method that doesn't exist */
+   private static final Object ABSENT = new Object();
+
+   /** The lookup */
+   private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+   /** The class */
+   private Class<?> clz;
+
+   /** The constructors */
+   private ConcurrentMap<String, Invoker> constructors;
+
+   /** The factory methods */
+   private ConcurrentMap<String, Invoker> factoryMethods;
+
+   /** The setters */
+   private ConcurrentMap<String, Invoker> setters;
+
+   /** The public methods without parameters; the value is the invoker or the absent marker */
+   private ConcurrentMap<String, Object> methods;
+
+   /** The public methods with a single parameter; the value is the method or the absent marker */
+   private ConcurrentMap<String, Object> callbacks;
+
+   /**
+    * Constructor
+    * @param clz The class
+    */
+   private BeanFactory(Class<?> clz)
+   {
+      this.clz = clz;
+      this.constructors = new ConcurrentHashMap<String, Invoker>(1);
+      this.factoryMethods = new ConcurrentHashMap<String, Invoker>(1);
+      this.setters = new ConcurrentHashMap<String, Invoker>();
+      this.methods = new ConcurrentHashMap<String, Object>();
+      this.callbacks = new ConcurrentHashMap<String, Object>(1);
+   }
+
+   /**
+    * Get the factory for a class
+    * @param clz The class
+    * @return The factory
+    */
+   static BeanFactory getFactory(Class<?> clz)
+   {
+      return FACTORIES.get(clz);
+   }
+
+   /**
+    * Get the key of a parameter list; parameters with a class are identified by
+    * the class, and the other parameters by the kind of their value
+    * @param parameters The parameters; may be <code>null</code>
+    * @return The key
+    */
+   static String key(List<ParameterType> parameters)
+   {
+      if (parameters == null || parameters.size() == 0)
+         return "";
+
+      StringBuilder sb = new StringBuilder();
+
+      for (ParameterType pt : parameters)
+      {
+         if (sb.length() > 0)
+            sb.append(',');
+
+         if (pt.getClazz() != null)
+         {
+            sb.append(pt.getClazz());
+         }
+         else
+         {
+            Object v = pt.getContent().get(0);
+
+            if (v instanceof InjectType)
+            {
+               sb.append("#inject");
+            }
+            else if (v instanceof NullType)
+            {
+               sb.append("#null");
+            }
+            else
+            {
+               sb.append("#value");
+            }
+         }
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * Get a constructor
+    * @param key The key of the parameters
+    * @return The invoker; <code>null</code> if not resolved yet
+    */
+   Invoker getConstructor(String key)
+   {
+      return constructors.get(key);
+   }
+
+   /**
+    * Add a resolved constructor
+    * @param key The key of the parameters
+    * @param constructor The constructor
+    * @return The invoker
+    * @exception IllegalAccessException If the constructor isn't accessible
+    */
+   Invoker addConstructor(String key, Constructor<?> constructor) throws IllegalAccessException
+   {
+      constructor.setAccessible(true);
+
+      Invoker invoker = new Invoker(LOOKUP.unreflectConstructor(constructor), false,
+                                    constructor.getParameterTypes());
+
+      Invoker existing = constructors.putIfAbsent(key, invoker);
+
+      return existing != null ? existing : invoker;
+   }
+
+   /**
+    * Get a factory method
+    * @param name The name of the method
+    * @param key The key of the parameters
+    * @return The invoker; <code>null</code> if not resolved yet
+    */
+   Invoker getFactoryMethod(String name, String key)
+   {
+      return factoryMethods.get(name + "(" + key + ")");
+   }
+
+   /**
+    * Add a resolved factory method
+    * @param name The name of the method
+    * @param key The key of the parameters
+    * @param method The method
+    * @return The invoker
+    * @exception IllegalAccessException If the method isn't accessible
+    */
+   Invoker addFactoryMethod(String name, String key, Method method) throws IllegalAccessException
+   {
+      Invoker invoker = toInvoker(method);
+
+      Invoker existing = factoryMethods.putIfAbsent(name + "(" + key + ")", invoker);
+
+      return existing != null ? existing : invoker;
+   }
+
+   /**
+    * Get a setter
+    * @param name The name of the setter
+    * @param type The type of the property; may be <code>null</code>
+    * @return The invoker; <code>null</code> if not resolved yet
+    */
+   Invoker getSetter(String name, String type)
+   {
+      return setters.get(type != null ? name + "(" + type + ")" : name);
+   }
+
+   /**
+    * Add a resolved setter
+    * @param name The name of the setter
+    * @param type The type of the property; may be <code>null</code>
+    * @param method The method
+    * @return The invoker
+    * @exception IllegalAccessException If the method isn't accessible
+    */
+   Invoker addSetter(String name, String type, Method method) throws IllegalAccessException
+   {
+      Invoker invoker = toInvoker(method);
+
+      Invoker existing = setters.putIfAbsent(type != null ? name + "(" + type + ")" : name, invoker);
+
+      return existing != null ? existing : invoker;
+   }
+
+   /**
+    * Get a public method without parameters, such as a lifecycle method
+    * @param name The name of the method
+    * @return The invoker; <code>null</code> if the class doesn't have the method
+    * @exception IllegalAccessException If the method isn't accessible
+    */
+   Invoker getMethod(String name) throws IllegalAccessException
+   {
+      Object value = methods.get(name);
+
+      if (value == null)
+      {
+         Method m = ClassMetadata.getMetadata(clz).getMethod(name);
+
+         value = m != null ? toInvoker(m) : ABSENT;
+
+         Object existing = methods.putIfAbsent(name, value);
+         if (existing != null)
+            value = existing;
+      }
+
+      return value != ABSENT ? (Invoker)value : null;
+   }
+
+   /**
+    * Get a public method with a single parameter, such as a callback method
+    * @param name The name of the method
+    * @return The method; <code>null</code> if the class doesn't have the method
+    */
+   Method getCallback(String name)
+   {
+      Object value = callbacks.get(name);
+
+      if (value == null)
+      {
+         value = ABSENT;
+
+         for (Method m : ClassMetadata.getMetadata(clz).getMethods())
+         {
+            if (m.getName().equals(name) && m.getParameterTypes().length == 1)
+            {
+               m.setAccessible(true);
+               value = m;
+               break;
+            }
+         }
+
+         Object existing = callbacks.putIfAbsent(name, value);
+         if (existing != null)
+            value = existing;
+      }
+
+      return value != ABSENT ? (Method)value : null;
+   }
+
+   /**
+    * Compile a method
+    * @param method The method
+    * @return The invoker
+    * @exception IllegalAccessException If the method isn't accessible
+    */
+   private static Invoker toInvoker(Method method) throws IllegalAccessException
+   {
+      method.setAccessible(true);
+
+      return new Invoker(LOOKUP.unreflect(method), !Modifier.isStatic(method.getModifiers()),
+                         method.getParameterTypes(), method);
+   }
+
+   /**
+    * A compiled constructor or method
+    */
+   static final class Invoker
+   {
+      /** The handle; (Object target, Object[] arguments)Object */
+      private MethodHandle handle;
+
+      /** The parameter types */
+      private Class<?>[] parameterTypes;
+
+      /** The method; <code>null</code> for a constructor */
+      private Method method;
+
+      /**
+       * Constructor
+       * @param handle The direct handle
+       * @param instance Does the handle take the target instance as its first argument
+       * @param parameterTypes The parameter types
+       */
+      Invoker(MethodHandle handle, boolean instance, Class<?>[] parameterTypes)
+      {
+         this(handle, instance, parameterTypes, null);
+      }
+
+      /**
+       * Constructor
+       * @param handle The direct handle
+       * @param instance Does the handle take the target instance as its first argument
+       * @param parameterTypes The parameter types
+       * @param method The method; <code>null</code> for a constructor
+       */
+      Invoker(MethodHandle handle, boolean instance, Class<?>[] parameterTypes, Method method)
+      {
+         MethodHandle h = handle.asFixedArity();
+         h = h.asType(h.type().generic());
+         h = h.asSpreader(Object[].class, parameterTypes.length);
+
+         if (!instance)
+            h = MethodHandles.dropArguments(h, 0, Object.class);
+
+         this.handle = h;
+         this.parameterTypes = parameterTypes;
+         this.method = method;
+      }
+
+      /**
+       * Invoke
+       * @param target The target instance; <code>null</code> for constructors and static methods
+       * @param arguments The arguments
+       * @return The result
+       * @exception Throwable Thrown by the constructor or method
+       */
+      Object invoke(Object target, Object... arguments) throws Throwable
+      {
+         return (Object)handle.invokeExact(target, arguments);
+      }
+
+      /**
+       * Get the parameter types
+       * @return The value
+       */
+      Class<?>[] getParameterTypes()
+      {
+         return parameterTypes;
+      }
+
+      /**
+       * Get the method
+       * @return The value; <code>null</code> for a constructor
+       */
+      Method getMethod()
+      {
+         return method;
+      }
+   }
+}
@@ -0,0 +1,223 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The completion handle of a bean.
+ *
+ * Listeners attach to the handle without locking, and the handle is completed
+ * exactly once when the bean reaches either STARTED or ERROR. A listener that
+ * attaches after the completion is notified right away
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class BeanFuture
+{
+   /** The name of the bean */
+   private String name;
+
+   /** The state; either the listeners or the final status */
+   private AtomicReference<Object> state;
+
+   /**
+    * Constructor
+    * @param name The name of the bean
+    */
+   public BeanFuture(String name)
+   {
+      this.name = name;
+      this.state = new AtomicReference<Object>(null);
+   }
+
+   /**
+    * Get the name of the bean
+    * @return The value
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * Is the bean either STARTED or ERROR
+    * @return True if completed; otherwise false
+    */
+   public boolean isDone()
+   {
+      return state.get() instanceof ServiceLifecycle;
+   }
+
+   /**
+    * Get the final status of the bean
+    * @return The status; <code>null</code> if the bean hasn't completed
+    */
+   public ServiceLifecycle getStatus()
+   {
+      Object current = state.get();
+
+      if (current instanceof ServiceLifecycle)
+         return (ServiceLifecycle)current;
+
+      return null;
+   }
+
+   /**
+    * Complete the handle
+    * @param status The final status
+    * @return True if the handle was completed by this call; otherwise false
+    */
+   boolean complete(ServiceLifecycle status)
+   {
+      while (true)
+      {
+         Object current = state.get();
+
+         if (current instanceof ServiceLifecycle)
+            return false;
+
+         if (state.compareAndSet(current, status))
+         {
+            // Notify in registration order
+            Node reversed = null;
+            for (Node node = (Node)current; node != null; node = node.next)
+            {
+               reversed = new Node(node.listener, reversed);
+            }
+
+            for (Node node = reversed; node != null; node = node.next)
+            {
+               node.listener.completed(name, status);
+            }
+
+            return true;
+         }
+      }
+   }
+
+   /**
+    * Add a listener
+    * @param listener The listener
+    */
+   void addListener(Listener listener)
+   {
+      while (true)
+      {
+         Object current = state.get();
+
+         if (current instanceof ServiceLifecycle)
+         {
+            listener.completed(name, (ServiceLifecycle)current);
+            return;
+         }
+
+         if (state.compareAndSet(current, new Node(listener, (Node)current)))
+            return;
+      }
+   }
+
+   /**
+    * Remove a listener
+    * @param listener The listener
+    */
+   void removeListener(Listener listener)
+   {
+      while (true)
+      {
+         Object current = state.get();
+
+         if (current == null || current instanceof ServiceLifecycle)
+            return;
+
+         Node reversed = null;
+         boolean found = false;
+         for (Node node = (Node)current; node != null; node = node.next)
+         {
+            if (!found && node.listener == listener)
+            {
+               found = true;
+            }
+            else
+            {
+               reversed = new Node(node.listener, reversed);
+            }
+         }
+
+         if (!found)
+            return;
+
+         Node nodes = null;
+         for (Node node = reversed; node != null; node = node.next)
+         {
+            nodes = new Node(node.listener, nodes);
+         }
+
+         if (state.compareAndSet(current, nodes))
+            return;
+      }
+   }
+
+   /**
+    * Has the handle any listeners
+    * @return True if there are listeners waiting; otherwise false
+    */
+   boolean hasListeners()
+   {
+      return state.get() instanceof Node;
+   }
+
+   /**
+    * A listener for the completion of a bean
+    */
+   interface Listener
+   {
+      /**
+       * The bean has completed
+       * @param name The name of the bean
+       * @param status The final status
+       */
+      void completed(String name, ServiceLifecycle status);
+   }
+
+   /**
+    * A listener node
+    */
+   static class Node
+   {
+      /** The listener */
+      private Listener listener;
+
+      /** The next node */
+      private Node next;
+
+      /**
+       * Constructor
+       * @param listener The listener
+       * @param next The next node
+       */
+      Node(Listener listener, Node next)
+      {
+         this.listener = listener;
+         this.next = next;
+      }
+   }
+}
@@ -0,0 +1,664 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.api.SharedResources;
+import com.github.fungal.deployment.BeanType;
+import com.github.fungal.deployment.ConstructorType;
+import com.github.fungal.deployment.Deployment;
+import com.github.fungal.deployment.DependsType;
+import com.github.fungal.deployment.InjectType;
+import com.github.fungal.deployment.ParameterType;
+import com.github.fungal.deployment.PropertyType;
+import com.github.fungal.deployment.Unmarshaller;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The bean graph for a set of deployments.
+ *
+ * All descriptors are parsed concurrently before any bean is created, and the
+ * dependencies of all beans are combined into one graph. Beans that are part of a
+ * cycle, that depend on an unknown bean, or that depend on a bean which can't be
+ * started before them, are rejected up front together with all beans depending on
+ * them; the remaining beans are handed to the scheduler with their dependencies
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+final class BeanGraph
+{
+   /** The logger */
+   private static Logger log = Logger.getLogger(BeanGraph.class.getName());
+
+   /** The parsed units */
+   private Map<URL, Unit> units;
+
+   /** The dependencies of each bean */
+   private Map<String, Set<String>> dependencies;
+
+   /** The unit index of each bean */
+   private Map<String, Integer> positions;
+
+   /** The beans that are created on first use */
+   private Set<String> lazy;
+
+   /** The rejected beans and the reason */
+   private Map<String, String> problems;
+
+   /**
+    * Constructor
+    */
+   private BeanGraph()
+   {
+      this.units = new LinkedHashMap<URL, Unit>();
+      this.dependencies = new LinkedHashMap<String, Set<String>>();
+      this.positions = new HashMap<String, Integer>();
+      this.lazy = new HashSet<String>();
+      this.problems = new LinkedHashMap<String, String>();
+   }
+
+   /**
+    * Create the bean graph for a set of deployments
+    * @param urls The URLs in deployment order
+    * @param sequential Are the URLs deployed one at a time
+    * @param kernel The kernel
+    * @param executorService The executor service used for parsing
+    * @return The graph
+    */
+   static BeanGraph create(List<URL> urls, boolean sequential, KernelImpl kernel, ExecutorService executorService)
+   {
+      BeanGraph graph = new BeanGraph();
+      boolean complete = true;
+
+      List<URL> descriptors = new ArrayList<URL>(urls.size());
+      for (URL url : urls)
+      {
+         if (url.toString().endsWith(".xml"))
+         {
+            descriptors.add(url);
+         }
+         else
+         {
+            // Other deployers may provide beans, so unknown dependencies can't be detected
+            complete = false;
+         }
+      }
+
+      if (descriptors.size() == 0)
+         return graph;
+
+      final DeploymentPlan plan = kernel.getDeploymentPlan();
+      final SharedResources sharedResources = kernel.getKernelConfiguration().getSharedResources();
+      List<Future<Unit>> futures = new ArrayList<Future<Unit>>(descriptors.size());
+
+      for (final URL url : descriptors)
+      {
+         Callable<Unit> task = new Callable<Unit>()
+         {
+            public Unit call() throws Exception
+            {
+               return parse(url, plan, sharedResources);
+            }
+         };
+
+         if (descriptors.size() == 1)
+         {
+            try
+            {
+               graph.add(task.call());
+            }
+            catch (Throwable t)
+            {
+               // Reported by the deployer
+               complete = false;
+            }
+         }
+         else
+         {
+            futures.add(executorService.submit(task));
+         }
+      }
+
+      for (Future<Unit> future : futures)
+      {
+         try
+         {
+            graph.add(future.get());
+         }
+         catch (Throwable t)
+         {
+            // Reported by the deployer
+            complete = false;
+         }
+      }
+
+      graph.validate(sequential, complete, kernel);
+
+      return graph;
+   }
+
+   /**
+    * Parse a descriptor
+    * @param url The URL
+    * @param plan The deployment plan; <code>null</code> if not enabled
+    * @param sharedResources The resources shared with other kernels; <code>null</code> if not shared
+    * @return The unit
+    * @exception Exception Thrown if the descriptor can't be parsed
+    */
+   static Unit parse(URL url, DeploymentPlan plan, SharedResources sharedResources) throws Exception
+   {
+      Unmarshaller deploymentU = new Unmarshaller();
+
+      if (plan != null || sharedResources != null)
+      {
+         byte[] content = DeploymentPlan.read(url);
+         String hash = DeploymentPlan.hash(content);
+
+         DeploymentPlan.Entry planEntry = plan != null ? plan.getEntry(url, hash) : null;
+         if (planEntry != null)
+            return new Unit(url, planEntry.getDeployment(), planEntry);
+
+         // Another kernel may already have parsed the same content
+         Deployment deployment = sharedResources != null ? sharedResources.getDescriptor(url, hash) : null;
+         if (deployment == null)
+         {
+            deployment = deploymentU.unmarshal(new ByteArrayInputStream(content));
+
+            if (sharedResources != null)
+               deployment = sharedResources.addDescriptor(url, hash, deployment);
+         }
+
+         if (plan != null)
+         {
+            planEntry = plan.addEntry(url, hash, deployment);
+            return new Unit(url, planEntry.getDeployment(), planEntry);
+         }
+
+         return new Unit(url, deployment, null);
+      }
+
+      return new Unit(url, deploymentU.unmarshal(url), null);
+   }
+
+   /**
+    * Get the dependencies of a bean definition
+    * @param bt The bean definition
+    * @return The names of the dependencies; <code>null</code> if no dependencies
+    */
+   static Set<String> getDependencies(BeanType bt)
+   {
+      Set<String> deps = null;
+
+      List<DependsType> dts = bt.getDepends();
+      if (dts.size() > 0)
+      {
+         deps = new HashSet<String>(dts.size());
+         for (DependsType dt : dts)
+         {
+            deps.add(dt.getValue());
+         }
+      }
+
+      List<PropertyType> pts = bt.getProperty();
+      if (pts.size() > 0)
+      {
+         for (PropertyType pt : pts)
+         {
+            Object element = pt.getContent().get(0);
+
+            if (element != null && element instanceof InjectType)
+            {
+               if (deps == null)
+                  deps = new HashSet<String>(1);
+
+               InjectType it = (InjectType)element;
+               deps.add(it.getBean());
+            }
+         }
+      }
+
+      ConstructorType ct = bt.getConstructor();
+      if (ct != null)
+      {
+         if (ct.getFactory() != null)
+         {
+            if (deps == null)
+               deps = new HashSet<String>(1);
+
+            deps.add(ct.getFactory().getBean());
+         }
+            
+         if (ct.getParameter() != null && ct.getParameter().size() > 0)
+         {
+            for (ParameterType pt : ct.getParameter())
+            {
+               Object v = pt.getContent().get(0);
+               if (v instanceof InjectType)
+               {
+                  if (deps == null)
+                     deps = new HashSet<String>(1);
+
+                  InjectType it = (InjectType)v;
+                  deps.add(it.getBean());
+               }
+            }
+         }
+      }
+
+      return deps;
+   }
+
+   /**
+    * Get the parsed unit for an URL
+    * @param url The URL
+    * @return The unit; <code>null</code> if the URL isn't part of the graph
+    */
+   Unit getUnit(URL url)
+   {
+      return units.get(url);
+   }
+
+   /**
+    * Is a bean part of the graph
+    * @param name The name of the bean
+    * @return True if the bean is defined by one of the deployments; otherwise false
+    */
+   boolean contains(String name)
+   {
+      return dependencies.containsKey(name);
+   }
+
+   /**
+    * Get the dependencies of a bean
+    * @param name The name of the bean
+    * @return The names of the dependencies; <code>null</code> if no dependencies
+    */
+   Set<String> getDependencies(String name)
+   {
+      return dependencies.get(name);
+   }
+
+   /**
+    * Get the reason a bean was rejected
+    * @param name The name of the bean
+    * @return The reason; <code>null</code> if the bean wasn't rejected
+    */
+   String getProblem(String name)
+   {
+      return problems.get(name);
+   }
+
+   /**
+    * Get the rejected beans
+    * @return The names of the beans and the reasons
+    */
+   Map<String, String> getProblems()
+   {
+      return Collections.unmodifiableMap(problems);
+   }
+
+   /**
+    * Add a unit
+    * @param unit The unit
+    */
+   private void add(Unit unit)
+   {
+      if (unit == null || unit.getDeployment() == null)
+         return;
+
+      units.put(unit.getURL(), unit);
+   }
+
+   /**
+    * Build and validate the graph
+    * @param sequential Are the units deployed one at a time
+    * @param complete Are all beans known
+    * @param kernel The kernel
+    */
+   private void validate(boolean sequential, boolean complete, KernelImpl kernel)
+   {
+      boolean lazyBeans = kernel.getKernelConfiguration().isLazyBeans();
+
+      int position = 0;
+      for (Unit unit : units.values())
+      {
+         for (BeanType bt : unit.getBeans())
+         {
+            Set<String> deps = getDependencies(bt);
+            dependencies.put(bt.getName(), deps);
+            positions.put(bt.getName(), Integer.valueOf(position));
+
+            if (DeploymentDeployer.isLazy(bt, lazyBeans))
+               lazy.add(bt.getName());
+         }
+         position++;
+      }
+
+      for (Map.Entry<String, Set<String>> entry : dependencies.entrySet())
+      {
+         String name = entry.getKey();
+         Set<String> deps = entry.getValue();
+
+         if (deps == null)
+            continue;
+
+         for (String dependency : deps)
+         {
+            if (dependencies.containsKey(dependency))
+            {
+               // An eager bean holds up its deployment, which blocks the later deployments
+               if (sequential && !lazy.contains(name) &&
+                   positions.get(dependency).intValue() > positions.get(name).intValue())
+               {
+                  reject(name, "Dependency " + dependency + " is deployed after " + name);
+                  break;
+               }
+            }
+            else if (complete && kernel.getBeanStatus(dependency) == null)
+            {
+               reject(name, "Unknown dependency: " + dependency);
+               break;
+            }
+         }
+      }
+
+      for (List<String> cycle : getCycles(dependencies))
+      {
+         StringBuilder sb = new StringBuilder("Dependency cycle: ");
+         for (String name : cycle)
+         {
+            sb = sb.append(name);
+            sb = sb.append(" -> ");
+         }
+         sb = sb.append(cycle.get(0));
+
+         for (String name : cycle)
+         {
+            reject(name, sb.toString());
+         }
+      }
+
+      if (problems.size() > 0)
+      {
+         // Everything that depends on a rejected bean can't start either
+         Map<String, List<String>> dependants = new HashMap<String, List<String>>();
+         for (Map.Entry<String, Set<String>> entry : dependencies.entrySet())
+         {
+            if (entry.getValue() != null)
+            {
+               for (String dependency : entry.getValue())
+               {
+                  List<String> l = dependants.get(dependency);
+                  if (l == null)
+                  {
+                     l = new ArrayList<String>(1);
+                     dependants.put(dependency, l);
+                  }
+                  l.add(entry.getKey());
+               }
+            }
+         }
+
+         LinkedList<String> work = new LinkedList<String>(problems.keySet());
+         while (work.size() > 0)
+         {
+            String rejected = work.removeFirst();
+            List<String> l = dependants.get(rejected);
+            if (l != null)
+            {
+               for (String dependant : l)
+               {
+                  if (!problems.containsKey(dependant))
+                  {
+                     problems.put(dependant, "Depends on rejected bean " + rejected);
+                     work.add(dependant);
+                  }
+               }
+            }
+         }
+
+         for (Map.Entry<String, String> entry : problems.entrySet())
+         {
+            log.severe("Rejected bean " + entry.getKey() + ": " + entry.getValue());
+         }
+      }
+
+      if (log.isLoggable(Level.FINE))
+         log.fine("Bean graph: " + units.size() + " deployments, " + dependencies.size() + " beans, " +
+                  problems.size() + " rejected");
+   }
+
+   /**
+    * Reject a bean
+    * @param name The name of the bean
+    * @param reason The reason
+    */
+   private void reject(String name, String reason)
+   {
+      if (!problems.containsKey(name))
+         problems.put(name, reason);
+   }
+
+   /**
+    * Get the dependency cycles; strongly connected components found with Tarjan's algorithm
+    * @param dependencies The dependencies of each bean
+    * @return The cycles
+    */
+   static List<List<String>> getCycles(Map<String, Set<String>> dependencies)
+   {
+      List<List<String>> result = new ArrayList<List<String>>(1);
+
+      Map<String, Integer> index = new HashMap<String, Integer>(dependencies.size());
+      Map<String, Integer> lowlink = new HashMap<String, Integer>(dependencies.size());
+      Set<String> onStack = new HashSet<String>();
+      LinkedList<String> stack = new LinkedList<String>();
+      int counter = 0;
+
+      for (String root : dependencies.keySet())
+      {
+         if (index.containsKey(root))
+            continue;
+
+         // Iterative depth first search; each frame is a bean and the iterator over its dependencies
+         LinkedList<Object[]> frames = new LinkedList<Object[]>();
+         index.put(root, Integer.valueOf(counter));
+         lowlink.put(root, Integer.valueOf(counter));
+         counter++;
+         stack.addFirst(root);
+         onStack.add(root);
+         frames.addFirst(new Object[] {root, getEdges(dependencies, root).iterator()});
+
+         while (frames.size() > 0)
+         {
+            Object[] frame = frames.getFirst();
+            String name = (String)frame[0];
+            @SuppressWarnings("unchecked")
+            Iterator<String> it = (Iterator<String>)frame[1];
+
+            if (it.hasNext())
+            {
+               String dependency = it.next();
+
+               if (!index.containsKey(dependency))
+               {
+                  index.put(dependency, Integer.valueOf(counter));
+                  lowlink.put(dependency, Integer.valueOf(counter));
+                  counter++;
+                  stack.addFirst(dependency);
+                  onStack.add(dependency);
+                  frames.addFirst(new Object[] {dependency, getEdges(dependencies, dependency).iterator()});
+               }
+               else if (onStack.contains(dependency))
+               {
+                  lowlink.put(name, Integer.valueOf(Math.min(lowlink.get(name).intValue(),
+                                                             index.get(dependency).intValue())));
+               }
+            }
+            else
+            {
+               frames.removeFirst();
+
+               if (frames.size() > 0)
+               {
+                  String parent = (String)frames.getFirst()[0];
+                  lowlink.put(parent, Integer.valueOf(Math.min(lowlink.get(parent).intValue(),
+                                                               lowlink.get(name).intValue())));
+               }
+
+               if (lowlink.get(name).intValue() == index.get(name).intValue())
+               {
+                  List<String> component = new ArrayList<String>(1);
+                  String member = null;
+                  do
+                  {
+                     member = stack.removeFirst();
+                     onStack.remove(member);
+                     component.add(0, member);
+                  }
+                  while (!member.equals(name));
+
+                  if (component.size() > 1 || getEdges(dependencies, name).contains(name))
+                     result.add(component);
+               }
+            }
+         }
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the dependencies of a bean within the graph
+    * @param dependencies The dependencies of each bean
+    * @param name The name of the bean
+    * @return The names of the dependencies
+    */
+   private static Set<String> getEdges(Map<String, Set<String>> dependencies, String name)
+   {
+      Set<String> deps = dependencies.get(name);
+      if (deps == null)
+         return Collections.emptySet();
+
+      Set<String> result = new HashSet<String>(deps.size());
+      for (String dependency : deps)
+      {
+         if (dependencies.containsKey(dependency))
+            result.add(dependency);
+      }
+
+      return result;
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder("BeanGraph[");
+      sb = sb.append("Units=" + units.size() + ",");
+      sb = sb.append("Beans=" + dependencies.size() + ",");
+      sb = sb.append("Problems=" + problems);
+      sb = sb.append("]");
+
+      return sb.toString();
+   }
+
+   /**
+    * A parsed descriptor
+    */
+   static final class Unit
+   {
+      /** The URL */
+      private URL url;
+
+      /** The deployment */
+      private Deployment deployment;
+
+      /** The deployment plan entry */
+      private DeploymentPlan.Entry planEntry;
+
+      /**
+       * Constructor
+       * @param url The URL
+       * @param deployment The deployment
+       * @param planEntry The deployment plan entry; <code>null</code> if not enabled
+       */
+      Unit(URL url, Deployment deployment, DeploymentPlan.Entry planEntry)
+      {
+         this.url = url;
+         this.deployment = deployment;
+         this.planEntry = planEntry;
+      }
+
+      /**
+       * Get the URL
+       * @return The value
+       */
+      URL getURL()
+      {
+         return url;
+      }
+
+      /**
+       * Get the deployment
+       * @return The value
+       */
+      Deployment getDeployment()
+      {
+         return deployment;
+      }
+
+      /**
+       * Get the deployment plan entry
+       * @return The value; <code>null</code> if not enabled
+       */
+      DeploymentPlan.Entry getPlanEntry()
+      {
+         return planEntry;
+      }
+
+      /**
+       * Get the bean definitions in start order
+       * @return The value
+       */
+      List<BeanType> getBeans()
+      {
+         return planEntry != null ? planEntry.getBeans() : deployment.getBean();
+      }
+   }
+}
@@ -0,0 +1,178 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.spi.deployers.DeployException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An asynchronous bean lookup.
+ *
+ * The lookup completes when the bean reaches STARTED, and fails when
+ * the bean reaches ERROR
+ *
+ * @param <T> The expected type of the bean
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class BeanLookup<T> implements Future<T>, BeanFuture.Listener
+{
+   /** The kernel */
+   private KernelImpl kernel;
+
+   /** The completion handle */
+   private BeanFuture future;
+
+   /** The expected type */
+   private Class<T> expectedType;
+
+   /** The latch */
+   private CountDownLatch latch;
+
+   /** The bean */
+   private volatile T bean;
+
+   /** The failure */
+   private volatile Throwable failure;
+
+   /** Cancelled */
+   private volatile boolean cancelled;
+
+   /**
+    * Constructor
+    * @param kernel The kernel
+    * @param future The completion handle of the bean
+    * @param expectedType The expected type of the bean
+    */
+   BeanLookup(KernelImpl kernel, BeanFuture future, Class<T> expectedType)
+   {
+      this.kernel = kernel;
+      this.future = future;
+      this.expectedType = expectedType;
+      this.latch = new CountDownLatch(1);
+      this.bean = null;
+      this.failure = null;
+      this.cancelled = false;
+
+      future.addListener(this);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void completed(String name, ServiceLifecycle status)
+   {
+      if (latch.getCount() == 0)
+         return;
+
+      if (status == ServiceLifecycle.STARTED)
+      {
+         try
+         {
+            bean = expectedType.cast(kernel.getBean(name));
+         }
+         catch (ClassCastException cce)
+         {
+            failure = cce;
+         }
+      }
+      else
+      {
+         failure = new DeployException("Bean " + name + " failed to start");
+      }
+
+      latch.countDown();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean cancel(boolean mayInterruptIfRunning)
+   {
+      if (latch.getCount() == 0)
+         return false;
+
+      cancelled = true;
+      latch.countDown();
+
+      future.removeListener(this);
+
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isCancelled()
+   {
+      return cancelled;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isDone()
+   {
+      return latch.getCount() == 0;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public T get() throws InterruptedException, ExecutionException
+   {
+      latch.await();
+
+      return getResult();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+   {
+      if (!latch.await(timeout, unit))
+         throw new TimeoutException("Bean " + future.getName() + " not started within " + timeout + " " + unit);
+
+      return getResult();
+   }
+
+   /**
+    * Get the result
+    * @return The bean
+    * @exception ExecutionException Thrown if the bean failed
+    */
+   private T getResult() throws ExecutionException
+   {
+      if (cancelled)
+         throw new CancellationException("Lookup of bean " + future.getName() + " cancelled");
+
+      if (failure != null)
+         throw new ExecutionException(failure);
+
+      return bean;
+   }
+}
@@ -0,0 +1,182 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bean scheduler for Fungal.
+ *
+ * A bean deployer is only handed to the bounded thread pool once all of
+ * its dependencies have reached either STARTED or ERROR, so no thread is
+ * parked waiting for other beans to start.
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class BeanScheduler
+{
+   /** The kernel */
+   private KernelImpl kernel;
+
+   /** The executor for beans that are ready */
+   private ExecutorService executor;
+
+   /**
+    * Constructor
+    * @param kernel The kernel
+    * @param threads The number of threads
+    * @param tf The thread factory
+    */
+   public BeanScheduler(KernelImpl kernel, int threads, ThreadFactory tf)
+   {
+      if (kernel == null)
+         throw new IllegalArgumentException("Kernel is null");
+
+      if (threads <= 0)
+         throw new IllegalArgumentException("Threads is invalid");
+
+      if (tf == null)
+         throw new IllegalArgumentException("ThreadFactory is null");
+
+      this.kernel = kernel;
+
+      ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads, threads,
+                                                      60, TimeUnit.SECONDS,
+                                                      new LinkedBlockingQueue<Runnable>(),
+                                                      tf);
+      tpe.allowCoreThreadTimeOut(true);
+
+      this.executor = tpe;
+   }
+
+   /**
+    * Constructor
+    * @param kernel The kernel
+    * @param executor The executor for beans that are ready
+    */
+   public BeanScheduler(KernelImpl kernel, ExecutorService executor)
+   {
+      if (kernel == null)
+         throw new IllegalArgumentException("Kernel is null");
+
+      if (executor == null)
+         throw new IllegalArgumentException("Executor is null");
+
+      this.kernel = kernel;
+      this.executor = executor;
+   }
+
+   /**
+    * Schedule a bean deployer. The deployer is executed once all dependencies
+    * have been resolved
+    * @param name The name of the bean
+    * @param dependencies The names of the beans that the bean depends on; may be <code>null</code>
+    * @param deployer The deployer
+    */
+   public void schedule(String name, Set<String> dependencies, Runnable deployer)
+   {
+      if (dependencies == null || dependencies.size() == 0)
+      {
+         executor.execute(deployer);
+      }
+      else
+      {
+         PendingBean pending = new PendingBean(dependencies, deployer);
+
+         for (String dependency : dependencies)
+         {
+            kernel.addBeanDependants(name, dependency, pending);
+         }
+      }
+   }
+
+   /**
+    * Get the executor service used for beans that are ready
+    * @return The executor service
+    */
+   ExecutorService getExecutorService()
+   {
+      return executor;
+   }
+
+   /**
+    * Shutdown
+    */
+   public void shutdown()
+   {
+      executor.shutdown();
+   }
+
+   /**
+    * A bean waiting for its dependencies
+    */
+   class PendingBean implements BeanFuture.Listener
+   {
+      /** The unresolved dependencies */
+      private Set<String> unresolved;
+
+      /** The number of unresolved dependencies */
+      private AtomicInteger remaining;
+
+      /** The deployer */
+      private Runnable deployer;
+
+      /**
+       * Constructor
+       * @param dependencies The dependencies
+       * @param deployer The deployer
+       */
+      PendingBean(Set<String> dependencies, Runnable deployer)
+      {
+         this.unresolved = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(dependencies.size()));
+         this.unresolved.addAll(dependencies);
+         this.remaining = new AtomicInteger(dependencies.size());
+         this.deployer = deployer;
+      }
+
+      /**
+       * A dependency has been resolved; the deployer is scheduled
+       * when the last dependency is resolved
+       * @param dependency The name of the dependency
+       */
+      void resolve(String dependency)
+      {
+         if (unresolved.remove(dependency) && remaining.decrementAndGet() == 0)
+            executor.execute(deployer);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void completed(String name, ServiceLifecycle status)
+      {
+         resolve(name);
+      }
+   }
+}
@@ -0,0 +1,147 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The bean type index for Fungal.
+ *
+ * Each bean is indexed under its class, its super classes and all the
+ * interfaces that it implements. A type is removed from the index once
+ * the last bean of the type has been removed, so the index doesn't keep
+ * classes of undeployed units alive
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class BeanTypeIndex
+{
+   /** The index */
+   private ConcurrentMap<Class<?>, ConcurrentMap<String, Object>> index;
+
+   /**
+    * Constructor
+    */
+   public BeanTypeIndex()
+   {
+      this.index = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, Object>>();
+   }
+
+   /**
+    * Add a bean
+    * @param name The name of the bean
+    * @param bean The bean
+    */
+   public synchronized void add(String name, Object bean)
+   {
+      for (Class<?> type : getTypes(bean.getClass()))
+      {
+         ConcurrentMap<String, Object> beans = index.get(type);
+         if (beans == null)
+         {
+            beans = new ConcurrentHashMap<String, Object>(1);
+            index.put(type, beans);
+         }
+
+         beans.put(name, bean);
+      }
+   }
+
+   /**
+    * Remove a bean
+    * @param name The name of the bean
+    * @param bean The bean
+    */
+   public synchronized void remove(String name, Object bean)
+   {
+      for (Class<?> type : getTypes(bean.getClass()))
+      {
+         ConcurrentMap<String, Object> beans = index.get(type);
+         if (beans != null)
+         {
+            beans.remove(name, bean);
+
+            if (beans.isEmpty())
+               index.remove(type);
+         }
+      }
+   }
+
+   /**
+    * Get the beans of a type
+    * @param type The type
+    * @return The beans by name
+    */
+   public Map<String, Object> getBeans(Class<?> type)
+   {
+      Map<String, Object> beans = index.get(type);
+
+      if (beans == null)
+         return Collections.emptyMap();
+
+      return Collections.unmodifiableMap(beans);
+   }
+
+   /**
+    * Clear
+    */
+   public synchronized void clear()
+   {
+      index.clear();
+   }
+
+   /**
+    * Get the class, the super classes and the interfaces of a class
+    * @param clz The class
+    * @return The types
+    */
+   static Set<Class<?>> getTypes(Class<?> clz)
+   {
+      Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+
+      for (Class<?> c = clz; c != null; c = c.getSuperclass())
+      {
+         types.add(c);
+         addInterfaces(c, types);
+      }
+
+      return types;
+   }
+
+   /**
+    * Add the interfaces of a type
+    * @param type The type
+    * @param types The types
+    */
+   private static void addInterfaces(Class<?> type, Set<Class<?>> types)
+   {
+      for (Class<?> i : type.getInterfaces())
+      {
+         if (types.add(i))
+            addInterfaces(i, types);
+      }
+   }
+}
@@ -0,0 +1,663 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.spi.deployers.DeployException;
+import com.github.fungal.spi.deployers.DeployerPhases;
+import com.github.fungal.spi.deployers.DeployerPhasesFilter;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * The deployer phases invoker for Fungal.
+ *
+ * In parallel mode the deployer phases are called on the executor of the kernel,
+ * and the calling thread runs the phases that the executor rejects. Phases that
+ * don't complete within the timeout from when they started are cancelled, and
+ * treated as failed
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class DeployerPhasesInvoker implements DeployerPhasesInvokerMBean
+{
+   /** The logger */
+   private static Logger log = Logger.getLogger(DeployerPhasesInvoker.class.getName());
+
+   /**
+    * The deployer phases
+    */
+   static enum Phase
+   {
+      /** Pre deploy */
+      PRE_DEPLOY,
+
+      /** Post deploy */
+      POST_DEPLOY,
+
+      /** Pre undeploy */
+      PRE_UNDEPLOY,
+
+      /** Post undeploy */
+      POST_UNDEPLOY
+   }
+
+   /** The executor */
+   private Executor executor;
+
+   /** Parallel */
+   private boolean parallel;
+
+   /** The timeout in seconds */
+   private int timeout;
+
+   /** The URL patterns for each bean */
+   private ConcurrentMap<String, Pattern[]> patterns;
+
+   /** The statistics for each bean and phase */
+   private ConcurrentMap<String, Statistics> statistics;
+
+   /**
+    * Constructor
+    * @param executor The executor
+    * @param parallel Call the deployer phases in parallel
+    * @param timeout The timeout in seconds for a deployer phase; <code>0</code> for no timeout
+    */
+   public DeployerPhasesInvoker(Executor executor, boolean parallel, int timeout)
+   {
+      if (executor == null)
+         throw new IllegalArgumentException("Executor is null");
+
+      this.executor = executor;
+      this.parallel = parallel;
+      this.timeout = timeout;
+      this.patterns = new ConcurrentHashMap<String, Pattern[]>();
+      this.statistics = new ConcurrentHashMap<String, Statistics>();
+   }
+
+   /**
+    * Call a deployer phase
+    * @param phase The phase
+    * @param url The URL of the deployment; <code>null</code> if the phase spans several deployments
+    * @param beans The deployer phases beans
+    * @param delegate True if any exception should be delegated
+    * @exception Throwable Thrown if there is an error and delegate is true
+    */
+   void invoke(Phase phase, URL url, Map<String, DeployerPhases> beans, boolean delegate) throws Throwable
+   {
+      List<Hook> hooks = new ArrayList<Hook>(beans.size());
+
+      for (Map.Entry<String, DeployerPhases> entry : beans.entrySet())
+      {
+         if (accepts(entry.getKey(), entry.getValue(), url))
+            hooks.add(new Hook(phase, entry.getKey(), entry.getValue()));
+      }
+
+      if (!parallel || hooks.size() <= 1)
+      {
+         for (Hook hook : hooks)
+         {
+            if (delegate)
+            {
+               hook.call();
+            }
+            else
+            {
+               try
+               {
+                  hook.call();
+               }
+               catch (Throwable t)
+               {
+                  log.log(Level.WARNING, t.getMessage(), t);
+               }
+            }
+         }
+
+         return;
+      }
+
+      List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(hooks.size());
+      List<FutureTask<Void>> rejected = null;
+
+      for (Hook hook : hooks)
+      {
+         FutureTask<Void> task = new FutureTask<Void>(hook);
+         tasks.add(task);
+
+         try
+         {
+            executor.execute(task);
+         }
+         catch (RejectedExecutionException ree)
+         {
+            if (rejected == null)
+               rejected = new ArrayList<FutureTask<Void>>(1);
+
+            rejected.add(task);
+         }
+      }
+
+      // Run the phases that the executor rejected
+      if (rejected != null)
+      {
+         for (FutureTask<Void> task : rejected)
+         {
+            task.run();
+         }
+      }
+
+      Throwable failure = null;
+
+      for (int i = 0; i < tasks.size(); i++)
+      {
+         FutureTask<Void> task = tasks.get(i);
+         Hook hook = hooks.get(i);
+         Throwable t = null;
+
+         try
+         {
+            if (timeout > 0)
+            {
+               await(task, hook, TimeUnit.SECONDS.toNanos(timeout));
+            }
+            else
+            {
+               task.get();
+            }
+         }
+         catch (TimeoutException te)
+         {
+            task.cancel(true);
+            getStatistics(hook.getName(), phase).timedOut();
+            t = new DeployException(phase + " of " + hook.getName() + " didn't complete within " +
+                                    timeout + " seconds");
+         }
+         catch (CancellationException ce)
+         {
+            t = new DeployException(phase + " of " + hook.getName() + " was cancelled");
+         }
+         catch (ExecutionException ee)
+         {
+            t = ee.getCause();
+         }
+
+         if (t != null)
+         {
+            if (delegate && failure == null)
+            {
+               failure = t;
+            }
+            else
+            {
+               log.log(Level.WARNING, t.getMessage(), t);
+            }
+         }
+      }
+
+      if (failure != null)
+         throw failure;
+   }
+
+   /**
+    * Wait for a phase to complete. The timeout starts when the phase starts, so
+    * the time a phase waits for a thread, or for the phases before it, doesn't count
+    * @param task The task
+    * @param hook The phase
+    * @param timeout The timeout in nanoseconds
+    * @exception ExecutionException Thrown if the phase failed
+    * @exception InterruptedException Thrown if the thread is interrupted
+    * @exception TimeoutException Thrown if the phase didn't complete within the timeout
+    */
+   private static void await(FutureTask<Void> task, Hook hook, long timeout)
+      throws ExecutionException, InterruptedException, TimeoutException
+   {
+      long started = hook.getStarted();
+      long remaining = started != 0L ? started + timeout - System.nanoTime() : timeout;
+
+      while (true)
+      {
+         try
+         {
+            task.get(Math.max(remaining, 0L), TimeUnit.NANOSECONDS);
+            return;
+         }
+         catch (TimeoutException te)
+         {
+            started = hook.getStarted();
+
+            if (started != 0L && System.nanoTime() - started >= timeout)
+               throw te;
+
+            remaining = started != 0L ? started + timeout - System.nanoTime() : timeout;
+         }
+      }
+   }
+
+   /**
+    * Remove a bean
+    * @param name The name of the bean
+    */
+   void remove(String name)
+   {
+      patterns.remove(name);
+   }
+
+   /**
+    * Should a bean be called for a deployment
+    * @param name The name of the bean
+    * @param bean The bean
+    * @param url The URL of the deployment; <code>null</code> if the phase spans several deployments
+    * @return True if the bean should be called; otherwise false
+    */
+   private boolean accepts(String name, DeployerPhases bean, URL url)
+   {
+      if (url == null || !(bean instanceof DeployerPhasesFilter))
+         return true;
+
+      Pattern[] p = patterns.get(name);
+      if (p == null)
+      {
+         String[] urlPatterns = ((DeployerPhasesFilter)bean).getUrlPatterns();
+
+         if (urlPatterns == null)
+         {
+            p = new Pattern[0];
+         }
+         else
+         {
+            p = new Pattern[urlPatterns.length];
+            for (int i = 0; i < urlPatterns.length; i++)
+            {
+               p[i] = Pattern.compile(urlPatterns[i]);
+            }
+         }
+
+         patterns.put(name, p);
+      }
+
+      if (p.length == 0)
+         return true;
+
+      String s = url.toString();
+      for (Pattern pattern : p)
+      {
+         if (pattern.matcher(s).matches())
+            return true;
+      }
+
+      return false;
+   }
+
+   /**
+    * Get the statistics for a bean and phase
+    * @param name The name of the bean
+    * @param phase The phase
+    * @return The statistics
+    */
+   private Statistics getStatistics(String name, Phase phase)
+   {
+      String key = name + ":" + phase;
+
+      Statistics s = statistics.get(key);
+      if (s == null)
+      {
+         Statistics newStatistics = new Statistics();
+         s = statistics.putIfAbsent(key, newStatistics);
+         if (s == null)
+         {
+            s = newStatistics;
+         }
+      }
+
+      return s;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isParallel()
+   {
+      return parallel;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getTimeout()
+   {
+      return timeout;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getInvocationCount()
+   {
+      long result = 0L;
+
+      for (Statistics s : statistics.values())
+      {
+         result += s.getInvocations();
+      }
+
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getFailureCount()
+   {
+      long result = 0L;
+
+      for (Statistics s : statistics.values())
+      {
+         result += s.getFailures();
+      }
+
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getTimeoutCount()
+   {
+      long result = 0L;
+
+      for (Statistics s : statistics.values())
+      {
+         result += s.getTimeouts();
+      }
+
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getTotalTime()
+   {
+      long result = 0L;
+
+      for (Statistics s : statistics.values())
+      {
+         result += s.getTotalTime();
+      }
+
+      return TimeUnit.NANOSECONDS.toMillis(result);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String report()
+   {
+      StringBuilder sb = new StringBuilder();
+
+      for (Map.Entry<String, Statistics> entry : new TreeMap<String, Statistics>(statistics).entrySet())
+      {
+         Statistics s = entry.getValue();
+
+         sb.append(entry.getKey()).append(": ");
+         sb.append("invocations=").append(s.getInvocations());
+         sb.append(" failures=").append(s.getFailures());
+         sb.append(" timeouts=").append(s.getTimeouts());
+         sb.append(" total=").append(format(s.getTotalTime()));
+         sb.append(" max=").append(format(s.getMaxTime()));
+         sb.append(" (ms)\n");
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void resetStatistics()
+   {
+      statistics.clear();
+   }
+
+   /**
+    * Format nanoseconds as milliseconds
+    * @param nanos The value
+    * @return The milliseconds
+    */
+   private static String format(long nanos)
+   {
+      return String.format(Locale.US, "%.3f", Double.valueOf(nanos / 1000000.0));
+   }
+
+   /**
+    * A deployer phase of a bean
+    */
+   class Hook implements Callable<Void>
+   {
+      /** The phase */
+      private Phase phase;
+
+      /** The name */
+      private String name;
+
+      /** The bean */
+      private DeployerPhases bean;
+
+      /** The time the phase started; <code>0</code> if it hasn't started */
+      private volatile long started;
+
+      /**
+       * Constructor
+       * @param phase The phase
+       * @param name The name of the bean
+       * @param bean The bean
+       */
+      Hook(Phase phase, String name, DeployerPhases bean)
+      {
+         this.phase = phase;
+         this.name = name;
+         this.bean = bean;
+         this.started = 0L;
+      }
+
+      /**
+       * Get the name of the bean
+       * @return The value
+       */
+      String getName()
+      {
+         return name;
+      }
+
+      /**
+       * Get the time the phase started
+       * @return The value; <code>0</code> if the phase hasn't started
+       */
+      long getStarted()
+      {
+         return started;
+      }
+
+      /**
+       * Call the phase
+       * @return <code>null</code>
+       * @exception Exception Thrown if the phase fails
+       */
+      public Void call() throws Exception
+      {
+         long start = System.nanoTime();
+         started = start;
+         boolean failed = true;
+
+         try
+         {
+            switch (phase)
+            {
+               case PRE_DEPLOY:
+                  bean.preDeploy();
+                  break;
+               case POST_DEPLOY:
+                  bean.postDeploy();
+                  break;
+               case PRE_UNDEPLOY:
+                  bean.preUndeploy();
+                  break;
+               default:
+                  bean.postUndeploy();
+                  break;
+            }
+
+            failed = false;
+         }
+         catch (Exception e)
+         {
+            throw e;
+         }
+         catch (Error e)
+         {
+            throw e;
+         }
+         catch (Throwable t)
+         {
+            throw new Exception(t.getMessage(), t);
+         }
+         finally
+         {
+            getStatistics(name, phase).record(System.nanoTime() - start, failed);
+         }
+
+         return null;
+      }
+   }
+
+   /**
+    * The statistics of a bean and phase
+    */
+   static class Statistics
+   {
+      /** Invocations */
+      private AtomicLong invocations = new AtomicLong(0);
+
+      /** Failures */
+      private AtomicLong failures = new AtomicLong(0);
+
+      /** Timeouts */
+      private AtomicLong timeouts = new AtomicLong(0);
+
+      /** Total time */
+      private AtomicLong totalTime = new AtomicLong(0);
+
+      /** Max time */
+      private AtomicLong maxTime = new AtomicLong(0);
+
+      /**
+       * Record an invocation
+       * @param nanos The time
+       * @param failed Did the invocation fail
+       */
+      void record(long nanos, boolean failed)
+      {
+         invocations.incrementAndGet();
+         totalTime.addAndGet(nanos);
+
+         if (failed)
+            failures.incrementAndGet();
+
+         long max = maxTime.get();
+         while (nanos > max && !maxTime.compareAndSet(max, nanos))
+         {
+            max = maxTime.get();
+         }
+      }
+
+      /**
+       * An invocation timed out
+       */
+      void timedOut()
+      {
+         timeouts.incrementAndGet();
+      }
+
+      /**
+       * Get the number of invocations
+       * @return The value
+       */
+      long getInvocations()
+      {
+         return invocations.get();
+      }
+
+      /**
+       * Get the number of failures
+       * @return The value
+       */
+      long getFailures()
+      {
+         return failures.get();
+      }
+
+      /**
+       * Get the number of timeouts
+       * @return The value
+       */
+      long getTimeouts()
+      {
+         return timeouts.get();
+      }
+
+      /**
+       * Get the total time
+       * @return The value
+       */
+      long getTotalTime()
+      {
+         return totalTime.get();
+      }
+
+      /**
+       * Get the max time
+       * @return The value
+       */
+      long getMaxTime()
+      {
+         return maxTime.get();
+      }
+   }
+}
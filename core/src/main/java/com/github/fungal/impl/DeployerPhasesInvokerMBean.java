@@ -0,0 +1,75 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+/**
+ * The deployer phases MBean for Fungal
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public interface DeployerPhasesInvokerMBean
+{
+   /**
+    * Is the deployer phases called in parallel
+    * @return The value
+    */
+   public boolean isParallel();
+
+   /**
+    * Get the timeout in seconds for a deployer phase
+    * @return The value
+    */
+   public int getTimeout();
+
+   /**
+    * Get the number of deployer phases called
+    * @return The value
+    */
+   public long getInvocationCount();
+
+   /**
+    * Get the number of deployer phases that failed
+    * @return The value
+    */
+   public long getFailureCount();
+
+   /**
+    * Get the number of deployer phases that didn't complete within the timeout
+    * @return The value
+    */
+   public long getTimeoutCount();
+
+   /**
+    * Get the total time in milliseconds spent in deployer phases
+    * @return The value
+    */
+   public long getTotalTime();
+
+   /**
+    * Report the statistics for each bean and phase
+    * @return The report
+    */
+   public String report();
+
+   /**
+    * Reset the statistics
+    */
+   public void resetStatistics();
+}
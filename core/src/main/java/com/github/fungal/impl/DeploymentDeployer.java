@@ -20,9 +20,10 @@
 
 package com.github.fungal.impl;
 
+import com.github.fungal.api.SharedResources;
+import com.github.fungal.api.util.ClassMetadata;
 import com.github.fungal.deployment.BeanType;
 import com.github.fungal.deployment.ConstructorType;
-import com.github.fungal.deployment.DependsType;
 import com.github.fungal.deployment.EntryType;
 import com.github.fungal.deployment.IncallbackType;
 import com.github.fungal.deployment.InjectType;
@@ -44,9 +45,9 @@ import com.github.fungal.spi.deployers.Deployer;
 import com.github.fungal.spi.deployers.DeployerPhases;
 import com.github.fungal.spi.deployers.Deployment;
 
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.URL;
@@ -54,13 +55,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -106,54 +107,56 @@ public final class DeploymentDeployer implements CloneableDeployer
       DeployException deployException = null;
       try
       {
-         Unmarshaller deploymentU = new Unmarshaller();
-         com.github.fungal.deployment.Deployment deployment = 
-            deploymentU.unmarshal(url);
+         // The descriptor has already been parsed if it is part of the startup bean graph
+         BeanGraph graph = kernel.getBeanGraph();
+         BeanGraph.Unit unit = graph != null ? graph.getUnit(url) : null;
 
-         if (deployment != null && deployment.getBean().size() > 0)
+         if (unit == null && kernel.getKernelConfiguration().isStreamingDeploy() &&
+             kernel.getDeploymentPlan() == null)
          {
-            for (BeanType bt : deployment.getBean())
+            Beans beans = stream(url, parent);
+
+            if (beans.size() > 0)
             {
-               kernel.setBeanStatus(bt.getName(), ServiceLifecycle.NOT_STARTED);
+               beans.await();
+
+               deployException = beans.getDeployException();
+               if (deployException == null)
+                  return beans.getDeployment();
             }
+         }
+         else
+         {
+            if (unit == null)
+               unit = BeanGraph.parse(url, kernel.getDeploymentPlan(),
+                                      kernel.getKernelConfiguration().getSharedResources());
 
-            kernel.beansRegistered();
+            com.github.fungal.deployment.Deployment deployment = unit.getDeployment();
 
-            List<BeanDeployer> deployers = new ArrayList<BeanDeployer>(deployment.getBean().size());
-            List<String> beans = Collections.synchronizedList(new ArrayList<String>(deployment.getBean().size()));
-            Map<String, List<Method>> uninstall = 
-               new ConcurrentHashMap<String, List<Method>>(deployment.getBean().size());
-            Map<String, String> stops =
-               Collections.synchronizedMap(new HashMap<String, String>(deployment.getBean().size()));
-            Map<String, String> destroys =
-               Collections.synchronizedMap(new HashMap<String, String>(deployment.getBean().size()));
-            Set<String> ignoreStops = Collections.synchronizedSet(new HashSet<String>(deployment.getBean().size()));
-            Set<String> ignoreDestroys = Collections.synchronizedSet(new HashSet<String>(deployment.getBean().size()));
+            if (deployment != null && deployment.getBean().size() > 0)
+            {
+               List<BeanType> beanTypes = unit.getBeans();
 
-            final CountDownLatch beansLatch = new CountDownLatch(deployment.getBean().size());
+               for (BeanType bt : beanTypes)
+               {
+                  kernel.setBeanStatus(bt.getName(), ServiceLifecycle.NOT_STARTED);
+               }
 
-            for (BeanType bt : deployment.getBean())
-            {
-               BeanDeployer deployer = new BeanDeployer(bt, beans, uninstall,
-                                                        stops, destroys, ignoreStops, ignoreDestroys,
-                                                        kernel, beansLatch, parent, log);
-               deployers.add(deployer);
+               kernel.beansRegistered();
 
-               kernel.getExecutorService().submit(deployer);
-            }
+               Beans beans = new Beans(url, parent, unit.getPlanEntry(), beanTypes.size());
 
-            beansLatch.await();
+               for (BeanType bt : beanTypes)
+               {
+                  beans.schedule(bt, graph != null ? graph.getProblem(bt.getName()) : null, true);
+               }
 
-            Iterator<BeanDeployer> it = deployers.iterator();
-            while (deployException == null && it.hasNext())
-            {
-               BeanDeployer deployer = it.next();
-               if (deployer.getDeployException() != null)
-                  deployException = deployer.getDeployException();
-            }
+               beans.await();
 
-            if (deployException == null)
-               return new BeanDeployment(url, beans, uninstall, stops, destroys, ignoreStops, ignoreDestroys, kernel);
+               deployException = beans.getDeployException();
+               if (deployException == null)
+                  return beans.getDeployment();
+            }
          }
       }
       catch (Throwable t)
@@ -168,6 +171,306 @@ public final class DeploymentDeployer implements CloneableDeployer
       return null;
    }
 
+   /**
+    * Deploy the beans of a descriptor while it is parsed; each bean is scheduled as
+    * soon as its element has been read, so beans without pending dependencies are
+    * started while the rest of the descriptor is parsed
+    * @param url The URL
+    * @param parent The parent classloader
+    * @return The scheduled beans
+    * @exception Throwable Thrown if the descriptor can't be parsed
+    */
+   private Beans stream(URL url, ClassLoader parent) throws Throwable
+   {
+      final Beans beans = new Beans(url, parent, null, 16);
+
+      Unmarshaller.Listener listener = new Unmarshaller.Listener()
+      {
+         public void bean(BeanType bt)
+         {
+            kernel.setBeanStatus(bt.getName(), ServiceLifecycle.NOT_STARTED);
+
+            // A dependency may be defined later in the descriptor
+            beans.schedule(bt, null, false);
+         }
+      };
+
+      SharedResources sharedResources = kernel.getKernelConfiguration().getSharedResources();
+      Unmarshaller deploymentU = new Unmarshaller();
+      try
+      {
+         if (sharedResources != null)
+         {
+            byte[] content = DeploymentPlan.read(url);
+            String hash = DeploymentPlan.hash(content);
+
+            // Another kernel may already have parsed the same content
+            com.github.fungal.deployment.Deployment deployment = sharedResources.getDescriptor(url, hash);
+            if (deployment != null)
+            {
+               for (BeanType bt : deployment.getBean())
+               {
+                  listener.bean(bt);
+               }
+            }
+            else
+            {
+               deployment = deploymentU.unmarshal(new ByteArrayInputStream(content), listener);
+               sharedResources.addDescriptor(url, hash, deployment);
+            }
+         }
+         else
+         {
+            deploymentU.unmarshal(url, listener);
+         }
+      }
+      catch (Throwable t)
+      {
+         beans.fail(new DeployException("Deployment " + url + " couldn't be parsed", t));
+         beans.await();
+
+         // The beans read before the error may have started, but the deployment isn't registered
+         beans.discard();
+
+         throw t;
+      }
+      finally
+      {
+         kernel.beansRegistered();
+      }
+
+      beans.checkDependencies();
+
+      return beans;
+   }
+
+   /**
+    * Is a bean created on first use
+    * @param bt The bean
+    * @param lazyBeans The kernel default
+    * @return True if the bean is lazy; otherwise false
+    */
+   static boolean isLazy(BeanType bt, boolean lazyBeans)
+   {
+      if (bt.getLazy() != null)
+         return bt.getLazy().booleanValue();
+
+      return lazyBeans;
+   }
+
+   /**
+    * The beans of a deployment
+    */
+   private class Beans
+   {
+      /** The deployment */
+      private URL url;
+
+      /** The parent classloader */
+      private ClassLoader parent;
+
+      /** The deployment plan; may be <code>null</code> */
+      private DeploymentPlan.Entry planEntry;
+
+      /** Lazy beans by default */
+      private boolean lazyBeans;
+
+      /** The deployers */
+      private List<BeanDeployer> deployers;
+
+      /** The latches of the beans that aren't lazy */
+      private List<CountDownLatch> latches;
+
+      /** The bean names */
+      private List<String> beans;
+
+      /** Uninstall methods */
+      private Map<String, List<BeanFactory.Invoker>> uninstall;
+
+      /** Stop */
+      private Map<String, String> stops;
+
+      /** Destroy */
+      private Map<String, String> destroys;
+
+      /** Ignore stop */
+      private Set<String> ignoreStops;
+
+      /** Ignore destroy */
+      private Set<String> ignoreDestroys;
+
+      /**
+       * Constructor
+       * @param url The deployment
+       * @param parent The parent classloader
+       * @param planEntry The deployment plan; may be <code>null</code>
+       * @param size The expected number of beans
+       */
+      Beans(URL url, ClassLoader parent, DeploymentPlan.Entry planEntry, int size)
+      {
+         this.url = url;
+         this.parent = parent;
+         this.planEntry = planEntry;
+         this.lazyBeans = kernel.getKernelConfiguration().isLazyBeans();
+         this.deployers = new ArrayList<BeanDeployer>(size);
+         this.latches = new ArrayList<CountDownLatch>(size);
+         this.beans = Collections.synchronizedList(new ArrayList<String>(size));
+         this.uninstall = new ConcurrentHashMap<String, List<BeanFactory.Invoker>>(size);
+         this.stops = Collections.synchronizedMap(new HashMap<String, String>(size));
+         this.destroys = Collections.synchronizedMap(new HashMap<String, String>(size));
+         this.ignoreStops = Collections.synchronizedSet(new HashSet<String>(size));
+         this.ignoreDestroys = Collections.synchronizedSet(new HashSet<String>(size));
+      }
+
+      /**
+       * Get the number of beans
+       * @return The value
+       */
+      int size()
+      {
+         return deployers.size();
+      }
+
+      /**
+       * Schedule a bean
+       * @param bt The bean
+       * @param problem The reason the bean was rejected; <code>null</code> if it wasn't
+       * @param check Fail the bean if it depends on an unknown bean
+       */
+      void schedule(BeanType bt, String problem, boolean check)
+      {
+         boolean lazy = isLazy(bt, lazyBeans);
+
+         // Lazy beans are deployed after the deployment, so the deployment doesn't wait for them
+         CountDownLatch latch = new CountDownLatch(1);
+         if (!lazy)
+            latches.add(latch);
+
+         BeanDeployer deployer = new BeanDeployer(bt, beans, uninstall,
+                                                  stops, destroys, ignoreStops, ignoreDestroys,
+                                                  kernel, latch, parent, log);
+         deployer.setPlan(planEntry);
+         deployers.add(deployer);
+
+         try
+         {
+            if (problem != null)
+               throw new DeployException(problem);
+
+            Set<String> dependencies = check ? deployer.getDependencies() : BeanGraph.getDependencies(bt);
+
+            if (lazy)
+            {
+               kernel.addLazyBean(new LazyBean(url, bt.getName(), dependencies, deployer));
+            }
+            else
+            {
+               deployer.setProfile(kernel.getStartupProfiler().register(bt.getName(), dependencies));
+
+               Watchdog watchdog = kernel.getWatchdog();
+               if (watchdog != null)
+                  watchdog.watch(bt.getName(), deployer);
+
+               kernel.getBeanScheduler().schedule(bt.getName(), dependencies, deployer);
+            }
+         }
+         catch (DeployException de)
+         {
+            deployer.failed(de);
+         }
+      }
+
+      /**
+       * Fail the beans that depend on an unknown bean
+       */
+      void checkDependencies()
+      {
+         for (BeanDeployer deployer : deployers)
+         {
+            try
+            {
+               deployer.getDependencies();
+            }
+            catch (DeployException de)
+            {
+               deployer.failed(de);
+            }
+         }
+      }
+
+      /**
+       * Fail the beans that haven't completed
+       * @param de The deploy exception
+       */
+      void fail(DeployException de)
+      {
+         for (BeanDeployer deployer : deployers)
+         {
+            deployer.failed(de);
+         }
+      }
+
+      /**
+       * Wait for the beans that aren't lazy
+       * @exception InterruptedException Thrown if interrupted
+       */
+      void await() throws InterruptedException
+      {
+         for (CountDownLatch latch : latches)
+         {
+            DeploymentTask.await(latch);
+         }
+      }
+
+      /**
+       * Stop and destroy the beans that have started, and release the names of the beans
+       */
+      void discard()
+      {
+         try
+         {
+            BeanDeployment deployment = getDeployment();
+            deployment.stop();
+            deployment.destroy();
+         }
+         catch (Throwable t)
+         {
+            log.log(Level.WARNING, "Undeploying " + url, t);
+         }
+
+         for (BeanDeployer deployer : deployers)
+         {
+            // A bean with the same name may belong to another deployment
+            if (!kernel.hasBean(deployer.getName()))
+               kernel.removeBean(deployer.getName());
+         }
+      }
+
+      /**
+       * Get the first deploy exception
+       * @return null if no error; otherwise the exception
+       */
+      DeployException getDeployException()
+      {
+         for (BeanDeployer deployer : deployers)
+         {
+            if (deployer.getDeployException() != null)
+               return deployer.getDeployException();
+         }
+
+         return null;
+      }
+
+      /**
+       * Get the deployment
+       * @return The deployment
+       */
+      BeanDeployment getDeployment()
+      {
+         return new BeanDeployment(url, beans, uninstall, stops, destroys, ignoreStops, ignoreDestroys, kernel);
+      }
+   }
+
    /**
     * Bean deployer
     */
@@ -183,7 +486,7 @@ public final class DeploymentDeployer implements CloneableDeployer
       private List<String> beans;
 
       /** Uninstall methods */
-      private Map<String, List<Method>> uninstall;
+      private Map<String, List<BeanFactory.Invoker>> uninstall;
 
       /** Stop */
       private Map<String, String> stops;
@@ -212,6 +515,15 @@ public final class DeploymentDeployer implements CloneableDeployer
       /** DeployException */
       private DeployException deployException;
 
+      /** The startup profile */
+      private StartupProfiler.BeanProfile profile;
+
+      /** The deployment plan; may be <code>null</code> */
+      private DeploymentPlan.Entry plan;
+
+      /** Completed; either started or failed */
+      private AtomicBoolean completed;
+
       static
       {
          SUPPORTED_TYPES.add(String.class);
@@ -251,7 +563,7 @@ public final class DeploymentDeployer implements CloneableDeployer
        */
       public BeanDeployer(BeanType bt, 
                           List<String> beans,
-                          Map<String, List<Method>> uninstall,
+                          Map<String, List<BeanFactory.Invoker>> uninstall,
                           Map<String, String> stops,
                           Map<String, String> destroys,
                           Set<String> ignoreStops,
@@ -273,6 +585,36 @@ public final class DeploymentDeployer implements CloneableDeployer
          this.classLoader = classLoader;
          this.log = log;
          this.deployException = null;
+         this.profile = null;
+         this.plan = null;
+         this.completed = new AtomicBoolean(false);
+      }
+
+      /**
+       * Set the startup profile
+       * @param profile The profile
+       */
+      void setProfile(StartupProfiler.BeanProfile profile)
+      {
+         this.profile = profile;
+      }
+
+      /**
+       * Get the startup profile
+       * @return The profile; <code>null</code> if the bean hasn't been scheduled
+       */
+      StartupProfiler.BeanProfile getProfile()
+      {
+         return profile;
+      }
+
+      /**
+       * Set the deployment plan
+       * @param plan The plan; may be <code>null</code>
+       */
+      void setPlan(DeploymentPlan.Entry plan)
+      {
+         this.plan = plan;
       }
 
       /**
@@ -280,42 +622,56 @@ public final class DeploymentDeployer implements CloneableDeployer
        */
       public void run()
       {
+         // The bean was failed while it waited for its dependencies
+         if (completed.get())
+            return;
+
          SecurityActions.setThreadContextClassLoader(classLoader);
 
+         profile.running();
+
          String beanName = bt.getName();
          try
          {
-            if (kernel.getBean(beanName) == null)
+            if (!kernel.hasBean(beanName))
             {
-               CountDownLatch dependencies = getDependencies(bt);
-
-               try
-               {
-                  if (dependencies != null)
-                     dependencies.await();
-               }
-               catch (InterruptedException ie)
-               {
-                  Thread.interrupted();
-               }
-
                kernel.setBeanStatus(beanName, ServiceLifecycle.STARTING);
 
                Object bean = createBean(bt, classLoader);
 
+               if (!complete())
+               {
+                  log.warning("Bean " + beanName + " started after the watchdog failed it; it is destroyed");
+                  discard(beanName, bean);
+                  return;
+               }
+
                kernel.addBean(beanName, bean); 
                beans.add(beanName);
 
+               profile.completed(false);
+
+               if (plan != null)
+                  plan.started(beanName);
+
                kernel.setBeanStatus(beanName, ServiceLifecycle.STARTED);
             }
             else
             {
+               complete();
                log.warning("Warning: A service with name " + beanName + " already exists");
             }
          }
          catch (Throwable t)
          {
+            if (!complete())
+            {
+               log.log(Level.WARNING, "Bean " + beanName + " failed after the watchdog failed it", t);
+               return;
+            }
+
             deployException = new DeployException("Installing bean " + beanName, t);
+            profile.completed(true);
             kernel.setBeanStatus(beanName, ServiceLifecycle.ERROR);
             log.log(Level.SEVERE, "Installing bean " + beanName, t);
          }
@@ -324,95 +680,109 @@ public final class DeploymentDeployer implements CloneableDeployer
       }
 
       /**
-       * Get deploy exception
-       * @return null if no error; otherwise the exception
+       * Stop and destroy a bean that was started after it was failed, as it
+       * isn't part of the deployment, and release its name
+       * @param beanName The name of the bean
+       * @param bean The bean
        */
-      public DeployException getDeployException()
+      private void discard(String beanName, Object bean)
       {
-         return deployException;
+         try
+         {
+            BeanDeployment.stopBean(beanName, bean, uninstall, stops, destroys, ignoreStops, ignoreDestroys);
+         }
+         catch (Throwable t)
+         {
+            log.log(Level.WARNING, "Destroying bean " + beanName, t);
+         }
+         finally
+         {
+            uninstall.remove(beanName);
+            stops.remove(beanName);
+            destroys.remove(beanName);
+            ignoreStops.remove(beanName);
+            ignoreDestroys.remove(beanName);
+
+            kernel.removeBean(beanName);
+         }
       }
 
       /**
-       * Get the dependencies for a bean
-       * @paran bt The bean type
-       * @return The count down latch for the dependencies; <code>null</code> if no dependencies
-       * @exception DeployException Thrown if an error occurs
+       * The bean couldn't be scheduled, or has stalled
+       * @param de The deploy exception
+       * @return True if the bean was failed; false if it had already completed
        */
-      private CountDownLatch getDependencies(BeanType bt) throws DeployException
+      boolean failed(DeployException de)
       {
-         Set<String> deps = null;
+         if (!complete())
+            return false;
 
-         List<DependsType> dts = bt.getDepends();
-         if (dts.size() > 0)
-         {
-            deps = new HashSet<String>(dts.size());
-            for (DependsType dt : dts)
-            {
-               deps.add(dt.getValue());
-            }
-         }
+         String beanName = bt.getName();
 
-         List<PropertyType> pts = bt.getProperty();
-         if (pts.size() > 0)
-         {
-            for (PropertyType pt : pts)
-            {
-               Object element = pt.getContent().get(0);
+         deployException = new DeployException("Installing bean " + beanName, de);
 
-               if (element != null && element instanceof InjectType)
-               {
-                  if (deps == null)
-                     deps = new HashSet<String>(1);
+         if (profile != null)
+            profile.completed(true);
 
-                  InjectType it = (InjectType)element;
-                  deps.add(it.getBean());
-               }
-            }
-         }
+         kernel.setBeanStatus(beanName, ServiceLifecycle.ERROR);
+         log.log(Level.SEVERE, "Installing bean " + beanName, de);
 
-         ConstructorType ct = bt.getConstructor();
-         if (ct != null)
-         {
-            if (ct.getFactory() != null)
-            {
-               if (deps == null)
-                  deps = new HashSet<String>(1);
+         beansLatch.countDown();
 
-               deps.add(ct.getFactory().getBean());
-            }
-            
-            if (ct.getParameter() != null && ct.getParameter().size() > 0)
-            {
-               for (ParameterType pt : ct.getParameter())
-               {
-                  Object v = pt.getContent().get(0);
-                  if (v instanceof InjectType)
-                  {
-                     if (deps == null)
-                        deps = new HashSet<String>(1);
+         return true;
+      }
 
-                     InjectType it = (InjectType)v;
-                     deps.add(it.getBean());
-                  }
-               }
-            }
-         }
+      /**
+       * Mark the bean as completed, and stop watching it
+       * @return True if this call completed the bean; false if it had already completed
+       */
+      private boolean complete()
+      {
+         Watchdog watchdog = kernel.getWatchdog();
+         if (watchdog != null)
+            watchdog.unwatch(bt.getName());
+
+         return completed.compareAndSet(false, true);
+      }
+
+      /**
+       * Get the name of the bean
+       * @return The name
+       */
+      String getName()
+      {
+         return bt.getName();
+      }
+
+      /**
+       * Get deploy exception
+       * @return null if no error; otherwise the exception
+       */
+      public DeployException getDeployException()
+      {
+         return deployException;
+      }
+
+      /**
+       * Get the dependencies for the bean
+       * @return The names of the dependencies; <code>null</code> if no dependencies
+       * @exception DeployException Thrown if an error occurs
+       */
+      Set<String> getDependencies() throws DeployException
+      {
+         Set<String> deps = BeanGraph.getDependencies(bt);
 
          if (deps != null && deps.size() > 0)
          {
-            CountDownLatch cdl = new CountDownLatch(deps.size());
-
             for (String dependency : deps)
             {
                ServiceLifecycle dependencyStatus = kernel.getBeanStatus(dependency);
                
                if (dependencyStatus == null && kernel.isAllBeansRegistered())
                   throw new DeployException("Unknown dependency: " + dependency);
-
-               kernel.addBeanDependants(bt.getName(), dependency, cdl);
             }
 
-            return cdl;
+            return deps;
          }
 
          return null;
@@ -431,14 +801,15 @@ public final class DeploymentDeployer implements CloneableDeployer
          Class<?> clz = null;
          Object instance = null;
 
+         long start = System.nanoTime();
+         long loading = 0L;
+
          if (bt.getClazz() != null && bt.getConstructor() == null)
          {
             clz = Class.forName(bt.getClazz(), true, cl);
+            loading = System.nanoTime() - start;
 
-            Constructor<?> con = findConstructor(clz, null, cl);
-            con.setAccessible(true);
-
-            instance = con.newInstance();
+            instance = getConstructor(clz, null, cl).invoke(null);
          }
          else
          {
@@ -459,33 +830,31 @@ public final class DeploymentDeployer implements CloneableDeployer
                if (fcs == null)
                   fcs = bt.getClazz();
 
+               long l = System.nanoTime();
                factoryClass = Class.forName(fcs, true, cl);
+               loading = System.nanoTime() - l;
             }
 
             if (ct.getFactoryMethod() == null)
             {
                if (ct.getParameter() == null || ct.getParameter().size() == 0)
                {
-                  Constructor<?> con = findConstructor(factoryClass, null, cl);
-                  con.setAccessible(true);
-
-                  instance = con.newInstance();
+                  instance = getConstructor(factoryClass, null, cl).invoke(null);
                   clz = instance.getClass();
                }
                else
                {
-                  Constructor<?> factoryConstructor = findConstructor(factoryClass, ct.getParameter(), cl);
+                  BeanFactory.Invoker factoryConstructor = getConstructor(factoryClass, ct.getParameter(), cl);
                   Object[] args = getArguments(ct.getParameter(), factoryConstructor.getParameterTypes(), cl);
 
-                  factoryConstructor.setAccessible(true);
-                  instance = factoryConstructor.newInstance(args);
+                  instance = factoryConstructor.invoke(null, args);
                   clz = instance.getClass();
                }
             }
             else
             {
-               Method factoryMethod = findMethod(factoryClass, ct.getFactoryMethod(), ct.getParameter(), cl);
-               factoryMethod.setAccessible(true);
+               BeanFactory.Invoker factoryMethod = getFactoryMethod(factoryClass, ct.getFactoryMethod(),
+                                                                    ct.getParameter(), cl);
 
                if (ct.getParameter() == null || ct.getParameter().size() == 0)
                {
@@ -501,59 +870,50 @@ public final class DeploymentDeployer implements CloneableDeployer
             }
          }
 
+         profile.addClassLoading(loading);
+         profile.addConstruction(System.nanoTime() - start - loading);
+
          // Bean properties
          if (bt.getProperty() != null)
          {
+            start = System.nanoTime();
+
             for (PropertyType pt : bt.getProperty())
             {
                setBeanProperty(instance, pt, cl);
             }
+
+            profile.addInjection(System.nanoTime() - start);
          }
 
+         start = System.nanoTime();
+
+         BeanFactory factory = BeanFactory.getFactory(clz);
+
          if (bt.getIgnoreCreate() == null)
          {
-            try
-            {
-               String methodName = "create";
-               if (bt.getCreate() != null && bt.getCreate().getMethod() != null)
-                  methodName = bt.getCreate().getMethod();
+            String methodName = "create";
+            if (bt.getCreate() != null && bt.getCreate().getMethod() != null)
+               methodName = bt.getCreate().getMethod();
 
-               Method createMethod = clz.getMethod(methodName, (Class[])null);
-               createMethod.setAccessible(true);
+            BeanFactory.Invoker createMethod = factory.getMethod(methodName);
+            if (createMethod != null)
                createMethod.invoke(instance);
-            }
-            catch (NoSuchMethodException nsme)
-            {
-               // No create method
-            }
-            catch (InvocationTargetException ite)
-            {
-               throw ite.getTargetException();
-            }
          }
 
          if (bt.getIgnoreStart() == null)
          {
-            try
-            {
-               String methodName = "start";
-               if (bt.getStart() != null && bt.getStart().getMethod() != null)
-                  methodName = bt.getStart().getMethod();
+            String methodName = "start";
+            if (bt.getStart() != null && bt.getStart().getMethod() != null)
+               methodName = bt.getStart().getMethod();
 
-               Method startMethod = clz.getMethod(methodName, (Class[])null);
-               startMethod.setAccessible(true);
+            BeanFactory.Invoker startMethod = factory.getMethod(methodName);
+            if (startMethod != null)
                startMethod.invoke(instance);
-            }
-            catch (NoSuchMethodException nsme)
-            {
-               // No start method
-            }
-            catch (InvocationTargetException ite)
-            {
-               throw ite.getTargetException();
-            }
          }
 
+         profile.addLifecycle(System.nanoTime() - start);
+
          if (bt.getStop() != null && bt.getStop().getMethod() != null)
             stops.put(bt.getName(), bt.getStop().getMethod());
 
@@ -561,45 +921,54 @@ public final class DeploymentDeployer implements CloneableDeployer
             destroys.put(bt.getName(), bt.getDestroy().getMethod());
 
          if (bt.getIgnoreStop() != null)
+         {
             ignoreStops.add(bt.getName());
+         }
+         else
+         {
+            // Resolve the stop method now, so undeploy doesn't need any lookups
+            factory.getMethod(bt.getStop() != null && bt.getStop().getMethod() != null ?
+                              bt.getStop().getMethod() : "stop");
+         }
 
          if (bt.getIgnoreDestroy() != null)
+         {
             ignoreDestroys.add(bt.getName());
+         }
+         else
+         {
+            factory.getMethod(bt.getDestroy() != null && bt.getDestroy().getMethod() != null ?
+                              bt.getDestroy().getMethod() : "destroy");
+         }
 
          // Invoke install methods
          if (bt.getInstall() != null && bt.getInstall().size() > 0)
          {
+            start = System.nanoTime();
+
             for (InstallType it : bt.getInstall())
             {
-               try
-               {
-                  Method method = clz.getMethod(it.getMethod(), (Class[])null);
-                  method.setAccessible(true);
-                  method.invoke(instance);
-               }
-               catch (InvocationTargetException ite)
-               {
-                  throw ite.getTargetException();
-               }
+               BeanFactory.Invoker method = factory.getMethod(it.getMethod());
+               if (method == null)
+                  throw new NoSuchMethodException(clz.getName() + "." + it.getMethod() + "()");
+
+               method.invoke(instance);
             }
+
+            profile.addLifecycle(System.nanoTime() - start);
          }
 
          // Register uninstall methods
          if (bt.getUninstall() != null && bt.getUninstall().size() > 0)
          {
-            List<Method> methods = new ArrayList<Method>(bt.getUninstall().size());
+            List<BeanFactory.Invoker> methods = new ArrayList<BeanFactory.Invoker>(bt.getUninstall().size());
             for (UninstallType ut : bt.getUninstall())
             {
-               try
-               {
-                  Method method = clz.getMethod(ut.getMethod(), (Class[])null);
-                  method.setAccessible(true);
-                  methods.add(method);
-               }
-               catch (NoSuchMethodException nsme)
-               {
+               BeanFactory.Invoker method = factory.getMethod(ut.getMethod());
+               if (method == null)
                   throw new Exception("Unknown uninstall method:" + ut.getMethod());
-               }
+
+               methods.add(method);
             }
             uninstall.put(bt.getName(), methods);
          }
@@ -609,20 +978,10 @@ public final class DeploymentDeployer implements CloneableDeployer
          {
             for (IncallbackType it : bt.getIncallback())
             {
-               List<Method> candidates = new ArrayList<Method>(1);
-               Method[] methods = clz.getMethods();
-
-               for (Method m : methods)
-               {
-                  if (m.getName().equals(it.getMethod()) && m.getParameterTypes().length == 1)
-                     candidates.add(m);
-               }
+               Method method = factory.getCallback(it.getMethod());
 
-               if (candidates.size() > 0)
+               if (method != null)
                {
-                  Method method = candidates.get(0);
-                  method.setAccessible(true);
-
                   Class<?> parameter = method.getParameterTypes()[0];
 
                   Callback cb = new Callback(parameter, method, instance);
@@ -637,20 +996,10 @@ public final class DeploymentDeployer implements CloneableDeployer
          {
             for (UncallbackType ut : bt.getUncallback())
             {
-               List<Method> candidates = new ArrayList<Method>(1);
-               Method[] methods = clz.getMethods();
+               Method method = factory.getCallback(ut.getMethod());
 
-               for (Method m : methods)
+               if (method != null)
                {
-                  if (m.getName().equals(ut.getMethod()) && m.getParameterTypes().length == 1)
-                     candidates.add(m);
-               }
-
-               if (candidates.size() > 0)
-               {
-                  Method method = candidates.get(0);
-                  method.setAccessible(true);
-
                   Class<?> parameter = method.getParameterTypes()[0];
 
                   Callback cb = new Callback(parameter, method, instance);
@@ -676,79 +1025,125 @@ public final class DeploymentDeployer implements CloneableDeployer
       }
 
       /**
-       * Find constructor
+       * Get the compiled constructor
+       * @param clz The class
+       * @param parameters The list of parameters
+       * @param cl The class loader
+       * @return The constructor
+       * @exception Throwable Thrown if a constructor cannot be found
+       */
+      private BeanFactory.Invoker getConstructor(Class<?> clz, List<ParameterType> parameters, ClassLoader cl)
+         throws Throwable
+      {
+         BeanFactory factory = BeanFactory.getFactory(clz);
+         String key = BeanFactory.key(parameters);
+
+         BeanFactory.Invoker invoker = factory.getConstructor(key);
+         if (invoker == null)
+            invoker = factory.addConstructor(key, findConstructor(clz, parameters, cl));
+
+         return invoker;
+      }
+
+      /**
+       * Get the compiled factory method
+       * @param clz The class
+       * @param name The method name
+       * @param parameters The list of parameters
+       * @param cl The class loader
+       * @return The method
+       * @exception Throwable Thrown if a method cannot be found
+       */
+      private BeanFactory.Invoker getFactoryMethod(Class<?> clz, String name, List<ParameterType> parameters,
+                                                   ClassLoader cl)
+         throws Throwable
+      {
+         BeanFactory factory = BeanFactory.getFactory(clz);
+         String key = BeanFactory.key(parameters);
+
+         BeanFactory.Invoker invoker = factory.getFactoryMethod(name, key);
+         if (invoker == null)
+            invoker = factory.addFactoryMethod(name, key, findMethod(clz, name, parameters, cl));
+
+         return invoker;
+      }
+
+      /**
+       * Find constructor; the signature is taken from the deployment plan if possible
        * @param clz The class
        * @param parameters The list of parameters
        * @param cl The class loader
        * @return The constructor
        * @exception Throwable Thrown if a constructor cannot be found
        */
-      @SuppressWarnings("unchecked") 
       private Constructor<?> findConstructor(Class<?> clz, List<ParameterType> parameters, ClassLoader cl)
          throws Throwable
       {
-         if (parameters == null || parameters.size() == 0)
+         if (plan == null)
+            return searchConstructor(clz, parameters, cl);
+
+         String key = bt.getName() + "#<init>";
+         Constructor<?> con = DeploymentPlan.getConstructor(plan.getSignature(key), clz,
+                                                            parameters != null ? parameters.size() : 0);
+
+         if (con == null)
          {
-            Class<?> constructorClass = clz;
+            con = searchConstructor(clz, parameters, cl);
+            plan.setSignature(key, DeploymentPlan.signature(con));
+         }
 
-            while (constructorClass != null)
-            {
-               Constructor[] constructors = constructorClass.getDeclaredConstructors();
+         return con;
+      }
 
-               if (constructors != null)
-               {
-                  for (int i = 0; i < constructors.length; i++)
-                  {
-                     Constructor<?> con = constructors[i];
-                     if (con.getParameterTypes().length == 0)
-                        return con;
-                  }
-               }
+      /**
+       * Search for a constructor
+       * @param clz The class
+       * @param parameters The list of parameters
+       * @param cl The class loader
+       * @return The constructor
+       * @exception Throwable Thrown if a constructor cannot be found
+       */
+      private Constructor<?> searchConstructor(Class<?> clz, List<ParameterType> parameters, ClassLoader cl)
+         throws Throwable
+      {
+         ClassMetadata metadata = ClassMetadata.getMetadata(clz);
 
-               constructorClass = constructorClass.getSuperclass();
-            }
+         if (parameters == null || parameters.size() == 0)
+         {
+            List<Constructor<?>> constructors = metadata.getDeclaredConstructors(0);
+
+            if (constructors.size() > 0)
+               return constructors.get(0);
          }
          else
          {
-            Class<?> constructorClass = clz;
-
-            while (constructorClass != null)
+            for (Constructor<?> c : metadata.getDeclaredConstructors(parameters.size()))
             {
-               Constructor[] constructors = constructorClass.getDeclaredConstructors();
+               boolean include = true;
 
-               for (Constructor<?> c : constructors)
+               for (int i = 0; include && i < parameters.size(); i++)
                {
-                  if (parameters.size() == c.getParameterTypes().length)
+                  ParameterType pt = parameters.get(i);
+                  Class<?> parameterClass = c.getParameterTypes()[i];
+
+                  if (pt.getClazz() == null)
+                  {
+                     if ((!(pt.getContent().get(0) instanceof InjectType)) &&
+                         (!(pt.getContent().get(0) instanceof NullType)))
+                        if (!SUPPORTED_TYPES.contains(parameterClass))
+                           include = false;
+                  }
+                  else
                   {
-                     boolean include = true;
-
-                     for (int i = 0; include && i < parameters.size(); i++)
-                     {
-                        ParameterType pt = parameters.get(i);
-                        Class<?> parameterClass = c.getParameterTypes()[i];
-
-                        if (pt.getClazz() == null)
-                        {
-                           if ((!(pt.getContent().get(0) instanceof InjectType)) &&
-                               (!(pt.getContent().get(0) instanceof NullType)))
-                              if (!SUPPORTED_TYPES.contains(parameterClass))
-                                 include = false;
-                        }
-                        else
-                        {
-                           Class<?> pClz = Class.forName(pt.getClazz(), true, cl);
-
-                           if (!parameterClass.equals(pClz))
-                              include = false;
-                        }
-                     }
-
-                     if (include)
-                        return c;
+                     Class<?> pClz = Class.forName(pt.getClazz(), true, cl);
+
+                     if (!parameterClass.equals(pClz))
+                        include = false;
                   }
                }
 
-               constructorClass = constructorClass.getSuperclass();
+               if (include)
+                  return c;
             }
          }
 
@@ -756,83 +1151,76 @@ public final class DeploymentDeployer implements CloneableDeployer
       }
 
       /**
-       * Find method
+       * Find method; the signature is taken from the deployment plan if possible
        * @param clz The class
        * @param name The method name
        * @param parameters The list of parameters
        * @param cl The class loader
-       * @return The constructor
-       * @exception Throwable Thrown if a constructor cannot be found
+       * @return The method
+       * @exception Throwable Thrown if a method cannot be found
        */
-      @SuppressWarnings("unchecked") 
       private Method findMethod(Class<?> clz, String name, List<ParameterType> parameters, ClassLoader cl)
          throws Throwable
       {
-         if (parameters == null || parameters.size() == 0)
+         if (plan == null)
+            return searchMethod(clz, name, parameters, cl);
+
+         String key = bt.getName() + "#" + name;
+         Method m = DeploymentPlan.getMethod(plan.getSignature(key), clz, name,
+                                             parameters != null ? parameters.size() : 0);
+
+         if (m == null)
          {
-            Class<?> methodClass = clz;
+            m = searchMethod(clz, name, parameters, cl);
+            plan.setSignature(key, DeploymentPlan.signature(m));
+         }
 
-            while (methodClass != null)
-            {
-               Method[] methods = methodClass.getDeclaredMethods();
+         return m;
+      }
 
-               if (methods != null)
-               {
-                  for (int i = 0; i < methods.length; i++)
-                  {
-                     Method method = methods[i];
-                     if (name.equals(method.getName()) && method.getParameterTypes().length == 0)
-                        return method;
-                  }
-               }
+      /**
+       * Search for a method
+       * @param clz The class
+       * @param name The method name
+       * @param parameters The list of parameters
+       * @param cl The class loader
+       * @return The method
+       * @exception Throwable Thrown if a method cannot be found
+       */
+      private Method searchMethod(Class<?> clz, String name, List<ParameterType> parameters, ClassLoader cl)
+         throws Throwable
+      {
+         int count = parameters != null ? parameters.size() : 0;
 
-               methodClass = methodClass.getSuperclass();
-            }
-         }
-         else
+         for (Method m : ClassMetadata.getMetadata(clz).getDeclaredMethods(name))
          {
-            Class<?> methodClass = clz;
-
-            while (methodClass != null)
+            if (count == m.getParameterTypes().length)
             {
-               Method[] methods = methodClass.getDeclaredMethods();
+               boolean include = true;
 
-               for (Method m : methods)
+               for (int i = 0; include && i < count; i++)
                {
-                  if (m.getName().equals(name))
+                  ParameterType pt = parameters.get(i);
+                  Class<?> parameterClass = m.getParameterTypes()[i];
+
+                  if (pt.getClazz() == null)
                   {
-                     if (parameters.size() == m.getParameterTypes().length)
-                     {
-                        boolean include = true;
-
-                        for (int i = 0; include && i < parameters.size(); i++)
-                        {
-                           ParameterType pt = parameters.get(i);
-                           Class<?> parameterClass = m.getParameterTypes()[i];
-
-                           if (pt.getClazz() == null)
-                           {
-                              if ((!(pt.getContent().get(0) instanceof InjectType)) &&
-                                  (!(pt.getContent().get(0) instanceof NullType)))
-                                 if (!SUPPORTED_TYPES.contains(parameterClass))
-                                    include = false;
-                           }
-                           else
-                           {
-                              Class<?> pClz = Class.forName(pt.getClazz(), true, cl);
+                     if ((!(pt.getContent().get(0) instanceof InjectType)) &&
+                         (!(pt.getContent().get(0) instanceof NullType)))
+                        if (!SUPPORTED_TYPES.contains(parameterClass))
+                           include = false;
+                  }
+                  else
+                  {
+                     Class<?> pClz = Class.forName(pt.getClazz(), true, cl);
                            
-                              if (!parameterClass.equals(pClz))
-                                 include = false;
-                           }
-                        }
-
-                        if (include)
-                           return m;
-                     }
+                     if (!parameterClass.equals(pClz))
+                        include = false;
                   }
                }
 
-               methodClass = methodClass.getSuperclass();
+               if (include)
+                  return m;
             }
          }
 
@@ -902,23 +1290,15 @@ public final class DeploymentDeployer implements CloneableDeployer
             if (it.getProperty().length() > 1)
                baseName += it.getProperty().substring(1);
 
-            try
-            {
-               String getMethodName = "get" + baseName;
-               method = injectionObject.getClass().getMethod(getMethodName, (Class[])null);
-            }
-            catch (NoSuchMethodException nsme)
-            {
-               try
-               {
-                  String isMethodName = "is" + baseName;
-                  method = injectionObject.getClass().getMethod(isMethodName, (Class[])null);
-               }
-               catch (NoSuchMethodException insme)
-               {
-                  field = injectionObject.getClass().getField(it.getProperty());
-               }
-            }
+            ClassMetadata metadata = ClassMetadata.getMetadata(injectionObject.getClass());
+
+            method = metadata.getMethod("get" + baseName);
+
+            if (method == null)
+               method = metadata.getMethod("is" + baseName);
+
+            if (method == null)
+               field = injectionObject.getClass().getField(it.getProperty());
 
             if (method != null)
             {
@@ -945,7 +1325,7 @@ public final class DeploymentDeployer implements CloneableDeployer
        * @exception Exception Thrown if an error occurs
        */
       @SuppressWarnings("unchecked") 
-      private void setBeanProperty(Object instance, PropertyType pt, ClassLoader cl) throws Exception
+      private void setBeanProperty(Object instance, PropertyType pt, ClassLoader cl) throws Throwable
       {
          Injection injection = new Injection();
 
@@ -953,14 +1333,32 @@ public final class DeploymentDeployer implements CloneableDeployer
          if (pt.getName().length() > 1)
             name += pt.getName().substring(1);
 
-         Method m = injection.findMethod(instance.getClass(), name, pt.getClazz());
+         BeanFactory factory = BeanFactory.getFactory(instance.getClass());
+         BeanFactory.Invoker setter = factory.getSetter(name, pt.getClazz());
+
+         if (setter == null)
+         {
+            String signatureKey = bt.getName() + "." + pt.getName();
+            Method m = null;
+
+            if (plan != null)
+               m = DeploymentPlan.getMethod(plan.getSignature(signatureKey), instance.getClass(), name, 1);
+
+            if (m == null)
+            {
+               m = injection.findMethod(instance.getClass(), name, pt.getClazz());
       
-         if (m == null)
-            throw new Exception("Property " + pt.getName() + " not found on " + instance.getClass().getName());
+               if (m == null)
+                  throw new Exception("Property " + pt.getName() + " not found on " + instance.getClass().getName());
 
-         m.setAccessible(true);
+               if (plan != null)
+                  plan.setSignature(signatureKey, DeploymentPlan.signature(m));
+            }
+
+            setter = factory.addSetter(name, pt.getClazz(), m);
+         }
 
-         Class<?> parameterClass = m.getParameterTypes()[0];
+         Class<?> parameterClass = setter.getParameterTypes()[0];
       
          Object parameterValue = null;
          Object element = pt.getContent().get(0);
@@ -1104,7 +1502,7 @@ public final class DeploymentDeployer implements CloneableDeployer
             parameterValue = injection.getValue(pt.getName(), parameterClass, (String)element, cl);
          }
 
-         m.invoke(instance, parameterValue);
+         setter.invoke(instance, parameterValue);
       }
    }
 
@@ -0,0 +1,763 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.deployment.BeanType;
+import com.github.fungal.deployment.Deployment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The deployment plan for Fungal.
+ *
+ * The plan is stored compressed under the kernel home after a successful startup, and
+ * holds the parsed beans, the order in which the beans started and the resolved
+ * constructor and method signatures for each bean deployment descriptor.
+ * An entry is reused on the next startup if the content hash of the descriptor
+ * is unchanged; the signatures are only reused if the class path fingerprint
+ * is unchanged too
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+final class DeploymentPlan
+{
+   /** The logger */
+   private static Logger log = Logger.getLogger(DeploymentPlan.class.getName());
+
+   /** The version of the plan format */
+   private static final int VERSION = 2;
+
+   /** Primitive types */
+   private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>(9);
+
+   /** The classes, in addition to the deployment types, that a plan may contain */
+   private static final Set<String> CLASSES = new HashSet<String>(12);
+
+   /** The file */
+   private File file;
+
+   /** The class path fingerprint */
+   private String fingerprint;
+
+   /** The entries from the previous startup */
+   private Map<String, Entry> previous;
+
+   /** The entries */
+   private ConcurrentMap<String, Entry> entries;
+
+   /** Reused entries */
+   private AtomicInteger hits;
+
+   /** New entries */
+   private AtomicInteger misses;
+
+   static
+   {
+      PRIMITIVES.put("boolean", boolean.class);
+      PRIMITIVES.put("byte", byte.class);
+      PRIMITIVES.put("char", char.class);
+      PRIMITIVES.put("short", short.class);
+      PRIMITIVES.put("int", int.class);
+      PRIMITIVES.put("long", long.class);
+      PRIMITIVES.put("float", float.class);
+      PRIMITIVES.put("double", double.class);
+      PRIMITIVES.put("void", void.class);
+
+      CLASSES.add(Entry.class.getName());
+      CLASSES.add(String.class.getName());
+      CLASSES.add(String[].class.getName());
+      CLASSES.add(Boolean.class.getName());
+      CLASSES.add(Number.class.getName());
+      CLASSES.add(Integer.class.getName());
+      CLASSES.add(ArrayList.class.getName());
+      CLASSES.add(HashMap.class.getName());
+      CLASSES.add(LinkedHashMap.class.getName());
+      CLASSES.add(HashSet.class.getName());
+      CLASSES.add(LinkedHashSet.class.getName());
+   }
+
+   /**
+    * Constructor
+    * @param file The file
+    * @param fingerprint The class path fingerprint
+    */
+   DeploymentPlan(File file, String fingerprint)
+   {
+      if (file == null)
+         throw new IllegalArgumentException("File is null");
+
+      if (fingerprint == null)
+         throw new IllegalArgumentException("Fingerprint is null");
+
+      this.file = file;
+      this.fingerprint = fingerprint;
+      this.previous = new HashMap<String, Entry>();
+      this.entries = new ConcurrentHashMap<String, Entry>();
+      this.hits = new AtomicInteger(0);
+      this.misses = new AtomicInteger(0);
+   }
+
+   /**
+    * Load the plan from the previous startup; an unreadable plan is ignored
+    */
+   @SuppressWarnings("unchecked")
+   void load()
+   {
+      if (!file.exists())
+         return;
+
+      ObjectInputStream ois = null;
+      try
+      {
+         ois = new PlanInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), 8192)));
+
+         if (ois.readInt() == VERSION)
+            previous = (Map<String, Entry>)ois.readObject();
+      }
+      catch (Throwable t)
+      {
+         log.log(Level.FINE, "Deployment plan " + file + " ignored: " + t.getMessage(), t);
+         previous = new HashMap<String, Entry>();
+      }
+      finally
+      {
+         if (ois != null)
+         {
+            try
+            {
+               ois.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+   }
+
+   /**
+    * Store the plan; only the entries used since the plan was loaded are stored.
+    * The plan is written to a temporary file which replaces the previous plan, such
+    * that the previous plan is kept if the plan can't be written
+    */
+   void store()
+   {
+      File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+      ObjectOutputStream oos = null;
+      try
+      {
+         oos = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 8192)));
+
+         oos.writeInt(VERSION);
+         oos.writeObject(new LinkedHashMap<String, Entry>(entries));
+         oos.close();
+         oos = null;
+
+         if (!tmp.renameTo(file))
+         {
+            // The previous plan can't be replaced on all platforms
+            if (!file.delete() || !tmp.renameTo(file))
+               throw new IOException("Unable to rename " + tmp + " to " + file);
+         }
+
+         if (log.isLoggable(Level.FINE))
+            log.fine("Deployment plan " + file + " stored (Reused=" + hits.get() + ", New=" + misses.get() + ")");
+      }
+      catch (Throwable t)
+      {
+         log.log(Level.WARNING, "Unable to store deployment plan " + file + ": " + t.getMessage(), t);
+      }
+      finally
+      {
+         if (oos != null)
+         {
+            try
+            {
+               oos.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+
+         if (tmp.exists())
+            tmp.delete();
+      }
+   }
+
+   /**
+    * Get the entry for a deployment descriptor
+    * @param url The URL of the descriptor
+    * @param hash The content hash of the descriptor
+    * @return The entry; <code>null</code> if there is no valid entry
+    */
+   Entry getEntry(URL url, String hash)
+   {
+      String key = url.toExternalForm();
+
+      Entry entry = entries.get(key);
+      if (entry != null && entry.getHash().equals(hash))
+         return entry;
+
+      synchronized (previous)
+      {
+         entry = previous.remove(key);
+      }
+
+      if (entry == null || !entry.getHash().equals(hash))
+         return null;
+
+      if (!fingerprint.equals(entry.getFingerprint()))
+         entry.invalidate(fingerprint);
+
+      entries.put(key, entry);
+      hits.incrementAndGet();
+
+      return entry;
+   }
+
+   /**
+    * Add an entry for a deployment descriptor
+    * @param url The URL of the descriptor
+    * @param hash The content hash of the descriptor
+    * @param deployment The parsed descriptor
+    * @return The entry
+    */
+   Entry addEntry(URL url, String hash, Deployment deployment)
+   {
+      Entry entry = new Entry(hash, fingerprint, deployment);
+
+      entries.put(url.toExternalForm(), entry);
+      misses.incrementAndGet();
+
+      return entry;
+   }
+
+   /**
+    * Read the content of a deployment descriptor
+    * @param url The URL of the descriptor
+    * @return The content
+    * @exception IOException If an I/O error occurs
+    */
+   static byte[] read(URL url) throws IOException
+   {
+      InputStream is = null;
+      try
+      {
+         is = url.openStream();
+
+         ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
+         byte[] buffer = new byte[4096];
+         int n;
+
+         while ((n = is.read(buffer)) != -1)
+         {
+            baos.write(buffer, 0, n);
+         }
+
+         return baos.toByteArray();
+      }
+      finally
+      {
+         if (is != null)
+         {
+            try
+            {
+               is.close();
+            }
+            catch (IOException ioe)
+            {
+               // Ignore
+            }
+         }
+      }
+   }
+
+   /**
+    * Get the hash of a content
+    * @param content The content
+    * @return The hash
+    */
+   static String hash(byte[] content)
+   {
+      return digest(content);
+   }
+
+   /**
+    * Get the fingerprint of a class path; the fingerprint covers the names,
+    * sizes and modification times of the class path entries
+    * @param version The kernel version
+    * @param urls The URLs of the kernel class path
+    * @return The fingerprint
+    */
+   static String fingerprint(String version, URL[] urls)
+   {
+      StringBuilder sb = new StringBuilder(version);
+
+      List<File> files = new ArrayList<File>();
+
+      String classPath = SecurityActions.getSystemProperty("java.class.path");
+      if (classPath != null)
+      {
+         for (String entry : classPath.split(File.pathSeparator))
+         {
+            if (!entry.equals(""))
+               files.add(new File(entry));
+         }
+      }
+
+      if (urls != null)
+      {
+         for (URL url : urls)
+         {
+            if ("file".equals(url.getProtocol()))
+            {
+               try
+               {
+                  files.add(new File(url.toURI()));
+               }
+               catch (Throwable t)
+               {
+                  sb.append('|').append(url.toExternalForm());
+               }
+            }
+            else
+            {
+               sb.append('|').append(url.toExternalForm());
+            }
+         }
+      }
+
+      for (File f : files)
+      {
+         sb.append('|').append(f.getAbsolutePath());
+         sb.append(':').append(f.length());
+         sb.append(':').append(f.lastModified());
+      }
+
+      try
+      {
+         return digest(sb.toString().getBytes("UTF-8"));
+      }
+      catch (IOException ioe)
+      {
+         return digest(sb.toString().getBytes());
+      }
+   }
+
+   /**
+    * Digest
+    * @param content The content
+    * @return The digest as a hex string
+    */
+   private static String digest(byte[] content)
+   {
+      try
+      {
+         byte[] d = MessageDigest.getInstance("SHA-1").digest(content);
+         StringBuilder sb = new StringBuilder(d.length * 2);
+
+         for (byte b : d)
+         {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+         }
+
+         return sb.toString();
+      }
+      catch (Exception e)
+      {
+         throw new IllegalStateException(e.getMessage(), e);
+      }
+   }
+
+   /**
+    * Get the signature of a constructor
+    * @param c The constructor
+    * @return The signature
+    */
+   static String[] signature(Constructor<?> c)
+   {
+      return signature(c.getDeclaringClass(), "<init>", c.getParameterTypes());
+   }
+
+   /**
+    * Get the signature of a method
+    * @param m The method
+    * @return The signature
+    */
+   static String[] signature(Method m)
+   {
+      return signature(m.getDeclaringClass(), m.getName(), m.getParameterTypes());
+   }
+
+   /**
+    * Get a signature
+    * @param declaringClass The declaring class
+    * @param name The name
+    * @param parameterTypes The parameter types
+    * @return The signature
+    */
+   private static String[] signature(Class<?> declaringClass, String name, Class<?>[] parameterTypes)
+   {
+      String[] result = new String[parameterTypes.length + 2];
+
+      result[0] = declaringClass.getName();
+      result[1] = name;
+
+      for (int i = 0; i < parameterTypes.length; i++)
+      {
+         result[i + 2] = parameterTypes[i].getName();
+      }
+
+      return result;
+   }
+
+   /**
+    * Resolve a constructor signature against a class
+    * @param signature The signature; may be <code>null</code>
+    * @param clz The class
+    * @param parameters The number of parameters
+    * @return The constructor; <code>null</code> if it can't be resolved
+    */
+   static Constructor<?> getConstructor(String[] signature, Class<?> clz, int parameters)
+   {
+      if (signature == null || signature.length != parameters + 2 || !"<init>".equals(signature[1]))
+         return null;
+
+      try
+      {
+         Class<?> declaringClass = getDeclaringClass(signature[0], clz);
+         if (declaringClass != null)
+            return declaringClass.getDeclaredConstructor(getParameterTypes(signature, declaringClass));
+      }
+      catch (Throwable t)
+      {
+         // Resolve through reflection
+      }
+
+      return null;
+   }
+
+   /**
+    * Resolve a method signature against a class
+    * @param signature The signature; may be <code>null</code>
+    * @param clz The class
+    * @param name The name of the method
+    * @param parameters The number of parameters
+    * @return The method; <code>null</code> if it can't be resolved
+    */
+   static Method getMethod(String[] signature, Class<?> clz, String name, int parameters)
+   {
+      if (signature == null || signature.length != parameters + 2 || !name.equals(signature[1]))
+         return null;
+
+      try
+      {
+         Class<?> declaringClass = getDeclaringClass(signature[0], clz);
+         if (declaringClass != null)
+            return declaringClass.getDeclaredMethod(name, getParameterTypes(signature, declaringClass));
+      }
+      catch (Throwable t)
+      {
+         // Resolve through reflection
+      }
+
+      return null;
+   }
+
+   /**
+    * Find the declaring class in the hierarchy of a class
+    * @param name The name of the declaring class
+    * @param clz The class
+    * @return The declaring class; <code>null</code> if not found
+    */
+   private static Class<?> getDeclaringClass(String name, Class<?> clz)
+   {
+      Class<?> c = clz;
+
+      while (c != null)
+      {
+         if (c.getName().equals(name))
+            return c;
+
+         c = c.getSuperclass();
+      }
+
+      return null;
+   }
+
+   /**
+    * Get the parameter types of a signature
+    * @param signature The signature
+    * @param declaringClass The declaring class
+    * @return The parameter types
+    * @exception ClassNotFoundException If a type can't be loaded
+    */
+   private static Class<?>[] getParameterTypes(String[] signature, Class<?> declaringClass)
+      throws ClassNotFoundException
+   {
+      Class<?>[] result = new Class<?>[signature.length - 2];
+
+      for (int i = 0; i < result.length; i++)
+      {
+         String name = signature[i + 2];
+         Class<?> primitive = PRIMITIVES.get(name);
+
+         if (primitive != null)
+         {
+            result[i] = primitive;
+         }
+         else
+         {
+            result[i] = Class.forName(name, false, declaringClass.getClassLoader());
+         }
+      }
+
+      return result;
+   }
+
+   /**
+    * An object input stream that only reads the classes of a plan
+    */
+   static class PlanInputStream extends ObjectInputStream
+   {
+      /**
+       * Constructor
+       * @param in The stream
+       * @exception IOException If an I/O error occurs
+       */
+      PlanInputStream(InputStream in) throws IOException
+      {
+         super(in);
+      }
+
+      /**
+       * Resolve a class
+       * @param desc The class description
+       * @return The class
+       * @exception IOException If the class isn't allowed in a plan
+       * @exception ClassNotFoundException If the class can't be found
+       */
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+      {
+         String name = desc.getName();
+
+         if (!CLASSES.contains(name) && !name.startsWith("com.github.fungal.deployment."))
+            throw new InvalidClassException(name, "Not allowed in a deployment plan");
+
+         return super.resolveClass(desc);
+      }
+   }
+
+   /**
+    * The plan for a deployment descriptor
+    */
+   static class Entry implements Serializable
+   {
+      /** Serial version UID */
+      private static final long serialVersionUID = 1L;
+
+      /** The content hash */
+      private String hash;
+
+      /** The class path fingerprint of the signatures */
+      private String fingerprint;
+
+      /** The parsed descriptor */
+      private Deployment deployment;
+
+      /** The names of the beans in the order they started */
+      private LinkedHashSet<String> order;
+
+      /** The resolved signatures */
+      private transient ConcurrentMap<String, String[]> signatures;
+
+      /**
+       * Constructor
+       * @param hash The content hash
+       * @param fingerprint The class path fingerprint
+       * @param deployment The parsed descriptor
+       */
+      Entry(String hash, String fingerprint, Deployment deployment)
+      {
+         this.hash = hash;
+         this.fingerprint = fingerprint;
+         this.deployment = deployment;
+         this.order = new LinkedHashSet<String>(deployment.getBean().size());
+         this.signatures = new ConcurrentHashMap<String, String[]>();
+      }
+
+      /**
+       * Get the content hash
+       * @return The value
+       */
+      String getHash()
+      {
+         return hash;
+      }
+
+      /**
+       * Get the class path fingerprint
+       * @return The value
+       */
+      String getFingerprint()
+      {
+         return fingerprint;
+      }
+
+      /**
+       * Get the parsed descriptor
+       * @return The value
+       */
+      Deployment getDeployment()
+      {
+         return deployment;
+      }
+
+      /**
+       * Get the beans; the beans are ordered by the order they started
+       * in, followed by the beans which haven't been started
+       * @return The beans
+       */
+      synchronized List<BeanType> getBeans()
+      {
+         List<BeanType> beans = deployment.getBean();
+
+         if (order.size() == 0)
+            return beans;
+
+         Map<String, BeanType> byName = new LinkedHashMap<String, BeanType>(beans.size());
+         for (BeanType bt : beans)
+         {
+            byName.put(bt.getName(), bt);
+         }
+
+         List<BeanType> result = new ArrayList<BeanType>(beans.size());
+         for (String name : order)
+         {
+            BeanType bt = byName.remove(name);
+            if (bt != null)
+               result.add(bt);
+         }
+
+         result.addAll(byName.values());
+
+         return result;
+      }
+
+      /**
+       * A bean has started
+       * @param name The name of the bean
+       */
+      synchronized void started(String name)
+      {
+         order.add(name);
+      }
+
+      /**
+       * Get a signature
+       * @param key The key
+       * @return The signature; <code>null</code> if unknown
+       */
+      String[] getSignature(String key)
+      {
+         return signatures.get(key);
+      }
+
+      /**
+       * Set a signature
+       * @param key The key
+       * @param signature The signature
+       */
+      void setSignature(String key, String[] signature)
+      {
+         signatures.put(key, signature);
+      }
+
+      /**
+       * The class path has changed; the signatures are no longer valid
+       * @param fingerprint The new class path fingerprint
+       */
+      synchronized void invalidate(String fingerprint)
+      {
+         this.fingerprint = fingerprint;
+         this.signatures.clear();
+      }
+
+      /**
+       * Write the entry
+       * @param out The stream
+       * @exception IOException If an I/O error occurs
+       */
+      private synchronized void writeObject(ObjectOutputStream out) throws IOException
+      {
+         out.defaultWriteObject();
+         out.writeObject(new HashMap<String, String[]>(signatures));
+      }
+
+      /**
+       * Read the entry
+       * @param in The stream
+       * @exception IOException If an I/O error occurs
+       * @exception ClassNotFoundException If a class can't be found
+       */
+      @SuppressWarnings("unchecked")
+      private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+      {
+         in.defaultReadObject();
+         signatures = new ConcurrentHashMap<String, String[]>((Map<String, String[]>)in.readObject());
+      }
+   }
+}
@@ -0,0 +1,310 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.spi.deployers.Deployment;
+
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The deployment registry for Fungal.
+ *
+ * Deployments are indexed by their normalized URI, so a lookup doesn't
+ * depend on the number of deployments. A sorted view of the index supports
+ * lookups of all deployments below a directory. Several deployments can be
+ * registered for the same URI by multi stage deployers; the first one
+ * registered is returned by a lookup
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class DeploymentRegistry
+{
+   /** The index */
+   private ConcurrentMap<String, Entry[]> index;
+
+   /** The sorted index */
+   private ConcurrentNavigableMap<String, Entry[]> sorted;
+
+   /** The sequence */
+   private long sequence;
+
+   /**
+    * Constructor
+    */
+   public DeploymentRegistry()
+   {
+      this.index = new ConcurrentHashMap<String, Entry[]>();
+      this.sorted = new ConcurrentSkipListMap<String, Entry[]>();
+      this.sequence = 0L;
+   }
+
+   /**
+    * Register a deployment
+    * @param deployment The deployment
+    */
+   public synchronized void register(Deployment deployment)
+   {
+      String key = normalize(deployment.getURL());
+      Entry entry = new Entry(deployment, sequence++);
+
+      Entry[] entries = index.get(key);
+      Entry[] newEntries = null;
+
+      if (entries == null)
+      {
+         newEntries = new Entry[] {entry};
+      }
+      else
+      {
+         newEntries = new Entry[entries.length + 1];
+         System.arraycopy(entries, 0, newEntries, 0, entries.length);
+         newEntries[entries.length] = entry;
+      }
+
+      index.put(key, newEntries);
+      sorted.put(key, newEntries);
+   }
+
+   /**
+    * Unregister a deployment
+    * @param deployment The deployment
+    * @return True if the deployment was registered; otherwise false
+    */
+   public synchronized boolean unregister(Deployment deployment)
+   {
+      String key = normalize(deployment.getURL());
+
+      Entry[] entries = index.get(key);
+
+      if (entries == null)
+         return false;
+
+      int position = -1;
+      for (int i = 0; position == -1 && i < entries.length; i++)
+      {
+         if (entries[i].getDeployment() == deployment)
+            position = i;
+      }
+
+      if (position == -1)
+         return false;
+
+      if (entries.length == 1)
+      {
+         index.remove(key);
+         sorted.remove(key);
+      }
+      else
+      {
+         Entry[] newEntries = new Entry[entries.length - 1];
+         System.arraycopy(entries, 0, newEntries, 0, position);
+         System.arraycopy(entries, position + 1, newEntries, position, entries.length - position - 1);
+
+         index.put(key, newEntries);
+         sorted.put(key, newEntries);
+      }
+
+      return true;
+   }
+
+   /**
+    * Unregister deployments
+    * @param deployments The deployments
+    */
+   public synchronized void unregister(Collection<? extends Deployment> deployments)
+   {
+      for (Deployment deployment : deployments)
+      {
+         unregister(deployment);
+      }
+   }
+
+   /**
+    * Get a deployment
+    * @param url The unique URL for the deployment
+    * @return The deployment; <code>null</code> if no deployment is found
+    */
+   public Deployment get(URL url)
+   {
+      Entry[] entries = index.get(normalize(url));
+
+      if (entries == null)
+         return null;
+
+      return entries[0].getDeployment();
+   }
+
+   /**
+    * Get the deployments whose URL starts with a prefix, f.ex. a directory
+    * @param prefix The prefix
+    * @return The deployments in registration order
+    */
+   public List<Deployment> getDeployments(URL prefix)
+   {
+      String key = normalize(prefix);
+
+      return toList(sorted.subMap(key, true, key + Character.MAX_VALUE, true).values());
+   }
+
+   /**
+    * Get all deployments
+    * @return The deployments in registration order
+    */
+   public List<Deployment> getDeployments()
+   {
+      return toList(index.values());
+   }
+
+   /**
+    * Get the number of deployments
+    * @return The value
+    */
+   public int size()
+   {
+      int size = 0;
+
+      for (Entry[] entries : index.values())
+      {
+         size += entries.length;
+      }
+
+      return size;
+   }
+
+   /**
+    * Clear
+    */
+   public synchronized void clear()
+   {
+      index.clear();
+      sorted.clear();
+      sequence = 0L;
+   }
+
+   /**
+    * Normalize an URL
+    * @param url The URL
+    * @return The key
+    */
+   static String normalize(URL url)
+   {
+      String key = null;
+
+      try
+      {
+         key = url.toURI().normalize().toString();
+      }
+      catch (URISyntaxException use)
+      {
+         key = url.toString();
+      }
+
+      if (key.startsWith("file:///"))
+         key = "file:/" + key.substring(8);
+
+      return key;
+   }
+
+   /**
+    * Convert entries to a list in registration order
+    * @param values The entries
+    * @return The deployments
+    */
+   private static List<Deployment> toList(Collection<Entry[]> values)
+   {
+      List<Entry> l = new ArrayList<Entry>();
+
+      for (Entry[] entries : values)
+      {
+         Collections.addAll(l, entries);
+      }
+
+      Collections.sort(l, new Comparator<Entry>()
+      {
+         public int compare(Entry o1, Entry o2)
+         {
+            if (o1.getSequence() == o2.getSequence())
+               return 0;
+
+            return o1.getSequence() < o2.getSequence() ? -1 : 1;
+         }
+      });
+
+      List<Deployment> result = new ArrayList<Deployment>(l.size());
+      for (Entry entry : l)
+      {
+         result.add(entry.getDeployment());
+      }
+
+      return result;
+   }
+
+   /**
+    * A registered deployment
+    */
+   static class Entry
+   {
+      /** The deployment */
+      private Deployment deployment;
+
+      /** The sequence */
+      private long sequence;
+
+      /**
+       * Constructor
+       * @param deployment The deployment
+       * @param sequence The sequence
+       */
+      Entry(Deployment deployment, long sequence)
+      {
+         this.deployment = deployment;
+         this.sequence = sequence;
+      }
+
+      /**
+       * Get the deployment
+       * @return The value
+       */
+      Deployment getDeployment()
+      {
+         return deployment;
+      }
+
+      /**
+       * Get the sequence
+       * @return The value
+       */
+      long getSequence()
+      {
+         return sequence;
+      }
+   }
+}
@@ -0,0 +1,195 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package com.github.fungal.impl;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A deployment task for the fork/join deployment engine.
+ *
+ * A worker thread that waits for other deployment tasks executes the queued
+ * tasks itself, and only blocks when there is no work left to help with. Each
+ * stage is invoked as a task in the pool, such that the deploying thread joins it
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class DeploymentTask extends RecursiveAction
+{
+   /** Serial version uid */
+   private static final long serialVersionUID = 1L;
+
+   /** The deployer */
+   private transient Runnable deployer;
+
+   /**
+    * Constructor
+    * @param deployer The deployer
+    */
+   public DeploymentTask(Runnable deployer)
+   {
+      if (deployer == null)
+         throw new IllegalArgumentException("Deployer is null");
+
+      this.deployer = deployer;
+   }
+
+   /**
+    * Compute
+    */
+   protected void compute()
+   {
+      deployer.run();
+   }
+
+   /**
+    * Run deployers in the pool, and wait for them to count down the latch. The stage
+    * runs as a task in the pool, so the calling thread joins it, and the worker thread
+    * running the stage executes the deployers while it waits
+    * @param pool The pool
+    * @param deployers The deployers
+    * @param latch The latch
+    */
+   static void invoke(ForkJoinPool pool, List<? extends Runnable> deployers, CountDownLatch latch)
+   {
+      pool.invoke(new StageTask(deployers, latch));
+   }
+
+   /**
+    * Wait for a latch to reach zero. A fork/join worker thread executes
+    * queued tasks while it waits
+    * @param latch The latch
+    * @exception InterruptedException Thrown if the thread is interrupted
+    */
+   static void await(CountDownLatch latch) throws InterruptedException
+   {
+      if (Thread.currentThread() instanceof ForkJoinWorkerThread)
+      {
+         while (latch.getCount() > 0)
+         {
+            ForkJoinTask<?> task = pollTask();
+
+            if (task != null)
+            {
+               task.quietlyInvoke();
+            }
+            else
+            {
+               ForkJoinPool.managedBlock(new LatchBlocker(latch));
+            }
+         }
+      }
+      else
+      {
+         latch.await();
+      }
+   }
+
+   /**
+    * A stage of deployers
+    */
+   static class StageTask extends RecursiveAction
+   {
+      /** Serial version uid */
+      private static final long serialVersionUID = 1L;
+
+      /** The deployers */
+      private transient List<? extends Runnable> deployers;
+
+      /** The latch */
+      private transient CountDownLatch latch;
+
+      /**
+       * Constructor
+       * @param deployers The deployers
+       * @param latch The latch
+       */
+      StageTask(List<? extends Runnable> deployers, CountDownLatch latch)
+      {
+         this.deployers = deployers;
+         this.latch = latch;
+      }
+
+      /**
+       * Compute
+       */
+      protected void compute()
+      {
+         for (Runnable deployer : deployers)
+         {
+            new DeploymentTask(deployer).fork();
+         }
+
+         try
+         {
+            await(latch);
+         }
+         catch (InterruptedException ie)
+         {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   /**
+    * A managed blocker for a latch, which allows the pool to compensate
+    * for the blocked worker thread
+    */
+   static class LatchBlocker implements ForkJoinPool.ManagedBlocker
+   {
+      /** The latch */
+      private CountDownLatch latch;
+
+      /**
+       * Constructor
+       * @param latch The latch
+       */
+      LatchBlocker(CountDownLatch latch)
+      {
+         this.latch = latch;
+      }
+
+      /**
+       * Block
+       * @return True if no further blocking is needed
+       * @exception InterruptedException Thrown if the thread is interrupted
+       */
+      public boolean block() throws InterruptedException
+      {
+         latch.await();
+         return true;
+      }
+
+      /**
+       * Is releasable
+       * @return True if blocking is unnecessary
+       */
+      public boolean isReleasable()
+      {
+         return latch.getCount() == 0;
+      }
+   }
+}
@@ -0,0 +1,293 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.api.Kernel;
+import com.github.fungal.api.events.LifecycleEvent;
+import com.github.fungal.api.events.LifecycleListener;
+import com.github.fungal.api.events.Notification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The event bus for Fungal.
+ *
+ * Notifications are published into a bounded queue without blocking the
+ * publisher, and delivered in batches to the lifecycle listeners from a
+ * single thread. Notifications are dropped and counted when the queue is full
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class EventBus implements EventBusMBean, Runnable
+{
+   /** The logger */
+   private static Logger log = Logger.getLogger(EventBus.class.getName());
+
+   /** The maximum number of notifications in a batch */
+   private static final int MAX_BATCH = 256;
+
+   /** The poll interval in milliseconds */
+   private static final long POLL_INTERVAL = 100L;
+
+   /** The time in milliseconds to wait for the delivery of the queued notifications during stop */
+   private static final long STOP_TIMEOUT = 10000L;
+
+   /** The kernel */
+   private Kernel kernel;
+
+   /** The listeners */
+   private List<LifecycleListener> listeners;
+
+   /** The capacity */
+   private int capacity;
+
+   /** The queue */
+   private BlockingQueue<Notification> queue;
+
+   /** The delivery thread */
+   private Thread thread;
+
+   /** Running */
+   private volatile boolean running;
+
+   /** Published */
+   private AtomicLong published;
+
+   /** Delivered */
+   private AtomicLong delivered;
+
+   /** Dropped */
+   private AtomicLong dropped;
+
+   /** Batches */
+   private AtomicLong batches;
+
+   /** Listener failures */
+   private AtomicLong failures;
+
+   /**
+    * Constructor
+    * @param kernel The kernel
+    * @param listeners The listeners
+    * @param capacity The capacity of the queue
+    */
+   public EventBus(Kernel kernel, List<LifecycleListener> listeners, int capacity)
+   {
+      if (kernel == null)
+         throw new IllegalArgumentException("Kernel is null");
+
+      if (listeners == null)
+         throw new IllegalArgumentException("Listeners is null");
+
+      this.kernel = kernel;
+      this.listeners = new ArrayList<LifecycleListener>(listeners);
+      this.capacity = capacity > 0 ? capacity : 1;
+      this.queue = new ArrayBlockingQueue<Notification>(this.capacity);
+      this.thread = null;
+      this.running = false;
+      this.published = new AtomicLong(0);
+      this.delivered = new AtomicLong(0);
+      this.dropped = new AtomicLong(0);
+      this.batches = new AtomicLong(0);
+      this.failures = new AtomicLong(0);
+   }
+
+   /**
+    * Start the delivery thread
+    * @param tf The thread factory
+    */
+   public void start(ThreadFactory tf)
+   {
+      running = true;
+
+      thread = tf.newThread(this);
+      thread.setName("fungal-events");
+
+      if (!thread.isDaemon())
+         thread.setDaemon(true);
+
+      thread.start();
+   }
+
+   /**
+    * Stop the delivery thread; the queued notifications are delivered first
+    */
+   public void stop()
+   {
+      running = false;
+
+      if (thread != null)
+      {
+         try
+         {
+            thread.join(STOP_TIMEOUT);
+         }
+         catch (InterruptedException ie)
+         {
+            Thread.currentThread().interrupt();
+         }
+
+         if (thread.isAlive())
+         {
+            log.warning("Lifecycle notifications not delivered: " + queue.size());
+            thread.interrupt();
+         }
+
+         thread = null;
+      }
+   }
+
+   /**
+    * Publish a notification; never blocks
+    * @param event The event
+    * @param name The name of the bean, or the URL of the deployment
+    */
+   public void publish(LifecycleEvent event, String name)
+   {
+      if (queue.offer(new Notification(event, name, System.currentTimeMillis())))
+      {
+         published.incrementAndGet();
+      }
+      else
+      {
+         if (dropped.getAndIncrement() == 0)
+            log.warning("Lifecycle notification queue is full; notifications are dropped");
+      }
+   }
+
+   /**
+    * Deliver the notifications
+    */
+   public void run()
+   {
+      List<Notification> batch = new ArrayList<Notification>(MAX_BATCH);
+
+      while (running || !queue.isEmpty())
+      {
+         try
+         {
+            Notification n = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+
+            if (n != null)
+            {
+               batch.add(n);
+               queue.drainTo(batch, MAX_BATCH - 1);
+
+               deliver(Collections.unmodifiableList(new ArrayList<Notification>(batch)));
+
+               batch.clear();
+            }
+         }
+         catch (InterruptedException ie)
+         {
+            return;
+         }
+      }
+   }
+
+   /**
+    * Deliver a batch to the listeners
+    * @param notifications The notifications
+    */
+   private void deliver(List<Notification> notifications)
+   {
+      for (LifecycleListener listener : listeners)
+      {
+         try
+         {
+            listener.notifications(kernel, notifications);
+         }
+         catch (Throwable t)
+         {
+            failures.incrementAndGet();
+            log.log(Level.WARNING, "Lifecycle listener " + listener + ": " + t.getMessage(), t);
+         }
+      }
+
+      batches.incrementAndGet();
+      delivered.addAndGet(notifications.size());
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getCapacity()
+   {
+      return capacity;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getQueueSize()
+   {
+      return queue.size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getPublishedCount()
+   {
+      return published.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getDeliveredCount()
+   {
+      return delivered.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getDroppedCount()
+   {
+      return dropped.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getBatchCount()
+   {
+      return batches.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getListenerFailureCount()
+   {
+      return failures.get();
+   }
+}
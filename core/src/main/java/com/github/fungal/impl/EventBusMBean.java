@@ -0,0 +1,70 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+/**
+ * The MBean for the event bus
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public interface EventBusMBean
+{
+   /**
+    * Get the capacity of the queue
+    * @return The value
+    */
+   public int getCapacity();
+
+   /**
+    * Get the number of queued notifications
+    * @return The value
+    */
+   public int getQueueSize();
+
+   /**
+    * Get the number of published notifications
+    * @return The value
+    */
+   public long getPublishedCount();
+
+   /**
+    * Get the number of delivered notifications
+    * @return The value
+    */
+   public long getDeliveredCount();
+
+   /**
+    * Get the number of notifications dropped because the queue was full
+    * @return The value
+    */
+   public long getDroppedCount();
+
+   /**
+    * Get the number of batches delivered
+    * @return The value
+    */
+   public long getBatchCount();
+
+   /**
+    * Get the number of listener invocations that failed
+    * @return The value
+    */
+   public long getListenerFailureCount();
+}
@@ -145,7 +145,7 @@ public final class HotDeployer implements HotDeployerMBean, Runnable
    public void start()
    {
       running.set(true);
-      kernel.getExecutorService().submit(this);
+      kernel.getInternalExecutorService().submit(this);
    }
 
    /**
@@ -21,12 +21,14 @@
 package com.github.fungal.impl;
 
 import com.github.fungal.api.Kernel;
+import com.github.fungal.api.SharedResources;
 import com.github.fungal.api.classloading.ClassLoaderFactory;
 import com.github.fungal.api.classloading.KernelClassLoader;
 import com.github.fungal.api.configuration.KernelConfiguration;
 import com.github.fungal.api.deployer.MainDeployer;
 import com.github.fungal.api.events.Event;
 import com.github.fungal.api.events.EventListener;
+import com.github.fungal.api.events.LifecycleEvent;
 import com.github.fungal.api.remote.Command;
 import com.github.fungal.bootstrap.Bootstrap;
 import com.github.fungal.impl.netboot.Netboot;
@@ -35,6 +37,7 @@ import com.github.fungal.impl.remote.commands.Deploy;
 import com.github.fungal.impl.remote.commands.GetCommand;
 import com.github.fungal.impl.remote.commands.Help;
 import com.github.fungal.impl.remote.commands.Undeploy;
+import com.github.fungal.impl.remote.commands.WaitGraph;
 import com.github.fungal.spi.deployers.DeployerPhases;
 import com.github.fungal.spi.deployers.Deployment;
 
@@ -43,29 +46,39 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.RuntimeMXBean;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -92,7 +105,7 @@ public class KernelImpl implements Kernel, KernelImplMBean
    private boolean trace = false;
 
    /** Deployments */
-   private List<Deployment> deployments = Collections.synchronizedList(new ArrayList<Deployment>(1));
+   private DeploymentRegistry deployments = new DeploymentRegistry();
 
    /** Beans */
    private ConcurrentMap<String, Object> beans = new ConcurrentHashMap<String, Object>(1);
@@ -103,15 +116,44 @@ public class KernelImpl implements Kernel, KernelImplMBean
    /** Bean dependants */
    private ConcurrentMap<String, Set<String>> beanDependants = new ConcurrentHashMap<String, Set<String>>(1);
 
-   /** Bean latches */
-   private ConcurrentMap<String, List<CountDownLatch>> beanLatches =
-      new ConcurrentHashMap<String, List<CountDownLatch>>(1);
+   /** Bean completion handles */
+   private ConcurrentMap<String, BeanFuture> beanFutures = new ConcurrentHashMap<String, BeanFuture>(1);
+
+   /** Lazy beans */
+   private ConcurrentMap<String, LazyBean> lazyBeans = new ConcurrentHashMap<String, LazyBean>(1);
 
    /** Bean deployments */
    private AtomicInteger beanDeployments;
 
+   /** The bean graph for the deployments currently being started */
+   private volatile BeanGraph beanGraph;
+
    /** Kernel thread pool */
-   private ThreadPoolExecutor threadPoolExecutor;
+   private ExecutorService executorService;
+
+   /** Executor service for the work of the kernel itself */
+   private ExecutorService internalExecutorService;
+
+   /** Bean scheduler */
+   private BeanScheduler beanScheduler;
+
+   /** Fork/join deployment engine */
+   private ForkJoinPool forkJoinPool;
+
+   /** Startup profiler */
+   private StartupProfiler startupProfiler;
+
+   /** Deployer phases invoker */
+   private DeployerPhasesInvoker deployerPhasesInvoker;
+
+   /** Event bus */
+   private EventBus eventBus;
+
+   /** Watchdog */
+   private Watchdog watchdog;
+
+   /** Deployment plan */
+   private DeploymentPlan deploymentPlan;
 
    /** The old class loader */
    private ClassLoader oldClassLoader;
@@ -137,8 +179,21 @@ public class KernelImpl implements Kernel, KernelImplMBean
    /** Uncallbacks */
    private ConcurrentMap<Class<?>, List<Callback>> uncallbacks = new ConcurrentHashMap<Class<?>, List<Callback>>(1);
 
-   /** Callback beans */
-   private ConcurrentMap<Object, List<Callback>> callbackBeans = new ConcurrentHashMap<Object, List<Callback>>(1);
+   /** Bean type index */
+   private BeanTypeIndex beanTypes = new BeanTypeIndex();
+
+   /** Callback beans; by identity */
+   private Map<Object, List<Callback>> callbackBeans =
+      Collections.synchronizedMap(new IdentityHashMap<Object, List<Callback>>(1));
+
+   /** Beans added since the last incallback pass */
+   private Queue<String> newBeans = new ConcurrentLinkedQueue<String>();
+
+   /** Incallbacks registered since the last incallback pass */
+   private Queue<Callback> newIncallbacks = new ConcurrentLinkedQueue<Callback>();
+
+   /** Incallback lock */
+   private Lock incallbackLock = new ReentrantLock();
 
    /** DeployerPhases beans */
    private Set<String> deployerPhasesBeans = Collections.synchronizedSet(new HashSet<String>(1));
@@ -174,10 +229,20 @@ public class KernelImpl implements Kernel, KernelImplMBean
       this.beans.clear();
       this.beanStatus.clear();
       this.beanDependants.clear();
-      this.beanLatches.clear();
+      this.beanFutures.clear();
+      this.lazyBeans.clear();
       this.beanDeployments = new AtomicInteger(0);
+      this.beanGraph = null;
 
       setExecutorService(null);
+      this.internalExecutorService = null;
+      this.beanScheduler = null;
+      this.forkJoinPool = null;
+      this.startupProfiler = null;
+      this.deployerPhasesInvoker = null;
+      this.eventBus = null;
+      this.watchdog = null;
+      this.deploymentPlan = null;
 
       this.oldClassLoader = null;
       this.kernelClassLoader = null;
@@ -187,7 +252,10 @@ public class KernelImpl implements Kernel, KernelImplMBean
       this.temporaryEnvironment = false;
       this.incallbacks.clear();
       this.uncallbacks.clear();
+      this.beanTypes.clear();
       this.callbackBeans.clear();
+      this.newBeans.clear();
+      this.newIncallbacks.clear();
       this.deployerPhasesBeans.clear();
       this.newDeployerPhasesBeans.clear();
       this.hotDeployer = null;
@@ -213,16 +281,23 @@ public class KernelImpl implements Kernel, KernelImplMBean
     */
    public Deployment getDeployment(URL url)
    {
-      if (deployments != null)
-      {
-         for (Deployment deployment : deployments)
-         {
-            if (deployment.getURL().toString().equals(url.toString()))
-               return deployment;
-         }
-      }
+      if (url == null)
+         throw new IllegalArgumentException("URL is null");
+
+      return deployments.get(url);
+   }
+
+   /**
+    * Get the deployment units whose URL starts with a prefix
+    * @param prefix The prefix, f.ex. the URL of a directory
+    * @return The deployment units in deployment order
+    */
+   public List<Deployment> getDeployments(URL prefix)
+   {
+      if (prefix == null)
+         throw new IllegalArgumentException("Prefix is null");
 
-      return null;
+      return deployments.getDeployments(prefix);
    }
 
    /**
@@ -244,22 +319,70 @@ public class KernelImpl implements Kernel, KernelImplMBean
          }
       }
 
+      startupProfiler = new StartupProfiler();
+
       ThreadGroup tg = kernelConfiguration.getThreadGroup();
       if (tg == null)
          tg = new ThreadGroup("fungal");
 
-      BlockingQueue<Runnable> threadPoolQueue = new SynchronousQueue<Runnable>(true);
-      ThreadFactory tf = new FungalThreadFactory(tg);
+      ThreadFactory tf = null;
+      SharedResources sharedResources = kernelConfiguration.getSharedResources();
+
+      if (sharedResources != null)
+      {
+         tf = new FungalThreadFactory(tg);
+         setExecutorService(sharedResources.getExecutorService());
+      }
+      else if (kernelConfiguration.isVirtualThreads() && VirtualThreadFactory.isSupported())
+      {
+         tf = new VirtualThreadFactory();
+         setExecutorService(VirtualThreadFactory.newExecutorService(tf));
+      }
+      else
+      {
+         tf = new FungalThreadFactory(tg);
+
+         KernelThreadPool ktp = new KernelThreadPool(kernelConfiguration, tf);
+         ktp.prestartAllCoreThreads();
+
+         setExecutorService(ktp);
+
+         // The work of the kernel waits for other work of the kernel, so it can't be
+         // rejected, discarded or queued behind each other in a pool sized by the user
+         internalExecutorService = Executors.newCachedThreadPool(tf);
+      }
+
+      if (internalExecutorService == null)
+         internalExecutorService = getExecutorService();
 
-      ThreadPoolExecutor tpe = new ThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), Integer.MAX_VALUE,
-                                                      60, TimeUnit.SECONDS,
-                                                      threadPoolQueue,
-                                                      tf);
+      if (kernelConfiguration.isForkJoinDeploy())
+      {
+         forkJoinPool = new ForkJoinPool();
+         beanScheduler = new BeanScheduler(this, forkJoinPool);
+      }
+      else if (sharedResources != null)
+      {
+         beanScheduler = new BeanScheduler(this, sharedResources.newBeanExecutorService(
+                                                    Runtime.getRuntime().availableProcessors()));
+      }
+      else
+      {
+         beanScheduler = new BeanScheduler(this, Runtime.getRuntime().availableProcessors(), tf);
+      }
 
-      tpe.allowCoreThreadTimeOut(true);
-      tpe.prestartAllCoreThreads();
+      if (kernelConfiguration.getLifecycleListeners().size() > 0)
+      {
+         eventBus = new EventBus(this, kernelConfiguration.getLifecycleListeners(),
+                                 kernelConfiguration.getEventQueueSize());
+         eventBus.start(tf);
+      }
 
-      setExecutorService(tpe);
+      if (kernelConfiguration.getStallThreshold() > 0)
+      {
+         watchdog = new Watchdog(this, kernelConfiguration.getStallThreshold(),
+                                 kernelConfiguration.isFailStalledBeans());
+         watchdog.start(tf);
+      }
 
       File root = null;
 
@@ -341,7 +464,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
       URL[] urls = mergeUrls(libUrls, confUrls);
 
-      kernelClassLoader = ClassLoaderFactory.create(kernelConfiguration.getClassLoader(), urls, oldClassLoader);
+      kernelClassLoader = ClassLoaderFactory.create(kernelConfiguration.getClassLoader(), urls, oldClassLoader,
+                                                    sharedResources);
       SecurityActions.setThreadContextClassLoader(kernelClassLoader);
 
       initKernelLogging();
@@ -349,7 +473,7 @@ public class KernelImpl implements Kernel, KernelImplMBean
       // Netboot
       boolean netbooted = false;
       if (bootstrap != null)
-         netbooted = Netboot.resolve(getExecutorService(), bootstrap, repositoryDirectory, root);
+         netbooted = Netboot.resolve(internalExecutorService, bootstrap, repositoryDirectory, root);
 
       if (netbooted)
       {
@@ -358,10 +482,19 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
          urls = mergeUrls(libUrls, confUrls);
 
-         kernelClassLoader = ClassLoaderFactory.create(kernelConfiguration.getClassLoader(), urls, kernelClassLoader);
+         kernelClassLoader = ClassLoaderFactory.create(kernelConfiguration.getClassLoader(), urls, kernelClassLoader,
+                                                       sharedResources);
          SecurityActions.setThreadContextClassLoader(kernelClassLoader);
       }
 
+      // Deployment plan
+      if (kernelConfiguration.isDeploymentPlan() && !temporaryEnvironment)
+      {
+         deploymentPlan = new DeploymentPlan(new File(root, "deployment.plan"),
+                                             DeploymentPlan.fingerprint(VERSION, urls));
+         deploymentPlan.load();
+      }
+
       // POST_CLASSLOADER
       if (els != null && els.size() > 0)
       {
@@ -402,6 +535,33 @@ public class KernelImpl implements Kernel, KernelImplMBean
       ObjectName kernelObjectName = new ObjectName(kernelConfiguration.getName() + ":name=Kernel");
       mbeanServer.registerMBean(this, kernelObjectName);
 
+      if (executorService instanceof KernelThreadPool)
+      {
+         ObjectName threadPoolObjectName = new ObjectName(kernelConfiguration.getName() + ":name=ThreadPool");
+         mbeanServer.registerMBean(executorService, threadPoolObjectName);
+      }
+
+      ObjectName startupProfilerObjectName = new ObjectName(kernelConfiguration.getName() + ":name=StartupProfiler");
+      mbeanServer.registerMBean(startupProfiler, startupProfilerObjectName);
+
+      deployerPhasesInvoker = new DeployerPhasesInvoker(internalExecutorService,
+                                                        kernelConfiguration.isParallelDeployerPhases(),
+                                                        kernelConfiguration.getDeployerPhasesTimeout());
+      ObjectName deployerPhasesObjectName = new ObjectName(kernelConfiguration.getName() + ":name=DeployerPhases");
+      mbeanServer.registerMBean(deployerPhasesInvoker, deployerPhasesObjectName);
+
+      if (eventBus != null)
+      {
+         ObjectName eventBusObjectName = new ObjectName(kernelConfiguration.getName() + ":name=EventBus");
+         mbeanServer.registerMBean(eventBus, eventBusObjectName);
+      }
+
+      if (watchdog != null)
+      {
+         ObjectName watchdogObjectName = new ObjectName(kernelConfiguration.getName() + ":name=Watchdog");
+         mbeanServer.registerMBean(watchdog, watchdogObjectName);
+      }
+
       // Log version information
       log.info(VERSION + " started");
 
@@ -455,7 +615,9 @@ public class KernelImpl implements Kernel, KernelImplMBean
             bootstrapUrls.add(fullPath);
          }
 
+         plan(bootstrapUrls, false);
          deployUrls(bootstrapUrls.toArray(new URL[bootstrapUrls.size()]));
+         beanGraph = null;
       }
       incallback();
 
@@ -486,6 +648,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
             beanDeployments = new AtomicInteger(counter);
 
+            plan(l, !kernelConfiguration.isParallelDeploy());
+
             if (kernelConfiguration.isParallelDeploy())
             {
                deployUrls(l.toArray(new URL[l.size()]));
@@ -498,6 +662,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
                }
             }
 
+            beanGraph = null;
+
             if (counter > 0)
                incallback();
          }
@@ -541,6 +707,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
             beanDeployments = new AtomicInteger(counter);
 
+            plan(l, !kernelConfiguration.isParallelDeploy());
+
             if (kernelConfiguration.isParallelDeploy())
             {
                deployUrls(l.toArray(new URL[l.size()]));
@@ -553,6 +721,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
                }
             }
 
+            beanGraph = null;
+
             if (counter > 0)
                incallback();
          }
@@ -564,6 +734,19 @@ public class KernelImpl implements Kernel, KernelImplMBean
       // PostDeploy
       postDeploy(false);
 
+      // The plan is only stored after a successful startup
+      if (deploymentPlan != null)
+      {
+         if (!beanStatus.containsValue(ServiceLifecycle.ERROR))
+         {
+            deploymentPlan.store();
+         }
+         else
+         {
+            log.fine("Deployment plan not stored, as beans failed to start");
+         }
+      }
+
       // Remote access
       if (kernelConfiguration.isRemoteAccess())
       {
@@ -576,6 +759,9 @@ public class KernelImpl implements Kernel, KernelImplMBean
          remote.registerCommand(new Deploy(getMainDeployer(), getHotDeployer()));
          remote.registerCommand(new Undeploy(getMainDeployer(), getHotDeployer()));
 
+         if (watchdog != null)
+            remote.registerCommand(new WaitGraph(watchdog));
+
          List<Command> commands = kernelConfiguration.getCommands();
          if (commands != null && commands.size() > 0)
          {
@@ -587,7 +773,7 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
          remote.start();
 
-         getExecutorService().submit(remote);
+         internalExecutorService.submit(remote);
       }
 
       // JMX Remote
@@ -610,6 +796,11 @@ public class KernelImpl implements Kernel, KernelImplMBean
          log.fine("NonHeap memory: " + memoryBean.getNonHeapMemoryUsage().toString());
       }
 
+      startupProfiler.started();
+
+      if (log.isLoggable(Level.FINE))
+         log.fine(startupProfiler.criticalPath());
+
       // STARTED
       if (els != null && els.size() > 0)
       {
@@ -629,6 +820,23 @@ public class KernelImpl implements Kernel, KernelImplMBean
       trace = log.isLoggable(Level.FINEST);
    }
 
+   /**
+    * Plan the deployment of URLs; all descriptors are parsed and validated before any
+    * bean is created, and the bean graph is used by the deployers until the URLs are deployed
+    * @param urls The URLs in deployment order
+    * @param sequential Are the URLs deployed one at a time
+    */
+   private void plan(List<URL> urls, boolean sequential)
+   {
+      // Streamed descriptors are deployed as they are parsed
+      if (kernelConfiguration.isStreamingDeploy() && deploymentPlan == null)
+         return;
+
+      ExecutorService es = forkJoinPool != null ? forkJoinPool : internalExecutorService;
+
+      beanGraph = BeanGraph.create(urls, sequential, this, es);
+   }
+
    /**
     * Deploy URLs
     * @param urls The URLs
@@ -645,24 +853,53 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
             for (URL url : urls)
             {
+               UnitDeployer unitDeployer = null;
                try
                {
                   if (log.isLoggable(Level.FINE))
                      log.fine("URL=" + url.toString());
 
                   MainDeployerImpl deployer = (MainDeployerImpl)mainDeployer.clone();
-                  UnitDeployer unitDeployer = new UnitDeployer(url, deployer, kernelClassLoader, unitLatch);
+                  unitDeployer = new UnitDeployer(url, deployer, kernelClassLoader, unitLatch);
                   unitDeployers.add(unitDeployer);
                   
-                  getExecutorService().execute(unitDeployer);
+                  // The fork/join deployment engine runs the stage below
+                  if (forkJoinPool == null)
+                     internalExecutorService.execute(unitDeployer);
+               }
+               catch (RejectedExecutionException ree)
+               {
+                  // A deployment is never dropped; deploy it in the calling thread instead
+                  unitDeployer.run();
                }
                catch (Throwable deployThrowable)
                {
                   log.log(Level.SEVERE, deployThrowable.getMessage(), deployThrowable);
+
+                  // The deployment wasn't submitted, so it won't count down
+                  unitLatch.countDown();
                }
             }
 
-            unitLatch.await();
+            if (forkJoinPool != null)
+            {
+               try
+               {
+                  // The calling thread takes part in the stage
+                  DeploymentTask.invoke(forkJoinPool, unitDeployers, unitLatch);
+               }
+               catch (RejectedExecutionException ree)
+               {
+                  for (UnitDeployer unitDeployer : unitDeployers)
+                  {
+                     unitDeployer.run();
+                  }
+               }
+            }
+            else
+            {
+               DeploymentTask.await(unitLatch);
+            }
 
             Iterator<UnitDeployer> it = unitDeployers.iterator();
             while (it.hasNext())
@@ -700,6 +937,10 @@ public class KernelImpl implements Kernel, KernelImplMBean
 
       SecurityActions.setThreadContextClassLoader(kernelClassLoader);
 
+      // Stop the watchdog
+      if (watchdog != null)
+         watchdog.stop();
+
       // Stop hot deployer
       if (hotDeployer != null)
       {
@@ -723,15 +964,43 @@ public class KernelImpl implements Kernel, KernelImplMBean
       // Shutdown all deployments
       if (deployments.size() > 0)
       {
-         List<Deployment> shutdownDeployments = new LinkedList<Deployment>(deployments);
+         List<Deployment> shutdownDeployments = new LinkedList<Deployment>(deployments.getDeployments());
          Collections.reverse(shutdownDeployments);
 
-         for (Deployment deployment : shutdownDeployments)
+         if (kernelConfiguration.isParallelShutdown())
+         {
+            // Bean deployments between other deployments are stopped as one unit
+            List<BeanDeployment> beanDeployments = new ArrayList<BeanDeployment>();
+
+            for (Deployment deployment : shutdownDeployments)
+            {
+               if (hotDeployer != null)
+                  hotDeployer.unregister(deployment.getURL());
+
+               if (deployment instanceof BeanDeployment)
+               {
+                  beanDeployments.add((BeanDeployment)deployment);
+               }
+               else
+               {
+                  shutdownBeanDeployments(beanDeployments);
+                  beanDeployments.clear();
+
+                  shutdownDeployment(deployment);
+               }
+            }
+
+            shutdownBeanDeployments(beanDeployments);
+         }
+         else
          {
-            if (hotDeployer != null)
-               hotDeployer.unregister(deployment.getURL());
+            for (Deployment deployment : shutdownDeployments)
+            {
+               if (hotDeployer != null)
+                  hotDeployer.unregister(deployment.getURL());
 
-            shutdownDeployment(deployment);
+               shutdownDeployment(deployment);
+            }
          }
       }
 
@@ -751,6 +1020,10 @@ public class KernelImpl implements Kernel, KernelImplMBean
          }
       }
 
+      // Deliver the remaining lifecycle notifications
+      if (eventBus != null)
+         eventBus.stop();
+
       // Unregister MBeans
       if (mbeanServer != null)
       {
@@ -766,15 +1039,49 @@ public class KernelImpl implements Kernel, KernelImplMBean
          if (mbeanServer.isRegistered(kernelObjectName))
             mbeanServer.unregisterMBean(kernelObjectName);
 
+         ObjectName threadPoolObjectName = new ObjectName(kernelConfiguration.getName() + ":name=ThreadPool");
+         if (mbeanServer.isRegistered(threadPoolObjectName))
+            mbeanServer.unregisterMBean(threadPoolObjectName);
+
+         ObjectName startupProfilerObjectName = new ObjectName(kernelConfiguration.getName() + ":name=StartupProfiler");
+         if (mbeanServer.isRegistered(startupProfilerObjectName))
+            mbeanServer.unregisterMBean(startupProfilerObjectName);
+
+         ObjectName deployerPhasesObjectName = new ObjectName(kernelConfiguration.getName() + ":name=DeployerPhases");
+         if (mbeanServer.isRegistered(deployerPhasesObjectName))
+            mbeanServer.unregisterMBean(deployerPhasesObjectName);
+
+         ObjectName eventBusObjectName = new ObjectName(kernelConfiguration.getName() + ":name=EventBus");
+         if (mbeanServer.isRegistered(eventBusObjectName))
+            mbeanServer.unregisterMBean(eventBusObjectName);
+
+         ObjectName watchdogObjectName = new ObjectName(kernelConfiguration.getName() + ":name=Watchdog");
+         if (mbeanServer.isRegistered(watchdogObjectName))
+            mbeanServer.unregisterMBean(watchdogObjectName);
+
          // Release MBeanServer
          if (!kernelConfiguration.isUsePlatformMBeanServer())
             MBeanServerFactory.releaseMBeanServer(mbeanServer);
       }
 
+      // The shared executor service is shut down with the shared resources
+      boolean shared = kernelConfiguration.getSharedResources() != null;
+
+      // Shutdown bean scheduler
+      if (beanScheduler != null)
+         beanScheduler.shutdown();
+
+      // Shutdown fork/join deployment engine
+      if (forkJoinPool != null)
+         forkJoinPool.shutdown();
+
       // Shutdown thread pool
-      if (getExecutorService() != null)
+      if (getExecutorService() != null && !shared)
          getExecutorService().shutdown();
 
+      if (internalExecutorService != null && internalExecutorService != executorService)
+         internalExecutorService.shutdown();
+
       // Cleanup temporary environment
       if (temporaryEnvironment)
       {
@@ -826,46 +1133,91 @@ public class KernelImpl implements Kernel, KernelImplMBean
    }
 
    /**
-    * Shutdown a deployment unit
-    * @param deployment The deployment unit
+    * Shutdown bean deployment units; the beans of all the units are stopped
+    * in parallel in reverse dependency order
+    * @param beanDeployments The bean deployment units
     * @exception Throwable If an error occurs
     */
-   @SuppressWarnings("unchecked") 
-   void shutdownDeployment(Deployment deployment) throws Throwable
+   private void shutdownBeanDeployments(List<BeanDeployment> beanDeployments) throws Throwable
    {
-      SecurityActions.setThreadContextClassLoader(kernelClassLoader);
+      if (beanDeployments.size() == 0)
+         return;
 
-      try
-      {
-         Method stopMethod = deployment.getClass().getMethod("stop", (Class[])null);
-         stopMethod.setAccessible(true);
-         stopMethod.invoke(deployment, (Object[])null);
-      }
-      catch (NoSuchMethodException nsme)
-      {
-         // No stop method
-      }
-      catch (InvocationTargetException ite)
+      if (beanDeployments.size() == 1)
       {
-         throw ite.getCause();
+         shutdownDeployment(beanDeployments.get(0));
+         return;
       }
 
-      try
+      SecurityActions.setThreadContextClassLoader(kernelClassLoader);
+
+      TeardownScheduler teardown = new TeardownScheduler(getInternalExecutorService(),
+                                                         kernelConfiguration.getBeanShutdownTimeout());
+
+      for (BeanDeployment deployment : beanDeployments)
       {
-         Method destroyMethod = deployment.getClass().getMethod("destroy", (Class[])null);
-         destroyMethod.setAccessible(true);
-         destroyMethod.invoke(deployment, (Object[])null);
+         removeLazyBeans(deployment.getURL());
       }
-      catch (NoSuchMethodException nsme)
+
+      for (BeanDeployment deployment : beanDeployments)
       {
-         // No destroy method
+         deployment.stop();
+         deployment.schedule(teardown);
       }
-      catch (InvocationTargetException ite)
+
+      teardown.run();
+
+      deployments.unregister(beanDeployments);
+
+      for (BeanDeployment deployment : beanDeployments)
       {
-         throw ite.getCause();
+         publish(LifecycleEvent.DEPLOYMENT_UNDEPLOYED, deployment.getURL().toExternalForm());
       }
+   }
+
+   /**
+    * Shutdown a deployment unit
+    * @param deployment The deployment unit
+    * @exception Throwable If an error occurs
+    */
+   @SuppressWarnings("unchecked") 
+   void shutdownDeployment(Deployment deployment) throws Throwable
+   {
+      SecurityActions.setThreadContextClassLoader(kernelClassLoader);
+
+      removeLazyBeans(deployment.getURL());
+
+      BeanFactory factory = BeanFactory.getFactory(deployment.getClass());
 
-      deployments.remove(deployment);
+      BeanFactory.Invoker stopMethod = factory.getMethod("stop");
+      if (stopMethod != null)
+         stopMethod.invoke(deployment);
+
+      BeanFactory.Invoker destroyMethod = factory.getMethod("destroy");
+      if (destroyMethod != null)
+         destroyMethod.invoke(deployment);
+
+      deployments.unregister(deployment);
+
+      publish(LifecycleEvent.DEPLOYMENT_UNDEPLOYED, deployment.getURL().toExternalForm());
+   }
+
+   /**
+    * Get the deployment plan
+    * @return The plan; <code>null</code> if not enabled
+    */
+   DeploymentPlan getDeploymentPlan()
+   {
+      return deploymentPlan;
+   }
+
+   /**
+    * Get the bean graph for the deployments currently being started
+    * @return The graph; <code>null</code> if no startup deployments are in progress
+    */
+   BeanGraph getBeanGraph()
+   {
+      return beanGraph;
    }
 
    /**
@@ -884,9 +1236,9 @@ public class KernelImpl implements Kernel, KernelImplMBean
     * Set the executor service
     * @param v The value
     */
-   private void setExecutorService(ThreadPoolExecutor v)
+   private void setExecutorService(ExecutorService v)
    {
-      this.threadPoolExecutor = v;
+      this.executorService = v;
    }
 
    /** 
@@ -895,10 +1247,56 @@ public class KernelImpl implements Kernel, KernelImplMBean
     */
    public ExecutorService getExecutorService()
    {
-      if (threadPoolExecutor == null)
+      if (executorService == null)
+         throw new IllegalStateException("Thread pool is null");
+
+      return executorService;
+   }
+
+   /**
+    * Get the executor service for the work of the kernel itself; deployments, netboot,
+    * the hot deployer and the remote connector
+    * @return The executor service
+    */
+   ExecutorService getInternalExecutorService()
+   {
+      if (internalExecutorService == null)
          throw new IllegalStateException("Thread pool is null");
 
-      return threadPoolExecutor;
+      return internalExecutorService;
+   }
+
+   /**
+    * Get the startup profiler
+    * @return The startup profiler
+    */
+   StartupProfiler getStartupProfiler()
+   {
+      if (startupProfiler == null)
+         throw new IllegalStateException("Startup profiler is null");
+
+      return startupProfiler;
+   }
+
+   /**
+    * Get the watchdog
+    * @return The watchdog; <code>null</code> if stalled beans aren't watched
+    */
+   Watchdog getWatchdog()
+   {
+      return watchdog;
+   }
+
+   /**
+    * Get the bean scheduler
+    * @return The bean scheduler
+    */
+   BeanScheduler getBeanScheduler()
+   {
+      if (beanScheduler == null)
+         throw new IllegalStateException("Bean scheduler is null");
+
+      return beanScheduler;
    }
 
    /**
@@ -929,32 +1327,63 @@ public class KernelImpl implements Kernel, KernelImplMBean
    {
       beanStatus.put(name, status);
 
-      synchronized ( this.beanLatches ) 
-      {
-          if (status == ServiceLifecycle.NOT_STARTED)
-          {
-             List<CountDownLatch> l = beanLatches.get(name);
-             if (l == null)
-             {
-                List<CountDownLatch> newList = Collections.synchronizedList(new ArrayList<CountDownLatch>(1));
-                beanLatches.putIfAbsent(name, newList);
-             }
-          }
-          else if (status == ServiceLifecycle.STARTED || status == ServiceLifecycle.ERROR)
-          {
-             List<CountDownLatch> l = beanLatches.get(name);
-             if (l != null)
-             {
-                for (CountDownLatch cdl : l)
-                {
-                   if (cdl.getCount() > 0)
-                      cdl.countDown();
-                }
-             }
-          }
+      if (status == ServiceLifecycle.NOT_STARTED)
+      {
+         // A new deployment of the bean gets a new handle
+         BeanFuture future = beanFutures.get(name);
+         if (future == null)
+         {
+            getBeanFuture(name);
+         }
+         else if (future.isDone())
+         {
+            beanFutures.replace(name, future, new BeanFuture(name));
+         }
+      }
+      else if (status == ServiceLifecycle.STARTING)
+      {
+         publish(LifecycleEvent.BEAN_STARTING, name);
+      }
+      else if (status == ServiceLifecycle.STARTED || status == ServiceLifecycle.ERROR)
+      {
+         getBeanFuture(name).complete(status);
+
+         publish(status == ServiceLifecycle.STARTED ? LifecycleEvent.BEAN_STARTED : LifecycleEvent.BEAN_ERROR, name);
       }
    }
 
+   /**
+    * Publish a lifecycle notification to the lifecycle listeners
+    * @param event The event
+    * @param name The name of the bean, or the URL of the deployment
+    */
+   private void publish(LifecycleEvent event, String name)
+   {
+      if (eventBus != null)
+         eventBus.publish(event, name);
+   }
+
+   /**
+    * Get the completion handle of a bean; the handle is created if needed
+    * @param name The name of the bean
+    * @return The handle
+    */
+   BeanFuture getBeanFuture(String name)
+   {
+      BeanFuture future = beanFutures.get(name);
+      if (future == null)
+      {
+         BeanFuture newFuture = new BeanFuture(name);
+         future = beanFutures.putIfAbsent(name, newFuture);
+         if (future == null)
+         {
+            future = newFuture;
+         }
+      }
+
+      return future;
+   }
+
    /**
     * Add a bean
     * @param name The name of the bean
@@ -965,6 +1394,8 @@ public class KernelImpl implements Kernel, KernelImplMBean
       if (!beans.containsKey(name))
       {
          beans.put(name, bean);
+         beanTypes.add(name, bean);
+         newBeans.add(name);
       }
       else
       {
@@ -987,15 +1418,11 @@ public class KernelImpl implements Kernel, KernelImplMBean
          {
             if (callbackBeans.containsKey(bean))
             {
-               Iterator<Map.Entry<Class<?>, List<Callback>>> cit = uncallbacks.entrySet().iterator();
-               while (cit.hasNext())
+               for (Class<?> type : BeanTypeIndex.getTypes(bean.getClass()))
                {
-                  Map.Entry<Class<?>, List<Callback>> entry = cit.next();
-
-                  Class<?> type = entry.getKey();
-                  List<Callback> callbacks = entry.getValue();
+                  List<Callback> callbacks = uncallbacks.get(type);
             
-                  if (type.isInstance(bean))
+                  if (callbacks != null)
                   {
                      for (Callback cb : callbacks)
                      {
@@ -1021,10 +1448,24 @@ public class KernelImpl implements Kernel, KernelImplMBean
          }
       }
 
+      Object removed = beans.remove(name);
+      if (removed != null)
+      {
+         beanTypes.remove(name, removed);
+
+         publish(LifecycleEvent.BEAN_STOPPED, name);
+      }
+
       deployerPhasesBeans.remove(name);
-      beans.remove(name);
+
+      if (deployerPhasesInvoker != null)
+         deployerPhasesInvoker.remove(name);
       beanStatus.remove(name);
-      beanLatches.remove(name);
+      beanFutures.remove(name);
+      lazyBeans.remove(name);
+
+      if (startupProfiler != null)
+         startupProfiler.remove(name);
    }
 
    /**
@@ -1046,13 +1487,211 @@ public class KernelImpl implements Kernel, KernelImplMBean
    }
 
    /**
-    * Get a bean
+    * Get the beans of a type
+    * @param type The class or interface of the beans
+    * @return The bean instances by name
+    */
+   public <T> Map<String, T> getBeansOfType(Class<T> type)
+   {
+      if (type == null)
+         throw new IllegalArgumentException("Type is null");
+
+      Map<String, Object> l = beanTypes.getBeans(type);
+      Map<String, T> result = new HashMap<String, T>(l.size());
+
+      for (Map.Entry<String, Object> entry : l.entrySet())
+      {
+         result.put(entry.getKey(), type.cast(entry.getValue()));
+      }
+
+      return Collections.unmodifiableMap(result);
+   }
+
+   /**
+    * Get a bean once it has been started
+    * @param name The bean name
+    * @param expectedType The expected type for the bean
+    * @return The future for the bean instance; the future fails if the bean fails to start
+    */
+   public <T> Future<T> getBeanAsync(String name, Class<T> expectedType)
+   {
+      if (name == null)
+         throw new IllegalArgumentException("Name is null");
+
+      if (expectedType == null)
+         throw new IllegalArgumentException("ExpectedType is null");
+
+      BeanLookup<T> lookup = new BeanLookup<T>(this, getBeanFuture(name), expectedType);
+
+      activate(name);
+
+      return lookup;
+   }
+
+   /**
+    * Wait for a bean to be started
+    * @param name The bean name
+    * @param expectedType The expected type for the bean
+    * @param timeout The maximum time to wait
+    * @param unit The time unit of the timeout
+    * @return The bean instance
+    * @exception Throwable If the bean fails to start, or isn't started within the timeout
+    */
+   public <T> T awaitBean(String name, Class<T> expectedType, long timeout, TimeUnit unit) throws Throwable
+   {
+      if (unit == null)
+         throw new IllegalArgumentException("Unit is null");
+
+      Future<T> future = getBeanAsync(name, expectedType);
+
+      try
+      {
+         return future.get(timeout, unit);
+      }
+      catch (TimeoutException te)
+      {
+         future.cancel(false);
+         throw te;
+      }
+      catch (ExecutionException ee)
+      {
+         throw ee.getCause();
+      }
+   }
+
+   /**
+    * Get a bean; a lazy bean is activated, and the call waits for it to start
+    * within the lazy bean timeout
     * @param name The name of the bean
-    * @return The bean
+    * @return The bean; <code>null</code> if the bean didn't start in time
     */
    public Object getBean(String name)
    {
-      return beans.get(name);
+      Object bean = beans.get(name);
+
+      if (bean == null && !lazyBeans.isEmpty())
+      {
+         LazyBean lazyBean = lazyBeans.get(name);
+
+         if (lazyBean != null)
+         {
+            lazyBean.activate(this, true);
+
+            // The bean waits for its dependencies if it couldn't be deployed in the calling
+            // thread, and the calling thread may be a thread the bean is waiting for
+            BeanLookup<Object> lookup = new BeanLookup<Object>(this, getBeanFuture(name), Object.class);
+            int timeout = kernelConfiguration.getLazyBeanTimeout();
+
+            try
+            {
+               if (timeout > 0)
+               {
+                  bean = lookup.get(timeout, TimeUnit.SECONDS);
+               }
+               else
+               {
+                  bean = lookup.get();
+               }
+            }
+            catch (TimeoutException te)
+            {
+               lookup.cancel(false);
+               log.warning("Lazy bean " + name + " didn't start within " + timeout + " seconds");
+            }
+            catch (InterruptedException ie)
+            {
+               Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException ee)
+            {
+               log.log(Level.WARNING, ee.getCause().getMessage(), ee.getCause());
+            }
+         }
+      }
+
+      return bean;
+   }
+
+   /**
+    * Is a bean installed; lazy beans aren't activated
+    * @param name The name of the bean
+    * @return True if the bean is installed; otherwise false
+    */
+   boolean hasBean(String name)
+   {
+      return beans.containsKey(name);
+   }
+
+   /**
+    * Are all the beans started
+    * @param names The names of the beans; may be <code>null</code>
+    * @return True if all the beans are started; otherwise false
+    */
+   boolean isStarted(Set<String> names)
+   {
+      if (names != null)
+      {
+         for (String name : names)
+         {
+            if (beanStatus.get(name) != ServiceLifecycle.STARTED)
+               return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Add a lazy bean; the bean is activated right away if something
+    * is already waiting for it
+    * @param lazyBean The lazy bean
+    */
+   void addLazyBean(LazyBean lazyBean)
+   {
+      lazyBeans.put(lazyBean.getName(), lazyBean);
+
+      if (getBeanFuture(lazyBean.getName()).hasListeners())
+         lazyBean.activate(this, false);
+   }
+
+   /**
+    * Activate a lazy bean
+    * @param name The name of the bean
+    * @return True if the bean was activated by this call; otherwise false
+    */
+   public boolean activate(String name)
+   {
+      if (name == null)
+         throw new IllegalArgumentException("Name is null");
+
+      LazyBean lazyBean = lazyBeans.get(name);
+
+      if (lazyBean != null)
+         return lazyBean.activate(this, false);
+
+      return false;
+   }
+
+   /**
+    * Remove the lazy beans of a deployment that haven't been activated
+    * @param deployment The deployment
+    */
+   private void removeLazyBeans(URL deployment)
+   {
+      if (lazyBeans.isEmpty())
+         return;
+
+      Iterator<LazyBean> it = lazyBeans.values().iterator();
+      while (it.hasNext())
+      {
+         LazyBean lazyBean = it.next();
+
+         if (!lazyBean.isActivated() && deployment.equals(lazyBean.getDeployment()))
+         {
+            it.remove();
+            beanStatus.remove(lazyBean.getName(), ServiceLifecycle.NOT_STARTED);
+         }
+      }
    }
 
    /**
@@ -1069,9 +1708,9 @@ public class KernelImpl implements Kernel, KernelImplMBean
     * Add a bean to the dependants map
     * @param from The name of the from bean
     * @param to The name of the to bean
-    * @param cdl The count down latch that should be notified
+    * @param pb The pending bean that should be notified
     */
-   void addBeanDependants(String from, String to, CountDownLatch cdl)
+   void addBeanDependants(String from, String to, BeanScheduler.PendingBean pb)
    {
       // Register the 'from' -> 'to' binding
       Set<String> dependants = beanDependants.get(from);
@@ -1087,30 +1726,11 @@ public class KernelImpl implements Kernel, KernelImplMBean
       
       dependants.add(to);
 
-      synchronized ( this.beanLatches ) 
-      {
-          // Register the count down latch if the 'to' hasn't started
-          ServiceLifecycle slc = getBeanStatus(to);
-          if (slc != ServiceLifecycle.STARTED && slc != ServiceLifecycle.ERROR)
-          {
-             List<CountDownLatch> l = beanLatches.get(to);
-             if (l == null)
-             {
-                List<CountDownLatch> newList = Collections.synchronizedList(new ArrayList<CountDownLatch>(1));
-                l = beanLatches.putIfAbsent(to, newList);
-                if (l == null)
-                {
-                   l = newList;
-                }
-             }
-             
-             l.add(cdl);
-          }
-          else
-          {
-             cdl.countDown();
-          }
-      }
+      // The pending bean is notified right away if the 'to' has completed
+      getBeanFuture(to).addListener(pb);
+
+      // Injecting a lazy bean activates it
+      activate(to);
    }
 
    /**
@@ -1119,7 +1739,9 @@ public class KernelImpl implements Kernel, KernelImplMBean
     */
    void registerDeployment(Deployment deployment)
    {
-      deployments.add(deployment);
+      deployments.register(deployment);
+
+      publish(LifecycleEvent.DEPLOYMENT_DEPLOYED, deployment.getURL().toExternalForm());
    }
 
    /**
@@ -1183,6 +1805,12 @@ public class KernelImpl implements Kernel, KernelImplMBean
             sb.append("\n");
       }
 
+      if (startupProfiler != null && startupProfiler.getBeanCount() > 0)
+      {
+         sb.append("\n");
+         sb.append(startupProfiler.criticalPath());
+      }
+
       return sb.toString();
    }
 
@@ -1225,6 +1853,17 @@ public class KernelImpl implements Kernel, KernelImplMBean
             sb.append("  Dependants: None.");
          }
          sb.append("\n");
+
+         StartupProfiler.BeanProfile profile = null;
+         if (startupProfiler != null)
+            profile = startupProfiler.getProfile(name);
+
+         if (profile != null)
+         {
+            sb.append("  Startup: ");
+            profile.timings(sb);
+            sb.append("\n");
+         }
          
       }
       else
@@ -1242,7 +1881,7 @@ public class KernelImpl implements Kernel, KernelImplMBean
       List<Callback> callbacks = incallbacks.get(cb.getType());
       if (callbacks == null)
       {
-         List<Callback> newCallbacks = new ArrayList<Callback>(1);
+         List<Callback> newCallbacks = new CopyOnWriteArrayList<Callback>();
          callbacks = incallbacks.putIfAbsent(cb.getType(), newCallbacks);
          if (callbacks == null)
          {
@@ -1251,6 +1890,7 @@ public class KernelImpl implements Kernel, KernelImplMBean
       }
       
       callbacks.add(cb);
+      newIncallbacks.add(cb);
    }
 
    /**
@@ -1274,50 +1914,57 @@ public class KernelImpl implements Kernel, KernelImplMBean
    }
 
    /**
-    * Handle incallback
+    * Handle incallback; only beans and incallbacks that are new since
+    * the last pass are dispatched
     */
-   private void incallback()
+   void incallback()
    {
-      if (incallbacks.size() > 0)
+      incallbackLock.lock();
+      try
       {
-         Iterator<Map.Entry<Class<?>, List<Callback>>> cit = incallbacks.entrySet().iterator();
-         while (cit.hasNext())
+         List<Callback> callbacks = new ArrayList<Callback>(newIncallbacks.size());
+         Callback cb = newIncallbacks.poll();
+         while (cb != null)
          {
-            Map.Entry<Class<?>, List<Callback>> entry = cit.next();
+            callbacks.add(cb);
+            cb = newIncallbacks.poll();
+         }
 
-            Class<?> type = entry.getKey();
-            List<Callback> callbacks = entry.getValue();
-            
-            Iterator<Object> bit = beans.values().iterator();
-            while (bit.hasNext())
+         List<String> names = new ArrayList<String>(newBeans.size());
+         String name = newBeans.poll();
+         while (name != null)
+         {
+            names.add(name);
+            name = newBeans.poll();
+         }
+
+         // New incallbacks for all beans of the type
+         for (Callback callback : callbacks)
+         {
+            for (Object bean : beanTypes.getBeans(callback.getType()).values())
+            {
+               incallback(callback, bean);
+            }
+         }
+
+         // All incallbacks for the new beans
+         if (incallbacks.size() > 0)
+         {
+            for (String beanName : names)
             {
-               Object bean = bit.next();
+               Object bean = beans.get(beanName);
 
-               if (type.isInstance(bean))
+               if (bean != null)
                {
-                  for (Callback cb : callbacks)
+                  for (Class<?> type : BeanTypeIndex.getTypes(bean.getClass()))
                   {
-                     List<Callback> registeredCallbacks = callbackBeans.get(bean);
-                     if (registeredCallbacks == null || !registeredCallbacks.contains(bean))
-                     {
-                        if (registeredCallbacks == null)
-                           registeredCallbacks = new ArrayList<Callback>(1);
+                     List<Callback> l = incallbacks.get(type);
 
-                        try
-                        {
-                           Method m = cb.getMethod();
-                           Object instance = cb.getInstance();
-                           
-                           m.setAccessible(true);
-                           m.invoke(instance, new Object[] {bean});
-
-                           registeredCallbacks.add(cb);
-                           callbackBeans.put(bean, registeredCallbacks);
-                        }
-                        catch (Throwable t)
+                     if (l != null)
+                     {
+                        for (Callback callback : l)
                         {
-                           if (log.isLoggable(Level.FINE))
-                              log.fine(cb.toString());
+                           incallback(callback, bean);
                         }
                      }
                   }
@@ -1325,6 +1972,50 @@ public class KernelImpl implements Kernel, KernelImplMBean
             }
          }
       }
+      finally
+      {
+         incallbackLock.unlock();
+      }
+   }
+
+   /**
+    * Invoke an incallback for a bean, unless the bean has been registered with the callback
+    * @param cb The callback
+    * @param bean The bean
+    */
+   private void incallback(Callback cb, Object bean)
+   {
+      List<Callback> registeredCallbacks = callbackBeans.get(bean);
+      if (registeredCallbacks != null)
+      {
+         for (Callback registered : registeredCallbacks)
+         {
+            if (registered == cb)
+               return;
+         }
+      }
+
+      try
+      {
+         Method m = cb.getMethod();
+         Object instance = cb.getInstance();
+                           
+         m.setAccessible(true);
+         m.invoke(instance, new Object[] {bean});
+
+         if (registeredCallbacks == null)
+         {
+            registeredCallbacks = new ArrayList<Callback>(1);
+            callbackBeans.put(bean, registeredCallbacks);
+         }
+
+         registeredCallbacks.add(cb);
+      }
+      catch (Throwable t)
+      {
+         if (log.isLoggable(Level.FINE))
+            log.fine(cb.toString());
+      }
    }
 
    /**
@@ -1458,6 +2149,17 @@ public class KernelImpl implements Kernel, KernelImplMBean
     * @exception Throwable Thrown if there is an error and delegate is true
     */
    void preDeploy(boolean delegate) throws Throwable
+   {
+      preDeploy(null, delegate);
+   }
+
+   /**
+    * Pre deploy
+    * @param url The URL of the deployment; <code>null</code> for all deployments
+    * @param delegate True if any exception should be delegated
+    * @exception Throwable Thrown if there is an error and delegate is true
+    */
+   void preDeploy(URL url, boolean delegate) throws Throwable
    {
       if (newDeployerPhasesBeans.size() > 0)
       {
@@ -1465,29 +2167,7 @@ public class KernelImpl implements Kernel, KernelImplMBean
          newDeployerPhasesBeans.clear();
       }
 
-      for (String beanName : deployerPhasesBeans)
-      {
-         DeployerPhases bean = (DeployerPhases)getBean(beanName);
-
-         if (bean != null && getBeanStatus(beanName) == ServiceLifecycle.STARTED)
-         {
-            if (delegate)
-            {
-               bean.preDeploy();
-            }
-            else
-            {
-               try
-               {
-                  bean.preDeploy();
-               }
-               catch (Throwable t)
-               {
-                  log.log(Level.WARNING, t.getMessage(), t);
-               }
-            }
-         }
-      }
+      deployerPhases(DeployerPhasesInvoker.Phase.PRE_DEPLOY, url, delegate);
    }
 
    /**
@@ -1497,7 +2177,25 @@ public class KernelImpl implements Kernel, KernelImplMBean
     */
    void postDeploy(boolean delegate) throws Throwable
    {
-      beanLatches.clear();
+      postDeploy(null, delegate);
+   }
+
+   /**
+    * Post deploy
+    * @param url The URL of the deployment; <code>null</code> for all deployments
+    * @param delegate True if any exception should be delegated
+    * @exception Throwable Thrown if there is an error and delegate is true
+    */
+   void postDeploy(URL url, boolean delegate) throws Throwable
+   {
+      // Drop the handles of beans that never started, unless someone is waiting
+      Iterator<BeanFuture> fit = beanFutures.values().iterator();
+      while (fit.hasNext())
+      {
+         BeanFuture future = fit.next();
+         if (!future.isDone() && !future.hasListeners())
+            fit.remove();
+      }
 
       if (newDeployerPhasesBeans.size() > 0)
       {
@@ -1505,29 +2203,7 @@ public class KernelImpl implements Kernel, KernelImplMBean
          newDeployerPhasesBeans.clear();
       }
 
-      for (String beanName : deployerPhasesBeans)
-      {
-         DeployerPhases bean = (DeployerPhases)getBean(beanName);
-
-         if (bean != null && getBeanStatus(beanName) == ServiceLifecycle.STARTED)
-         {
-            if (delegate)
-            {
-               bean.postDeploy();
-            }
-            else
-            {
-               try
-               {
-                  bean.postDeploy();
-               }
-               catch (Throwable t)
-               {
-                  log.log(Level.WARNING, t.getMessage(), t);
-               }
-            }
-         }
-      }
+      deployerPhases(DeployerPhasesInvoker.Phase.POST_DEPLOY, url, delegate);
    }
 
    /**
@@ -1537,29 +2213,18 @@ public class KernelImpl implements Kernel, KernelImplMBean
     */
    void preUndeploy(boolean delegate) throws Throwable
    {
-      for (String beanName : deployerPhasesBeans)
-      {
-         DeployerPhases bean = (DeployerPhases)getBean(beanName);
+      preUndeploy(null, delegate);
+   }
 
-         if (bean != null && getBeanStatus(beanName) == ServiceLifecycle.STARTED)
-         {
-            if (delegate)
-            {
-               bean.preUndeploy();
-            }
-            else
-            {
-               try
-               {
-                  bean.preUndeploy();
-               }
-               catch (Throwable t)
-               {
-                  log.log(Level.WARNING, t.getMessage(), t);
-               }
-            }
-         }
-      }
+   /**
+    * Pre undeploy
+    * @param url The URL of the deployment; <code>null</code> for all deployments
+    * @param delegate True if any exception should be delegated
+    * @exception Throwable Thrown if there is an error and delegate is true
+    */
+   void preUndeploy(URL url, boolean delegate) throws Throwable
+   {
+      deployerPhases(DeployerPhasesInvoker.Phase.PRE_UNDEPLOY, url, delegate);
    }
 
    /**
@@ -1569,29 +2234,41 @@ public class KernelImpl implements Kernel, KernelImplMBean
     */
    void postUndeploy(boolean delegate) throws Throwable
    {
+      postUndeploy(null, delegate);
+   }
+
+   /**
+    * Post undeploy
+    * @param url The URL of the deployment; <code>null</code> for all deployments
+    * @param delegate True if any exception should be delegated
+    * @exception Throwable Thrown if there is an error and delegate is true
+    */
+   void postUndeploy(URL url, boolean delegate) throws Throwable
+   {
+      deployerPhases(DeployerPhasesInvoker.Phase.POST_UNDEPLOY, url, delegate);
+   }
+
+   /**
+    * Call a deployer phase on the started deployer phases beans
+    * @param phase The phase
+    * @param url The URL of the deployment; <code>null</code> for all deployments
+    * @param delegate True if any exception should be delegated
+    * @exception Throwable Thrown if there is an error and delegate is true
+    */
+   private void deployerPhases(DeployerPhasesInvoker.Phase phase, URL url, boolean delegate) throws Throwable
+   {
+      Map<String, DeployerPhases> l = new LinkedHashMap<String, DeployerPhases>();
+
       for (String beanName : deployerPhasesBeans)
       {
          DeployerPhases bean = (DeployerPhases)getBean(beanName);
 
          if (bean != null && getBeanStatus(beanName) == ServiceLifecycle.STARTED)
-         {
-            if (delegate)
-            {
-               bean.postUndeploy();
-            }
-            else
-            {
-               try
-               {
-                  bean.postUndeploy();
-               }
-               catch (Throwable t)
-               {
-                  log.log(Level.WARNING, t.getMessage(), t);
-               }
-            }
-         }
+            l.put(beanName, bean);
       }
+
+      if (l.size() > 0)
+         deployerPhasesInvoker.invoke(phase, url, l, delegate);
    }
 
    /**
@@ -38,4 +38,11 @@ public interface KernelImplMBean
     * @return The information
     */
    public String dump(String name);
+
+   /**
+    * Activate a lazy bean
+    * @param name The bean name
+    * @return True if the bean was activated; otherwise false
+    */
+   public boolean activate(String name);
 }
@@ -0,0 +1,378 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package com.github.fungal.impl;
+
+import com.github.fungal.api.configuration.KernelConfiguration;
+import com.github.fungal.api.configuration.RejectionPolicy;
+import com.github.fungal.api.configuration.ThreadPoolQueue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The kernel thread pool for Fungal
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class KernelThreadPool extends ThreadPoolExecutor implements KernelThreadPoolMBean
+{
+   /** Rejected tasks */
+   private AtomicLong rejected;
+
+   /** Tasks that have left the queue */
+   private AtomicLong dequeued;
+
+   /** Total queue wait time in nanoseconds */
+   private AtomicLong totalQueueWait;
+
+   /** Max queue wait time in nanoseconds */
+   private AtomicLong maxQueueWait;
+
+   /**
+    * Constructor
+    * @param kc The kernel configuration
+    * @param tf The thread factory
+    */
+   public KernelThreadPool(KernelConfiguration kc, ThreadFactory tf)
+   {
+      super(validate(kc).getThreadPoolCoreSize(), kc.getThreadPoolMaxSize(),
+            kc.getThreadPoolKeepAlive(), TimeUnit.SECONDS,
+            createQueue(kc), tf);
+
+      this.rejected = new AtomicLong(0);
+      this.dequeued = new AtomicLong(0);
+      this.totalQueueWait = new AtomicLong(0);
+      this.maxQueueWait = new AtomicLong(0);
+
+      setRejectedExecutionHandler(new CountingRejectedExecutionHandler(createHandler(kc.getThreadPoolRejectionPolicy())));
+
+      if (kc.getThreadPoolKeepAlive() > 0)
+         allowCoreThreadTimeOut(true);
+   }
+
+   /**
+    * Validate the settings of the thread pool
+    * @param kc The kernel configuration
+    * @return The kernel configuration
+    */
+   private static KernelConfiguration validate(KernelConfiguration kc)
+   {
+      if (kc == null)
+         throw new IllegalArgumentException("KernelConfiguration is null");
+
+      if (kc.getThreadPoolQueue() == null)
+         throw new IllegalArgumentException("ThreadPoolQueue is null");
+
+      if (kc.getThreadPoolCoreSize() < 0)
+         throw new IllegalArgumentException("ThreadPoolCoreSize is negative: " + kc.getThreadPoolCoreSize());
+
+      if (kc.getThreadPoolMaxSize() <= 0)
+         throw new IllegalArgumentException("ThreadPoolMaxSize must be positive: " + kc.getThreadPoolMaxSize());
+
+      if (kc.getThreadPoolCoreSize() > kc.getThreadPoolMaxSize())
+         throw new IllegalArgumentException("ThreadPoolCoreSize (" + kc.getThreadPoolCoreSize() +
+                                            ") is greater than ThreadPoolMaxSize (" +
+                                            kc.getThreadPoolMaxSize() + ")");
+
+      if (kc.getThreadPoolKeepAlive() < 0)
+         throw new IllegalArgumentException("ThreadPoolKeepAlive is negative: " + kc.getThreadPoolKeepAlive());
+
+      if (kc.getThreadPoolQueue() == ThreadPoolQueue.BOUNDED && kc.getThreadPoolQueueCapacity() <= 0)
+         throw new IllegalArgumentException("ThreadPoolQueueCapacity must be positive: " +
+                                            kc.getThreadPoolQueueCapacity());
+
+      // An unbounded queue is never full, so the pool doesn't grow beyond its core size,
+      // and a core size of 0 would run every task on a single thread
+      if (kc.getThreadPoolQueue() == ThreadPoolQueue.UNBOUNDED && kc.getThreadPoolCoreSize() == 0)
+         throw new IllegalArgumentException("ThreadPoolCoreSize must be positive for a " +
+                                            kc.getThreadPoolQueue() + " queue");
+
+      return kc;
+   }
+
+   /**
+    * Create the queue
+    * @param kc The kernel configuration
+    * @return The queue
+    */
+   private static BlockingQueue<Runnable> createQueue(KernelConfiguration kc)
+   {
+      switch (kc.getThreadPoolQueue())
+      {
+         case BOUNDED:
+            return new ArrayBlockingQueue<Runnable>(kc.getThreadPoolQueueCapacity());
+         case UNBOUNDED:
+            return new LinkedBlockingQueue<Runnable>();
+         default:
+            return new SynchronousQueue<Runnable>(true);
+      }
+   }
+
+   /**
+    * Create the rejected execution handler
+    * @param policy The rejection policy
+    * @return The handler
+    */
+   private static RejectedExecutionHandler createHandler(RejectionPolicy policy)
+   {
+      if (policy == null)
+         throw new IllegalArgumentException("RejectionPolicy is null");
+
+      switch (policy)
+      {
+         case CALLER_RUNS:
+            return new ThreadPoolExecutor.CallerRunsPolicy();
+         case DISCARD:
+            return new DiscardPolicy();
+         case DISCARD_OLDEST:
+            return new DiscardOldestPolicy();
+         default:
+            return new ThreadPoolExecutor.AbortPolicy();
+      }
+   }
+
+   /**
+    * Execute a task
+    * @param command The task
+    */
+   @Override
+   public void execute(Runnable command)
+   {
+      if (command == null)
+         throw new NullPointerException("Command is null");
+
+      // A task that is retried by the rejection policy is already timed
+      if (command instanceof TimedTask)
+         super.execute(command);
+      else
+         super.execute(new TimedTask(command));
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getQueueSize()
+   {
+      return getQueue().size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getQueueRemainingCapacity()
+   {
+      return getQueue().remainingCapacity();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getRejectedCount()
+   {
+      return rejected.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getAverageQueueWaitTime()
+   {
+      long count = dequeued.get();
+
+      if (count == 0)
+         return 0;
+
+      return TimeUnit.NANOSECONDS.toMillis(totalQueueWait.get() / count);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getMaxQueueWaitTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(maxQueueWait.get());
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void resetStatistics()
+   {
+      rejected.set(0);
+      dequeued.set(0);
+      totalQueueWait.set(0);
+      maxQueueWait.set(0);
+   }
+
+   /**
+    * A task has left the queue
+    * @param wait The time in the queue in nanoseconds
+    */
+   private void dequeued(long wait)
+   {
+      dequeued.incrementAndGet();
+      totalQueueWait.addAndGet(wait);
+
+      long max = maxQueueWait.get();
+      while (wait > max && !maxQueueWait.compareAndSet(max, wait))
+      {
+         max = maxQueueWait.get();
+      }
+   }
+
+   /**
+    * A task that records the time it spent in the queue
+    */
+   class TimedTask implements Runnable
+   {
+      /** The task */
+      private Runnable task;
+
+      /** Submit time */
+      private long submitted;
+
+      /**
+       * Constructor
+       * @param task The task
+       */
+      TimedTask(Runnable task)
+      {
+         this.task = task;
+         this.submitted = System.nanoTime();
+      }
+
+      /**
+       * Run
+       */
+      public void run()
+      {
+         dequeued(System.nanoTime() - submitted);
+
+         task.run();
+      }
+
+      /**
+       * Get the task
+       * @return The value
+       */
+      Runnable getTask()
+      {
+         return task;
+      }
+   }
+
+   /**
+    * Discard a task. A task that is a future is cancelled, such that the threads
+    * waiting for its result are released instead of waiting forever
+    * @param r The task
+    */
+   private static void discard(Runnable r)
+   {
+      Runnable task = r;
+
+      if (task instanceof TimedTask)
+         task = ((TimedTask)task).getTask();
+
+      if (task instanceof Future)
+         ((Future<?>)task).cancel(false);
+   }
+
+   /**
+    * A rejected execution handler that discards the task
+    */
+   static class DiscardPolicy implements RejectedExecutionHandler
+   {
+      /**
+       * Rejected execution
+       * @param r The task
+       * @param executor The executor
+       */
+      public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+      {
+         discard(r);
+      }
+   }
+
+   /**
+    * A rejected execution handler that discards the oldest task in the queue, and retries
+    */
+   static class DiscardOldestPolicy implements RejectedExecutionHandler
+   {
+      /**
+       * Rejected execution
+       * @param r The task
+       * @param executor The executor
+       */
+      public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+      {
+         if (executor.isShutdown())
+         {
+            discard(r);
+            return;
+         }
+
+         Runnable oldest = executor.getQueue().poll();
+
+         if (oldest != null)
+            discard(oldest);
+
+         executor.execute(r);
+      }
+   }
+
+   /**
+    * A rejected execution handler that counts the rejected tasks
+    */
+   class CountingRejectedExecutionHandler implements RejectedExecutionHandler
+   {
+      /** The delegate */
+      private RejectedExecutionHandler delegate;
+
+      /**
+       * Constructor
+       * @param delegate The delegate
+       */
+      CountingRejectedExecutionHandler(RejectedExecutionHandler delegate)
+      {
+         this.delegate = delegate;
+      }
+
+      /**
+       * Rejected execution
+       * @param r The task
+       * @param executor The executor
+       */
+      public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+      {
+         rejected.incrementAndGet();
+
+         delegate.rejectedExecution(r, executor);
+      }
+   }
+}
@@ -0,0 +1,100 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package com.github.fungal.impl;
+
+/**
+ * The kernel thread pool MBean for Fungal
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public interface KernelThreadPoolMBean
+{
+   /**
+    * Get the core number of threads
+    * @return The value
+    */
+   public int getCorePoolSize();
+
+   /**
+    * Get the maximum number of threads
+    * @return The value
+    */
+   public int getMaximumPoolSize();
+
+   /**
+    * Get the current number of threads
+    * @return The value
+    */
+   public int getPoolSize();
+
+   /**
+    * Get the largest number of threads that have been in the pool
+    * @return The value
+    */
+   public int getLargestPoolSize();
+
+   /**
+    * Get the number of threads executing tasks
+    * @return The value
+    */
+   public int getActiveCount();
+
+   /**
+    * Get the number of tasks in the queue
+    * @return The value
+    */
+   public int getQueueSize();
+
+   /**
+    * Get the remaining capacity of the queue
+    * @return The value
+    */
+   public int getQueueRemainingCapacity();
+
+   /**
+    * Get the number of completed tasks
+    * @return The value
+    */
+   public long getCompletedTaskCount();
+
+   /**
+    * Get the number of rejected tasks
+    * @return The value
+    */
+   public long getRejectedCount();
+
+   /**
+    * Get the average time in milliseconds tasks have waited in the queue
+    * @return The value
+    */
+   public long getAverageQueueWaitTime();
+
+   /**
+    * Get the maximum time in milliseconds a task has waited in the queue
+    * @return The value
+    */
+   public long getMaxQueueWaitTime();
+
+   /**
+    * Reset the statistics
+    */
+   public void resetStatistics();
+}
@@ -0,0 +1,134 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A bean that is created on first use.
+ *
+ * The bean is registered as not started, and its deployer is scheduled
+ * the first time the bean is looked up, injected or activated. Concurrent
+ * activations are coalesced into a single deployment of the bean
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+final class LazyBean
+{
+   /** The deployment */
+   private URL deployment;
+
+   /** The name */
+   private String name;
+
+   /** The dependencies; may be <code>null</code> */
+   private Set<String> dependencies;
+
+   /** The deployer */
+   private DeploymentDeployer.BeanDeployer deployer;
+
+   /** Activated */
+   private AtomicBoolean activated;
+
+   /**
+    * Constructor
+    * @param deployment The deployment
+    * @param name The name of the bean
+    * @param dependencies The names of the beans that the bean depends on; may be <code>null</code>
+    * @param deployer The deployer
+    */
+   LazyBean(URL deployment, String name, Set<String> dependencies, DeploymentDeployer.BeanDeployer deployer)
+   {
+      this.deployment = deployment;
+      this.name = name;
+      this.dependencies = dependencies;
+      this.deployer = deployer;
+      this.activated = new AtomicBoolean(false);
+   }
+
+   /**
+    * Get the deployment
+    * @return The value
+    */
+   URL getDeployment()
+   {
+      return deployment;
+   }
+
+   /**
+    * Get the name
+    * @return The value
+    */
+   String getName()
+   {
+      return name;
+   }
+
+   /**
+    * Is the bean activated
+    * @return The value
+    */
+   boolean isActivated()
+   {
+      return activated.get();
+   }
+
+   /**
+    * Activate the bean; only the first call deploys the bean. The bean is deployed
+    * in the calling thread if requested and all its dependencies are started, otherwise
+    * it is scheduled once its dependencies are resolved
+    * @param kernel The kernel
+    * @param inline Deploy the bean in the calling thread if possible
+    * @return True if this call activated the bean; otherwise false
+    */
+   boolean activate(KernelImpl kernel, boolean inline)
+   {
+      if (!activated.compareAndSet(false, true))
+         return false;
+
+      deployer.setProfile(kernel.getStartupProfiler().register(name, dependencies));
+
+      Watchdog watchdog = kernel.getWatchdog();
+      if (watchdog != null)
+         watchdog.watch(name, deployer);
+
+      if (inline && kernel.isStarted(dependencies))
+      {
+         ClassLoader cl = SecurityActions.getThreadContextClassLoader();
+         try
+         {
+            deployer.run();
+         }
+         finally
+         {
+            SecurityActions.setThreadContextClassLoader(cl);
+         }
+      }
+      else
+      {
+         kernel.getBeanScheduler().schedule(name, dependencies, deployer);
+      }
+
+      return true;
+   }
+}
@@ -30,6 +30,8 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The main deployer for Fungal
@@ -42,6 +44,9 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
 
    private List<Deployer> copy;
 
+   /** The lock; a monitor would pin virtual threads while a deployment waits for its beans */
+   private Lock lock;
+
    /**
     * Constructor
     * @param kernel The kernel
@@ -58,6 +63,7 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
       this.kernel = kernel;
       this.deployers = deployers;
       this.copy = null;
+      this.lock = new ReentrantLock();
    }
 
    /**
@@ -74,7 +80,7 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
     * @param url The URL for the deployment
     * @exception Throwable If an error occurs
     */
-   public synchronized void deploy(URL url) throws Throwable
+   public void deploy(URL url) throws Throwable
    {
       deploy(url, true, kernel.getKernelClassLoader());
    }
@@ -86,8 +92,7 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
     * @param classLoader The parent class loader for the deployment
     * @exception Throwable If an error occurs
     */
-   @SuppressWarnings("unchecked")
-   public synchronized void deploy(URL url, boolean deployerPhases, ClassLoader classLoader) throws Throwable
+   public void deploy(URL url, boolean deployerPhases, ClassLoader classLoader) throws Throwable
    {
       if (url == null)
          throw new IllegalArgumentException("URL is null");
@@ -95,6 +100,27 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
       if (classLoader == null)
          throw new IllegalArgumentException("ClassLoader is null");
 
+      lock.lock();
+      try
+      {
+         doDeploy(url, deployerPhases, classLoader);
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Deploy
+    * @param url The URL for the deployment
+    * @param deployerPhases Run DeployerPhases hooks
+    * @param classLoader The parent class loader for the deployment
+    * @exception Throwable If an error occurs
+    */
+   @SuppressWarnings("unchecked")
+   private void doDeploy(URL url, boolean deployerPhases, ClassLoader classLoader) throws Throwable
+   {
       if (copy == null || copy.size() != deployers.getDeployers().size())
       {
          @SuppressWarnings("rawtypes")
@@ -158,7 +184,7 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
       int copySize = copy.size();
 
       if (deployerPhases)
-         kernel.preDeploy(true);
+         kernel.preDeploy(url, true);
 
       for (int i = 0; !done && i < copySize; i++)
       {
@@ -174,8 +200,10 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
          }
       }
 
+      kernel.incallback();
+
       if (deployerPhases)
-         kernel.postDeploy(true);
+         kernel.postDeploy(url, true);
    }
 
    /**
@@ -183,19 +211,27 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
     * @param url The URL for the deployment
     * @exception Throwable If an error occurs
     */
-   public synchronized void undeploy(URL url) throws Throwable
+   public void undeploy(URL url) throws Throwable
    {
       if (url == null)
          throw new IllegalArgumentException("URL is null");
 
-      Deployment deployment = kernel.getDeployment(url);
-      if (deployment != null)
+      lock.lock();
+      try
       {
-         kernel.preUndeploy(true);
+         Deployment deployment = kernel.getDeployment(url);
+         if (deployment != null)
+         {
+            kernel.preUndeploy(url, true);
 
-         unregisterDeployment(deployment);
+            unregisterDeployment(deployment);
 
-         kernel.postUndeploy(true);
+            kernel.postUndeploy(url, true);
+         }
+      }
+      finally
+      {
+         lock.unlock();
       }
    }
 
@@ -203,12 +239,20 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
     * Register a deployment -- advanced usage
     * @param deployment The deployment
     */
-   public synchronized void registerDeployment(Deployment deployment)
+   public void registerDeployment(Deployment deployment)
    {
       if (deployment == null)
          throw new IllegalArgumentException("Deployment is null");
 
-      kernel.registerDeployment(deployment);
+      lock.lock();
+      try
+      {
+         kernel.registerDeployment(deployment);
+      }
+      finally
+      {
+         lock.unlock();
+      }
    }
 
    /**
@@ -216,12 +260,20 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
     * @param deployment The deployment
     * @exception Throwable If an error occurs
     */
-   public synchronized void unregisterDeployment(Deployment deployment) throws Throwable
+   public void unregisterDeployment(Deployment deployment) throws Throwable
    {
       if (deployment == null)
          throw new IllegalArgumentException("Deployment is null");
 
-      kernel.shutdownDeployment(deployment);
+      lock.lock();
+      try
+      {
+         kernel.shutdownDeployment(deployment);
+      }
+      finally
+      {
+         lock.unlock();
+      }
    }
 
    /**
@@ -235,6 +287,7 @@ public final class MainDeployerImpl implements Cloneable, MainDeployerImplMBean
       md.kernel = kernel;
       md.deployers = deployers;
       md.copy = null;
+      md.lock = new ReentrantLock();
       
       return md;
    }
@@ -0,0 +1,503 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The startup profiler for Fungal.
+ *
+ * The profiler records where the time is spent for each bean, and finds
+ * the critical path through the dependency graph; the chain of beans where
+ * each bean was waiting for the previous one
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class StartupProfiler implements StartupProfilerMBean
+{
+   /** The origin */
+   private long origin;
+
+   /** The time the kernel was started */
+   private volatile long started;
+
+   /** The profiles */
+   private ConcurrentMap<String, BeanProfile> profiles;
+
+   /**
+    * Constructor
+    */
+   public StartupProfiler()
+   {
+      this.origin = System.nanoTime();
+      this.started = 0L;
+      this.profiles = new ConcurrentHashMap<String, BeanProfile>();
+   }
+
+   /**
+    * Register a bean that has been scheduled
+    * @param name The name of the bean
+    * @param dependencies The dependencies of the bean; may be <code>null</code>
+    * @return The profile
+    */
+   BeanProfile register(String name, Set<String> dependencies)
+   {
+      BeanProfile profile = new BeanProfile(name, dependencies);
+      profiles.put(name, profile);
+      return profile;
+   }
+
+   /**
+    * Remove a bean
+    * @param name The name of the bean
+    */
+   void remove(String name)
+   {
+      profiles.remove(name);
+   }
+
+   /**
+    * The kernel has been started
+    */
+   void started()
+   {
+      started = System.nanoTime();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getBeanCount()
+   {
+      return profiles.size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getStartupTime()
+   {
+      if (started == 0L)
+         return -1L;
+
+      return toMillis(started - origin);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getCriticalPathTime()
+   {
+      List<BeanProfile> path = getCriticalPath();
+
+      if (path.size() == 0)
+         return 0L;
+
+      return toMillis(path.get(path.size() - 1).getCompleted() - path.get(0).getScheduled());
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String report()
+   {
+      List<BeanProfile> l = new ArrayList<BeanProfile>(profiles.values());
+      Collections.sort(l, new Comparator<BeanProfile>()
+      {
+         public int compare(BeanProfile o1, BeanProfile o2)
+         {
+            long t1 = o1.getTotal();
+            long t2 = o2.getTotal();
+
+            if (t1 == t2)
+               return o1.getName().compareTo(o2.getName());
+
+            return t1 > t2 ? -1 : 1;
+         }
+      });
+
+      StringBuilder sb = new StringBuilder();
+
+      for (BeanProfile profile : l)
+      {
+         profile.toString(sb);
+         sb.append("\n");
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String report(String name)
+   {
+      BeanProfile profile = profiles.get(name);
+
+      if (profile == null)
+         return "Bean \"" + name + "\" not profiled.";
+
+      StringBuilder sb = new StringBuilder();
+      profile.toString(sb);
+      return sb.toString();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String criticalPath()
+   {
+      StringBuilder sb = new StringBuilder();
+
+      List<BeanProfile> path = getCriticalPath();
+
+      sb.append("Critical path: ").append(getCriticalPathTime()).append(" ms");
+      for (BeanProfile profile : path)
+      {
+         sb.append("\n  ").append(profile.getName());
+         sb.append(" (completed at ").append(format(profile.getCompleted() - origin)).append(" ms, ");
+         sb.append("own ").append(format(profile.getOwn())).append(" ms)");
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * Get the profile of a bean
+    * @param name The name of the bean
+    * @return The profile; <code>null</code> if the bean isn't profiled
+    */
+   BeanProfile getProfile(String name)
+   {
+      return profiles.get(name);
+   }
+
+   /**
+    * Get the critical path. The path ends with the bean that completed last, and
+    * each bean is preceded by the dependency that it waited on the longest
+    * @return The beans on the path in start order
+    */
+   List<BeanProfile> getCriticalPath()
+   {
+      LinkedList<BeanProfile> path = new LinkedList<BeanProfile>();
+
+      BeanProfile current = null;
+      for (BeanProfile profile : profiles.values())
+      {
+         if (profile.getCompleted() != 0L &&
+             (current == null || profile.getCompleted() > current.getCompleted()))
+            current = profile;
+      }
+
+      Set<String> visited = new HashSet<String>();
+
+      while (current != null && visited.add(current.getName()))
+      {
+         path.addFirst(current);
+
+         BeanProfile next = null;
+         if (current.getDependencies() != null)
+         {
+            for (String dependency : current.getDependencies())
+            {
+               BeanProfile profile = profiles.get(dependency);
+               if (profile != null && profile.getCompleted() > current.getScheduled() &&
+                   (next == null || profile.getCompleted() > next.getCompleted()))
+                  next = profile;
+            }
+         }
+
+         current = next;
+      }
+
+      return path;
+   }
+
+   /**
+    * Convert nanoseconds to milliseconds
+    * @param nanos The value
+    * @return The milliseconds
+    */
+   private static long toMillis(long nanos)
+   {
+      return nanos / 1000000L;
+   }
+
+   /**
+    * Format nanoseconds as milliseconds
+    * @param nanos The value
+    * @return The milliseconds
+    */
+   private static String format(long nanos)
+   {
+      return String.format(Locale.US, "%.3f", Double.valueOf(nanos / 1000000.0));
+   }
+
+   /**
+    * The profile of a bean
+    */
+   class BeanProfile
+   {
+      /** The name */
+      private String name;
+
+      /** The dependencies */
+      private Set<String> dependencies;
+
+      /** Scheduled */
+      private volatile long scheduled;
+
+      /** All dependencies completed */
+      private volatile long ready;
+
+      /** Running */
+      private volatile long running;
+
+      /** Completed */
+      private volatile long completed;
+
+      /** Class loading */
+      private volatile long classLoading;
+
+      /** Construction */
+      private volatile long construction;
+
+      /** Injection */
+      private volatile long injection;
+
+      /** Lifecycle */
+      private volatile long lifecycle;
+
+      /** Error */
+      private volatile boolean error;
+
+      /**
+       * Constructor
+       * @param name The name of the bean
+       * @param dependencies The dependencies of the bean
+       */
+      BeanProfile(String name, Set<String> dependencies)
+      {
+         this.name = name;
+         this.dependencies = dependencies;
+         this.scheduled = System.nanoTime();
+         this.ready = 0L;
+         this.running = 0L;
+         this.completed = 0L;
+         this.classLoading = 0L;
+         this.construction = 0L;
+         this.injection = 0L;
+         this.lifecycle = 0L;
+         this.error = false;
+      }
+
+      /**
+       * Get the name
+       * @return The value
+       */
+      String getName()
+      {
+         return name;
+      }
+
+      /**
+       * Get the dependencies
+       * @return The value
+       */
+      Set<String> getDependencies()
+      {
+         return dependencies;
+      }
+
+      /**
+       * Get the time the bean was scheduled
+       * @return The value
+       */
+      long getScheduled()
+      {
+         return scheduled;
+      }
+
+      /**
+       * Get the time the bean started running
+       * @return The value; <code>0</code> if the bean isn't running yet
+       */
+      long getRunning()
+      {
+         return running;
+      }
+
+      /**
+       * Get the time the bean completed
+       * @return The value; <code>0</code> if the bean hasn't completed
+       */
+      long getCompleted()
+      {
+         return completed;
+      }
+
+      /**
+       * Get the time from the bean was scheduled until it completed
+       * @return The value
+       */
+      long getTotal()
+      {
+         if (completed == 0L)
+            return 0L;
+
+         return completed - scheduled;
+      }
+
+      /**
+       * Get the time the bean spent running
+       * @return The value; <code>0</code> if the bean never ran
+       */
+      long getOwn()
+      {
+         if (completed == 0L || running == 0L)
+            return 0L;
+
+         return completed - running;
+      }
+
+      /**
+       * The bean is running
+       */
+      void running()
+      {
+         long r = scheduled;
+
+         if (dependencies != null)
+         {
+            for (String dependency : dependencies)
+            {
+               BeanProfile profile = profiles.get(dependency);
+               if (profile != null && profile.getCompleted() > r)
+                  r = profile.getCompleted();
+            }
+         }
+
+         running = System.nanoTime();
+         ready = Math.min(r, running);
+      }
+
+      /**
+       * The bean has completed
+       * @param failed Did the bean fail
+       */
+      void completed(boolean failed)
+      {
+         completed = System.nanoTime();
+         error = failed;
+      }
+
+      /**
+       * Add class loading time
+       * @param nanos The time
+       */
+      void addClassLoading(long nanos)
+      {
+         classLoading += nanos;
+      }
+
+      /**
+       * Add construction time
+       * @param nanos The time
+       */
+      void addConstruction(long nanos)
+      {
+         construction += nanos;
+      }
+
+      /**
+       * Add injection time
+       * @param nanos The time
+       */
+      void addInjection(long nanos)
+      {
+         injection += nanos;
+      }
+
+      /**
+       * Add lifecycle time
+       * @param nanos The time
+       */
+      void addLifecycle(long nanos)
+      {
+         lifecycle += nanos;
+      }
+
+      /**
+       * String representation
+       * @param sb The string builder
+       */
+      void toString(StringBuilder sb)
+      {
+         sb.append("Bean \"").append(name).append("\": ");
+         timings(sb);
+      }
+
+      /**
+       * Timings
+       * @param sb The string builder
+       */
+      void timings(StringBuilder sb)
+      {
+         if (completed == 0L)
+         {
+            sb.append(running == 0L ? "Waiting" : "Running");
+            return;
+         }
+
+         sb.append("total=").append(format(completed - scheduled));
+
+         // A bean that failed before it ran, f.ex. rejected or stalled, has no running time
+         if (running != 0L)
+         {
+            sb.append(" dependencies=").append(format(ready - scheduled));
+            sb.append(" queue=").append(format(running - ready));
+         }
+         else
+         {
+            sb.append(" dependencies=").append(format(completed - scheduled));
+            sb.append(" queue=").append(format(0L));
+         }
+
+         sb.append(" classloading=").append(format(classLoading));
+         sb.append(" construction=").append(format(construction));
+         sb.append(" injection=").append(format(injection));
+         sb.append(" lifecycle=").append(format(lifecycle));
+         sb.append(" (ms)");
+
+         if (error)
+            sb.append(" ERROR");
+      }
+   }
+}
@@ -0,0 +1,65 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+/**
+ * The startup profiler MBean for Fungal
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public interface StartupProfilerMBean
+{
+   /**
+    * Get the number of profiled beans
+    * @return The value
+    */
+   public int getBeanCount();
+
+   /**
+    * Get the time in milliseconds from the start of the kernel until it was started
+    * @return The value; <code>-1</code> if the kernel hasn't been started
+    */
+   public long getStartupTime();
+
+   /**
+    * Get the time in milliseconds of the critical path
+    * @return The value
+    */
+   public long getCriticalPathTime();
+
+   /**
+    * Report the profile of all beans, slowest first
+    * @return The report
+    */
+   public String report();
+
+   /**
+    * Report the profile of a bean
+    * @param name The bean name
+    * @return The report
+    */
+   public String report(String name);
+
+   /**
+    * Report the critical path; the chain of beans that held up the start of the kernel
+    * @return The report
+    */
+   public String criticalPath();
+}
@@ -0,0 +1,408 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The teardown scheduler for Fungal.
+ *
+ * Beans are stopped in parallel in reverse topological order; a bean is only
+ * stopped once all the beans that depend on it have been stopped. The calling
+ * thread coordinates the teardown, and beans that don't stop within the
+ * timeout are reported as stragglers and no longer block the teardown
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class TeardownScheduler
+{
+   /** The logger */
+   private static Logger log = Logger.getLogger(TeardownScheduler.class.getName());
+
+   /** The executor; <code>null</code> if the tasks should run in the calling thread */
+   private Executor executor;
+
+   /** The timeout in milliseconds */
+   private long timeout;
+
+   /** The tasks in preferred order */
+   private Map<String, Callable<Void>> tasks;
+
+   /** The dependencies for each bean */
+   private Map<String, Set<String>> dependencies;
+
+   /** The stragglers */
+   private List<String> stragglers;
+
+   /**
+    * Constructor
+    * @param executor The executor; <code>null</code> if the tasks should run in the calling thread
+    * @param timeout The timeout in seconds for each bean; <code>0</code> for no timeout
+    */
+   public TeardownScheduler(Executor executor, int timeout)
+   {
+      this.executor = executor;
+      this.timeout = TimeUnit.SECONDS.toMillis(timeout);
+      this.tasks = new LinkedHashMap<String, Callable<Void>>();
+      this.dependencies = new HashMap<String, Set<String>>();
+      this.stragglers = new ArrayList<String>(1);
+   }
+
+   /**
+    * Add a bean
+    * @param name The name of the bean
+    * @param task The task that stops the bean
+    */
+   public void add(String name, Callable<Void> task)
+   {
+      tasks.put(name, task);
+   }
+
+   /**
+    * Add a dependency; the dependant is stopped before the dependency
+    * @param dependant The name of the bean that depends on the dependency
+    * @param dependency The name of the dependency
+    */
+   public void addDependency(String dependant, String dependency)
+   {
+      Set<String> s = dependencies.get(dependant);
+      if (s == null)
+      {
+         s = new HashSet<String>(1);
+         dependencies.put(dependant, s);
+      }
+
+      s.add(dependency);
+   }
+
+   /**
+    * Get the beans that didn't stop within the timeout
+    * @return The names
+    */
+   public List<String> getStragglers()
+   {
+      return Collections.unmodifiableList(stragglers);
+   }
+
+   /**
+    * Run the teardown. No new beans are stopped once a bean has failed
+    * @exception Throwable The first error reported by a bean
+    */
+   public void run() throws Throwable
+   {
+      // Number of dependants that needs to be stopped before each bean
+      Map<String, Integer> blockers = new HashMap<String, Integer>(tasks.size());
+      for (String name : tasks.keySet())
+      {
+         blockers.put(name, Integer.valueOf(0));
+      }
+
+      for (Map.Entry<String, Set<String>> entry : dependencies.entrySet())
+      {
+         if (tasks.containsKey(entry.getKey()))
+         {
+            for (String dependency : entry.getValue())
+            {
+               if (blockers.containsKey(dependency) && !dependency.equals(entry.getKey()))
+                  blockers.put(dependency, Integer.valueOf(blockers.get(dependency).intValue() + 1));
+            }
+         }
+      }
+
+      List<String> ready = new LinkedList<String>();
+      for (String name : tasks.keySet())
+      {
+         if (blockers.get(name).intValue() == 0)
+            ready.add(name);
+      }
+
+      BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+      Map<String, Long> running = new HashMap<String, Long>();
+      Set<String> done = new HashSet<String>(tasks.size());
+      Throwable failure = null;
+
+      while (done.size() < tasks.size())
+      {
+         if (failure == null)
+         {
+            if (ready.size() == 0 && running.size() == 0)
+            {
+               // A cycle; stop the remaining beans in the preferred order
+               for (String name : tasks.keySet())
+               {
+                  if (!done.contains(name))
+                  {
+                     ready.add(name);
+                     break;
+                  }
+               }
+            }
+
+            while (ready.size() > 0)
+            {
+               String name = ready.remove(0);
+               running.put(name, Long.valueOf(System.currentTimeMillis()));
+               submit(new Task(name, tasks.get(name), results));
+            }
+         }
+         else if (running.size() == 0)
+         {
+            break;
+         }
+
+         Result result = null;
+
+         if (timeout > 0)
+         {
+            long wait = timeout;
+            long now = System.currentTimeMillis();
+
+            for (Long started : running.values())
+            {
+               wait = Math.min(wait, started.longValue() + timeout - now);
+            }
+
+            result = results.poll(Math.max(wait, 1L), TimeUnit.MILLISECONDS);
+         }
+         else
+         {
+            result = results.take();
+         }
+
+         if (result != null)
+         {
+            if (stragglers.contains(result.getName()))
+            {
+               log.info("Bean " + result.getName() + " stopped after " + result.getTime() + " ms");
+
+               if (result.getThrowable() != null)
+                  log.log(Level.WARNING, result.getThrowable().getMessage(), result.getThrowable());
+            }
+            else
+            {
+               running.remove(result.getName());
+
+               if (result.getThrowable() != null && failure == null)
+                  failure = result.getThrowable();
+
+               completed(result.getName(), blockers, ready, done);
+            }
+         }
+         else
+         {
+            long now = System.currentTimeMillis();
+
+            Iterator<Map.Entry<String, Long>> it = running.entrySet().iterator();
+            while (it.hasNext())
+            {
+               Map.Entry<String, Long> entry = it.next();
+               if (now - entry.getValue().longValue() >= timeout)
+               {
+                  String name = entry.getKey();
+                  it.remove();
+
+                  stragglers.add(name);
+                  log.warning("Bean " + name + " didn't stop within " + (timeout / 1000) + " seconds");
+
+                  completed(name, blockers, ready, done);
+               }
+            }
+         }
+      }
+
+      if (stragglers.size() > 0)
+         log.warning("Stragglers: " + stragglers);
+
+      if (failure != null)
+         throw failure;
+   }
+
+   /**
+    * A bean has completed
+    * @param name The name of the bean
+    * @param blockers The number of dependants that needs to be stopped before each bean
+    * @param ready The beans that are ready to be stopped
+    * @param done The completed beans
+    */
+   private void completed(String name, Map<String, Integer> blockers, List<String> ready, Set<String> done)
+   {
+      done.add(name);
+
+      Set<String> deps = dependencies.get(name);
+      if (deps != null)
+      {
+         for (String dependency : deps)
+         {
+            Integer count = blockers.get(dependency);
+            if (count != null && !dependency.equals(name) && !done.contains(dependency))
+            {
+               int c = count.intValue() - 1;
+               blockers.put(dependency, Integer.valueOf(c));
+
+               if (c == 0)
+                  ready.add(dependency);
+            }
+         }
+      }
+   }
+
+   /**
+    * Submit a task; the task runs in the calling thread if the executor rejects it
+    * @param task The task
+    */
+   private void submit(Task task)
+   {
+      if (executor != null)
+      {
+         try
+         {
+            executor.execute(task);
+            return;
+         }
+         catch (RejectedExecutionException ree)
+         {
+            // Run in the calling thread
+         }
+      }
+
+      task.run();
+   }
+
+   /**
+    * A teardown task
+    */
+   static class Task implements Runnable
+   {
+      /** The name */
+      private String name;
+
+      /** The task */
+      private Callable<Void> task;
+
+      /** The results */
+      private BlockingQueue<Result> results;
+
+      /**
+       * Constructor
+       * @param name The name of the bean
+       * @param task The task
+       * @param results The results
+       */
+      Task(String name, Callable<Void> task, BlockingQueue<Result> results)
+      {
+         this.name = name;
+         this.task = task;
+         this.results = results;
+      }
+
+      /**
+       * Run
+       */
+      public void run()
+      {
+         long start = System.currentTimeMillis();
+         Throwable throwable = null;
+
+         try
+         {
+            task.call();
+         }
+         catch (Throwable t)
+         {
+            throwable = t;
+         }
+
+         results.add(new Result(name, System.currentTimeMillis() - start, throwable));
+      }
+   }
+
+   /**
+    * The result of a teardown task
+    */
+   static class Result
+   {
+      /** The name */
+      private String name;
+
+      /** The time in milliseconds */
+      private long time;
+
+      /** The throwable */
+      private Throwable throwable;
+
+      /**
+       * Constructor
+       * @param name The name of the bean
+       * @param time The time in milliseconds
+       * @param throwable The throwable; <code>null</code> if the bean stopped
+       */
+      Result(String name, long time, Throwable throwable)
+      {
+         this.name = name;
+         this.time = time;
+         this.throwable = throwable;
+      }
+
+      /**
+       * Get the name
+       * @return The value
+       */
+      String getName()
+      {
+         return name;
+      }
+
+      /**
+       * Get the time in milliseconds
+       * @return The value
+       */
+      long getTime()
+      {
+         return time;
+      }
+
+      /**
+       * Get the throwable
+       * @return The value
+       */
+      Throwable getThrowable()
+      {
+         return throwable;
+      }
+   }
+}
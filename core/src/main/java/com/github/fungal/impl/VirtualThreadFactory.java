@@ -0,0 +1,107 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The virtual thread factory for Fungal.
+ *
+ * Virtual threads are looked up through reflection, so the kernel still runs
+ * on virtual machines that doesn't support them
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public class VirtualThreadFactory implements ThreadFactory
+{
+   /** The delegate */
+   private ThreadFactory delegate;
+
+   /**
+    * Constructor
+    * @exception Exception Thrown if virtual threads aren't supported
+    */
+   public VirtualThreadFactory() throws Exception
+   {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+
+      Method ofVirtual = Thread.class.getMethod("ofVirtual", (Class[])null);
+      Object builder = ofVirtual.invoke(null, (Object[])null);
+
+      Method name = builderClass.getMethod("name", String.class, long.class);
+      builder = name.invoke(builder, "fungal-virtual-", Long.valueOf(1));
+
+      Method factory = builderClass.getMethod("factory", (Class[])null);
+      this.delegate = (ThreadFactory)factory.invoke(builder, (Object[])null);
+   }
+
+   /**
+    * Are virtual threads supported by the virtual machine. A virtual machine where
+    * virtual threads are a preview feature has the API, but fails when it is used
+    * unless preview features are enabled, so a factory and a thread are created
+    * @return True if supported; otherwise false
+    */
+   public static boolean isSupported()
+   {
+      try
+      {
+         Thread thread = new VirtualThreadFactory().newThread(new Runnable()
+         {
+            public void run()
+            {
+            }
+         });
+
+         Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+
+         return thread != null;
+      }
+      catch (Throwable t)
+      {
+         return false;
+      }
+   }
+
+   /**
+    * Create an executor service that starts a new virtual thread for each task
+    * @param tf The thread factory
+    * @return The executor service
+    * @exception Exception Thrown if the executor service can't be created
+    */
+   public static ExecutorService newExecutorService(ThreadFactory tf) throws Exception
+   {
+      Method m = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      return (ExecutorService)m.invoke(null, tf);
+   }
+
+   /**
+    * Create a new thread
+    * @param r The runnable
+    * @return The thread
+    */
+   public Thread newThread(Runnable r)
+   {
+      return delegate.newThread(r);
+   }
+}
@@ -0,0 +1,499 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+import com.github.fungal.spi.deployers.DeployException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The watchdog for Fungal.
+ *
+ * A bean is stalled when it has waited for its dependencies, or has run its
+ * lifecycle methods, for longer than the stall threshold. Each stalled bean is
+ * reported with its wait chain; the path of unresolved dependencies that ends at
+ * the bean holding it up. Stalled beans can be failed, such that the deployments
+ * waiting for them complete without the beans instead of hanging the kernel
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public final class Watchdog implements WatchdogMBean, Runnable
+{
+   /** The logger */
+   private static Logger log = Logger.getLogger(Watchdog.class.getName());
+
+   /** The minimum check interval in milliseconds */
+   private static final long MIN_INTERVAL = 100L;
+
+   /** The time in milliseconds to wait for the watchdog thread during stop */
+   private static final long STOP_TIMEOUT = 10000L;
+
+   /** The kernel */
+   private KernelImpl kernel;
+
+   /** The stall threshold in milliseconds */
+   private long threshold;
+
+   /** Fail stalled beans */
+   private boolean failStalledBeans;
+
+   /** The beans that haven't completed */
+   private ConcurrentMap<String, DeploymentDeployer.BeanDeployer> beans;
+
+   /** The stalled beans that have been reported */
+   private Set<String> reported;
+
+   /** The watchdog thread */
+   private Thread thread;
+
+   /** Running */
+   private volatile boolean running;
+
+   /** Stalled */
+   private volatile int stalled;
+
+   /** Failed */
+   private AtomicLong failed;
+
+   /** Checks */
+   private AtomicLong checks;
+
+   /**
+    * Constructor
+    * @param kernel The kernel
+    * @param threshold The stall threshold in seconds
+    * @param failStalledBeans Fail stalled beans
+    */
+   public Watchdog(KernelImpl kernel, int threshold, boolean failStalledBeans)
+   {
+      if (kernel == null)
+         throw new IllegalArgumentException("Kernel is null");
+
+      if (threshold <= 0)
+         throw new IllegalArgumentException("Threshold is invalid");
+
+      this.kernel = kernel;
+      this.threshold = threshold * 1000L;
+      this.failStalledBeans = failStalledBeans;
+      this.beans = new ConcurrentHashMap<String, DeploymentDeployer.BeanDeployer>();
+      this.reported = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      this.thread = null;
+      this.running = false;
+      this.stalled = 0;
+      this.failed = new AtomicLong(0);
+      this.checks = new AtomicLong(0);
+   }
+
+   /**
+    * Start the watchdog thread
+    * @param tf The thread factory
+    */
+   public void start(ThreadFactory tf)
+   {
+      running = true;
+
+      thread = tf.newThread(this);
+      thread.setName("fungal-watchdog");
+
+      if (!thread.isDaemon())
+         thread.setDaemon(true);
+
+      thread.start();
+   }
+
+   /**
+    * Stop the watchdog thread
+    */
+   public void stop()
+   {
+      running = false;
+
+      if (thread != null)
+      {
+         thread.interrupt();
+
+         try
+         {
+            thread.join(STOP_TIMEOUT);
+         }
+         catch (InterruptedException ie)
+         {
+            Thread.currentThread().interrupt();
+         }
+
+         thread = null;
+      }
+   }
+
+   /**
+    * Watch a bean until it completes
+    * @param name The name of the bean
+    * @param deployer The deployer of the bean
+    */
+   void watch(String name, DeploymentDeployer.BeanDeployer deployer)
+   {
+      beans.put(name, deployer);
+   }
+
+   /**
+    * The bean has completed
+    * @param name The name of the bean
+    */
+   void unwatch(String name)
+   {
+      beans.remove(name);
+      reported.remove(name);
+   }
+
+   /**
+    * Check for stalled beans
+    */
+   public void run()
+   {
+      long interval = Math.max(threshold / 4, MIN_INTERVAL);
+
+      while (running)
+      {
+         try
+         {
+            Thread.sleep(interval);
+         }
+         catch (InterruptedException ie)
+         {
+            return;
+         }
+
+         try
+         {
+            check(false);
+         }
+         catch (Throwable t)
+         {
+            log.log(Level.WARNING, "Watchdog: " + t.getMessage(), t);
+         }
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String check()
+   {
+      return check(true);
+   }
+
+   /**
+    * Check for stalled beans; stalled beans are logged the first time they are
+    * found, and failed if configured
+    * @param report Create a report of the stalled beans
+    * @return The report; <code>null</code> if not requested
+    */
+   private String check(boolean report)
+   {
+      checks.incrementAndGet();
+
+      List<String> names = getStalledBeans(System.nanoTime());
+      stalled = names.size();
+
+      if (names.size() == 0)
+         return report ? report(names) : null;
+
+      // Each stalled bean is only logged the first time it is found
+      List<String> newStalls = new ArrayList<String>(1);
+      for (String name : names)
+      {
+         if (reported.add(name))
+            newStalls.add(name);
+      }
+
+      if (newStalls.size() > 0)
+         log.warning(report(newStalls));
+
+      String result = report ? report(names) : null;
+
+      if (failStalledBeans)
+      {
+         // The wait chains are resolved before any bean is failed
+         Map<String, String> chains = new HashMap<String, String>(names.size());
+         for (String name : names)
+         {
+            StringBuilder sb = new StringBuilder();
+            chain(name, sb);
+            chains.put(name, sb.toString());
+         }
+
+         for (String name : names)
+         {
+            DeploymentDeployer.BeanDeployer deployer = beans.get(name);
+            if (deployer != null && deployer.failed(new DeployException("Stalled: " + chains.get(name))))
+               failed.incrementAndGet();
+         }
+      }
+
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String report()
+   {
+      return report(getStalledBeans(System.nanoTime()));
+   }
+
+   /**
+    * Report the wait chains of the stalled beans, and the dependency cycles
+    * @param names The names of the stalled beans
+    * @return The report
+    */
+   private String report(List<String> names)
+   {
+      StringBuilder sb = new StringBuilder();
+
+      sb.append("Stalled beans: ").append(names.size());
+      sb.append(" (threshold ").append(threshold).append(" ms)");
+
+      for (String name : names)
+      {
+         sb.append("\n  ");
+         chain(name, sb);
+      }
+
+      List<List<String>> cycles = BeanGraph.getCycles(getWaitGraph());
+
+      if (cycles.size() > 0)
+      {
+         sb.append("\nDependency cycles: ").append(cycles.size());
+
+         for (List<String> cycle : cycles)
+         {
+            sb.append("\n  ");
+            for (String name : cycle)
+            {
+               sb.append(name).append(" -> ");
+            }
+            sb.append(cycle.get(0));
+         }
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * Get the stalled beans
+    * @param now The current time in nanoseconds
+    * @return The names of the stalled beans, sorted
+    */
+   private List<String> getStalledBeans(long now)
+   {
+      List<String> result = new ArrayList<String>(1);
+      long nanos = threshold * 1000000L;
+
+      for (Map.Entry<String, DeploymentDeployer.BeanDeployer> entry : beans.entrySet())
+      {
+         StartupProfiler.BeanProfile profile = entry.getValue().getProfile();
+
+         if (profile != null && profile.getCompleted() == 0L)
+         {
+            long since = profile.getRunning() != 0L ? profile.getRunning() : profile.getScheduled();
+
+            if (now - since > nanos)
+               result.add(entry.getKey());
+         }
+      }
+
+      Collections.sort(result);
+
+      return result;
+   }
+
+   /**
+    * Append the wait chain of a bean; each bean waits for the first of its
+    * unresolved dependencies until the chain ends at the bean holding it up
+    * @param name The name of the bean
+    * @param sb The string builder
+    */
+   private void chain(String name, StringBuilder sb)
+   {
+      Set<String> visited = new HashSet<String>();
+      String current = name;
+      long now = System.nanoTime();
+
+      sb.append(current);
+
+      while (current != null)
+      {
+         visited.add(current);
+
+         DeploymentDeployer.BeanDeployer deployer = beans.get(current);
+         StartupProfiler.BeanProfile profile = deployer != null ? deployer.getProfile() : null;
+         String next = null;
+
+         if (profile == null)
+         {
+            ServiceLifecycle status = kernel.getBeanStatus(current);
+
+            if (status == null)
+            {
+               sb.append(" (not deployed)");
+            }
+            else if (status == ServiceLifecycle.NOT_STARTED)
+            {
+               sb.append(" (not scheduled)");
+            }
+            else
+            {
+               sb.append(" (").append(status).append(")");
+            }
+         }
+         else if (profile.getRunning() != 0L)
+         {
+            sb.append(" (running for ").append((now - profile.getRunning()) / 1000000L).append(" ms)");
+         }
+         else
+         {
+            Set<String> unresolved = getUnresolved(current);
+
+            if (unresolved.size() == 0)
+            {
+               sb.append(" (waiting for a thread for ");
+               sb.append((now - profile.getScheduled()) / 1000000L).append(" ms)");
+            }
+            else
+            {
+               sb.append(" waits for ").append(unresolved);
+
+               next = unresolved.iterator().next();
+               sb.append(" -> ").append(next);
+
+               if (visited.contains(next))
+               {
+                  sb.append(" (cycle)");
+                  next = null;
+               }
+            }
+         }
+
+         current = next;
+      }
+   }
+
+   /**
+    * Get the dependencies of a bean that haven't completed
+    * @param name The name of the bean
+    * @return The names of the dependencies, sorted
+    */
+   private Set<String> getUnresolved(String name)
+   {
+      Set<String> result = new TreeSet<String>();
+      Set<String> dependencies = kernel.getBeanDependants(name);
+
+      if (dependencies != null)
+      {
+         for (String dependency : new ArrayList<String>(dependencies))
+         {
+            ServiceLifecycle status = kernel.getBeanStatus(dependency);
+
+            if (status != ServiceLifecycle.STARTED && status != ServiceLifecycle.ERROR)
+               result.add(dependency);
+         }
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the wait graph; the unresolved dependencies of each bean that hasn't completed
+    * @return The graph
+    */
+   private Map<String, Set<String>> getWaitGraph()
+   {
+      Map<String, Set<String>> graph = new HashMap<String, Set<String>>(beans.size());
+
+      for (String name : beans.keySet())
+      {
+         graph.put(name, getUnresolved(name));
+      }
+
+      return graph;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getStallThreshold()
+   {
+      return threshold;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isFailStalledBeans()
+   {
+      return failStalledBeans;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getWatchedCount()
+   {
+      return beans.size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getStalledCount()
+   {
+      return stalled;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getFailedCount()
+   {
+      return failed.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getCheckCount()
+   {
+      return checks.get();
+   }
+}
@@ -0,0 +1,77 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl;
+
+/**
+ * The MBean for the watchdog
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public interface WatchdogMBean
+{
+   /**
+    * Get the time in milliseconds before a bean is reported as stalled
+    * @return The value
+    */
+   public long getStallThreshold();
+
+   /**
+    * Are stalled beans failed
+    * @return The value
+    */
+   public boolean isFailStalledBeans();
+
+   /**
+    * Get the number of beans that are watched
+    * @return The value
+    */
+   public int getWatchedCount();
+
+   /**
+    * Get the number of stalled beans found by the last check
+    * @return The value
+    */
+   public int getStalledCount();
+
+   /**
+    * Get the number of beans failed because they stalled
+    * @return The value
+    */
+   public long getFailedCount();
+
+   /**
+    * Get the number of checks
+    * @return The value
+    */
+   public long getCheckCount();
+
+   /**
+    * Report the wait chain of each stalled bean, and the dependency cycles
+    * between the beans that haven't completed
+    * @return The report
+    */
+   public String report();
+
+   /**
+    * Check for stalled beans now; stalled beans are reported, and failed if configured
+    * @return The report
+    */
+   public String check();
+}
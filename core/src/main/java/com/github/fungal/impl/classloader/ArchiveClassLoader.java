@@ -44,6 +44,9 @@ class ArchiveClassLoader extends KernelClassLoader
    /** The repository */
    private ExportClassLoaderRepository eclr;
 
+   /** The classes that weren't found */
+   private MissCache misses;
+
    /**
     * Constructor
     * @param id The class loader id
@@ -70,6 +73,7 @@ class ArchiveClassLoader extends KernelClassLoader
       this.id = id;
       this.exportPackages = exportPackages;
       this.eclr = eclr;
+      this.misses = new MissCache();
    }
 
    /**
@@ -81,6 +85,15 @@ class ArchiveClassLoader extends KernelClassLoader
       return id;
    }
 
+   /**
+    * Get the cache of the classes that weren't found
+    * @return The cache
+    */
+   MissCache getMissCache()
+   {
+      return misses;
+   }
+
    /**
     * Add an import classloader
     * @param id The identifier
@@ -101,6 +114,30 @@ class ArchiveClassLoader extends KernelClassLoader
    {
       // Don't call super.loadClass(String) as it is done in ExportClassLoader
 
+      if (misses.contains(name))
+         throw new ClassNotFoundException("Unable to load class: " + name);
+
+      long generation = misses.getGeneration();
+
+      try
+      {
+         return load(name);
+      }
+      catch (ClassNotFoundException cnfe)
+      {
+         misses.add(name, generation);
+         throw cnfe;
+      }
+   }
+
+   /**
+    * Load a class
+    * @param name The fully qualified class name
+    * @return The class
+    * @exception ClassNotFoundException If the class could not be found
+    */
+   private Class<?> load(String name) throws ClassNotFoundException
+   {
       if (isClassRegistered(name))
       {
          return loadClass(name, false);
@@ -146,6 +183,10 @@ class ArchiveClassLoader extends KernelClassLoader
     */
    public Class<?> lookup(String name) throws ClassNotFoundException
    {
+      // A lookup is a subset of loadClass(String), so its misses apply
+      if (misses.contains(name))
+         throw new ClassNotFoundException("Unable to load class: " + name);
+
       return loadClass(name, false);
    }
 
@@ -274,6 +315,10 @@ class ArchiveClassLoader extends KernelClassLoader
 
       sb = sb.append("ExportClassLoaderRepository=");
       sb = sb.append(Integer.toHexString(System.identityHashCode(eclr)));
+      sb = sb.append(",");
+
+      sb = sb.append("MissCache=");
+      sb = sb.append(misses);
 
       sb = sb.append("]");
 
@@ -51,6 +51,14 @@ class ChildrenClassLoader extends URLClassLoader
    @Override
    public Class<?> loadClass(String name) throws ClassNotFoundException
    {
+      // The delegate searches the same class loaders, so its misses apply
+      MissCache misses = delegate.getMissCache();
+
+      if (misses.contains(name))
+         throw new ClassNotFoundException("Unable to load class: " + name);
+
+      long generation = misses.getGeneration();
+
       try
       {
          return super.loadClass(name);
@@ -60,7 +68,15 @@ class ChildrenClassLoader extends URLClassLoader
          // Default to delegate
       }
 
-      return delegate.loadClass(name, false);
+      try
+      {
+         return delegate.loadClass(name, false);
+      }
+      catch (ClassNotFoundException cnfe)
+      {
+         misses.add(name, generation);
+         throw cnfe;
+      }
    }
 
    /**
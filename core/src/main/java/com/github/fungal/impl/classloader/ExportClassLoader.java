@@ -20,6 +20,7 @@
 
 package com.github.fungal.impl.classloader;
 
+import com.github.fungal.api.SharedResources;
 import com.github.fungal.api.classloading.KernelClassLoader;
 
 import java.io.IOException;
@@ -43,16 +44,35 @@ public class ExportClassLoader extends KernelClassLoader
    /** Class Loaders */
    private Set<Integer> classLoaders;
 
+   /** The classes that weren't found */
+   private MissCache classMisses;
+
+   /** The resources that weren't found */
+   private MissCache resourceMisses;
+
    /**
     * Constructor
     * @param urls The URLs for JAR archives or directories
     * @param parent The parent class loader
     */
    public ExportClassLoader(URL[] urls, ClassLoader parent)
+   {
+      this(urls, parent, null);
+   }
+
+   /**
+    * Constructor
+    * @param urls The URLs for JAR archives or directories
+    * @param parent The parent class loader
+    * @param sharedResources The resources shared with other kernels; may be <code>null</code>
+    */
+   public ExportClassLoader(URL[] urls, ClassLoader parent, SharedResources sharedResources)
    {
       super(new URL[0], parent);
 
-      this.eclr = new ExportClassLoaderRepository();
+      this.eclr = new ExportClassLoaderRepository(sharedResources);
+      this.classMisses = new MissCache();
+      this.resourceMisses = new MissCache();
 
       if (urls != null)
       {
@@ -71,7 +91,32 @@ public class ExportClassLoader extends KernelClassLoader
       if (result != null)
          return result;
 
-      if (classLoaders != null)
+      if (classMisses.contains(name))
+         throw new ClassNotFoundException("Unable to load class: " + name);
+
+      long generation = classMisses.getGeneration();
+
+      // Exported packages are routed to the archives exporting the highest version
+      ArchiveClassLoader[] route = eclr.getRoute(name);
+
+      if (route != null)
+      {
+         for (ArchiveClassLoader acl : route)
+         {
+            try
+            {
+               result = acl.loadClass(name);
+
+               if (result != null)
+                  return result;
+            }
+            catch (ClassNotFoundException cnfe)
+            {
+               // Ignore
+            }
+         }
+      }
+      else if (classLoaders != null)
       {
          for (Integer id : classLoaders)
          {
@@ -106,7 +151,15 @@ public class ExportClassLoader extends KernelClassLoader
          // Ignore
       }
 
-      return loadClass(name, false);
+      try
+      {
+         return loadClass(name, false);
+      }
+      catch (ClassNotFoundException cnfe)
+      {
+         classMisses.add(name, generation);
+         throw cnfe;
+      }
    }
 
    /**
@@ -115,6 +168,10 @@ public class ExportClassLoader extends KernelClassLoader
    @Override
    public URL getResource(String name)
    {
+      if (resourceMisses.contains(name))
+         return null;
+
+      long generation = resourceMisses.getGeneration();
       URL resource = null;
 
       if (classLoaders != null)
@@ -138,7 +195,12 @@ public class ExportClassLoader extends KernelClassLoader
       if (resource != null)
          return resource;
 
-      return super.getResource(name);
+      resource = super.getResource(name);
+
+      if (resource == null)
+         resourceMisses.add(name, generation);
+
+      return resource;
    }
 
    /**
@@ -147,6 +209,10 @@ public class ExportClassLoader extends KernelClassLoader
    @Override
    public InputStream getResourceAsStream(String name)
    {
+      if (resourceMisses.contains(name))
+         return null;
+
+      long generation = resourceMisses.getGeneration();
       InputStream is = null;
 
       if (classLoaders != null)
@@ -170,7 +236,32 @@ public class ExportClassLoader extends KernelClassLoader
       if (is != null)
          return is;
 
-      return super.getResourceAsStream(name);
+      is = super.getResourceAsStream(name);
+
+      if (is == null)
+         resourceMisses.add(name, generation);
+
+      return is;
+   }
+
+   /**
+    * Get the number of class and resource lookups that were answered by the caches of the
+    * names that weren't found, instead of searching the archives
+    * @return The value
+    */
+   public long getMissCacheHits()
+   {
+      return classMisses.getHitCount() + resourceMisses.getHitCount() + eclr.getMissCacheHits();
+   }
+
+   /**
+    * Get the number of class and resource lookups that weren't found, and were recorded
+    * in the caches
+    * @return The value
+    */
+   public long getMissCacheMisses()
+   {
+      return classMisses.getMissCount() + resourceMisses.getMissCount() + eclr.getMissCacheMisses();
    }
 
    /**
@@ -398,6 +489,8 @@ public class ExportClassLoader extends KernelClassLoader
       sb.append("ExportClassLoader@").append(Integer.toHexString(System.identityHashCode(this)));
       sb.append("[ExportClassLoaderRepository=").append(eclr);
       sb.append(", ClassLoaders=").append(classLoaders);
+      sb.append(", ClassMisses=").append(classMisses);
+      sb.append(", ResourceMisses=").append(resourceMisses);
       sb.append("]");
 
       return sb.toString();
@@ -20,6 +20,8 @@
 
 package com.github.fungal.impl.classloader;
 
+import com.github.fungal.api.SharedResources;
+
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
@@ -59,15 +61,25 @@ class ExportClassLoaderRepository
    /** Package + Version mapping */
    private ConcurrentMap<String, SortedMap<String, Set<Integer>>> packages;
 
+   /** Package routes; the class loaders exporting the highest version of the package */
+   private ConcurrentMap<String, ArchiveClassLoader[]> routes;
+
+   /** Shared resources; may be <code>null</code> */
+   private SharedResources sharedResources;
+
    /**
     * Constructor
+    * @param sharedResources The resources shared with other kernels; may be <code>null</code>
     */
-   ExportClassLoaderRepository()
+   ExportClassLoaderRepository(SharedResources sharedResources)
    {
+      this.sharedResources = sharedResources;
+
       nonExportClassLoader = SecurityActions.createNonExportClassLoader(this);
       idCounter = new AtomicInteger(0);
       classLoaders = new ConcurrentHashMap<Integer, ArchiveClassLoader>();
       packages = new ConcurrentHashMap<String, SortedMap<String, Set<Integer>>>();
+      routes = new ConcurrentHashMap<String, ArchiveClassLoader[]>();
    }
 
    /**
@@ -109,6 +121,17 @@ class ExportClassLoaderRepository
       return null;
    }
 
+   /**
+    * Get the route for a class
+    * @param clz The fully qualified class name
+    * @return The class loaders exporting the highest version of the package of the class;
+    *         <code>null</code> if the package isn't exported
+    */
+   ArchiveClassLoader[] getRoute(String clz)
+   {
+      return routes.get(getPackageName(clz));
+   }
+
    /**
     * Get archive class loaders
     * @return The class loaders
@@ -159,9 +182,19 @@ class ExportClassLoaderRepository
 
                if (f.isFile())
                {
-                  jarFile = new JarFile(f);
+                  Manifest manifest = null;
+
+                  // The manifest is only read once if the archive is shared with other kernels
+                  if (sharedResources != null)
+                  {
+                     manifest = sharedResources.getManifest(f);
+                  }
+                  else
+                  {
+                     jarFile = new JarFile(f);
+                     manifest = jarFile.getManifest();
+                  }
 
-                  Manifest manifest = jarFile.getManifest();
                   if (manifest != null)
                   {
                      Attributes mainAttributes = manifest.getMainAttributes();
@@ -313,6 +346,11 @@ class ExportClassLoaderRepository
 
                         classLoaders.put(acl.getId(), acl);
 
+                        for (String s : exportPackages)
+                        {
+                           route(s);
+                        }
+
                         if (result == null)
                            result = new HashSet<Integer>();
 
@@ -390,9 +428,81 @@ class ExportClassLoaderRepository
          }
       }
 
+      // The new bundles may export, or import, classes that were missed before
+      clearMissCaches();
+
+      return result;
+   }
+
+   /**
+    * Clear the caches of the classes that weren't found
+    */
+   void clearMissCaches()
+   {
+      nonExportClassLoader.clearMissCaches();
+
+      for (ArchiveClassLoader acl : classLoaders.values())
+      {
+         acl.getMissCache().clear();
+      }
+   }
+
+   /**
+    * Get the number of lookups answered by the caches of the classes that weren't found
+    * @return The value
+    */
+   long getMissCacheHits()
+   {
+      long result = nonExportClassLoader.getMissCacheHits();
+
+      for (ArchiveClassLoader acl : classLoaders.values())
+      {
+         result += acl.getMissCache().getHitCount();
+      }
+
+      return result;
+   }
+
+   /**
+    * Get the number of misses recorded in the caches of the classes that weren't found
+    * @return The value
+    */
+   long getMissCacheMisses()
+   {
+      long result = nonExportClassLoader.getMissCacheMisses();
+
+      for (ArchiveClassLoader acl : classLoaders.values())
+      {
+         result += acl.getMissCache().getMissCount();
+      }
+
       return result;
    }
 
+   /**
+    * Update the route for a package
+    * @param pkg The package name
+    */
+   private void route(String pkg)
+   {
+      SortedMap<String, Set<Integer>> sm = packages.get(pkg);
+
+      if (sm == null)
+         return;
+
+      List<ArchiveClassLoader> l = new ArrayList<ArchiveClassLoader>(1);
+
+      for (Integer id : sm.get(sm.lastKey()))
+      {
+         ArchiveClassLoader acl = classLoaders.get(id);
+
+         if (acl != null)
+            l.add(acl);
+      }
+
+      routes.put(pkg, l.toArray(new ArchiveClassLoader[l.size()]));
+   }
+
    /**
     * Get the package name for a class
     * @param name The fully qualified class name
@@ -423,6 +533,7 @@ class ExportClassLoaderRepository
       sb.append(", IdCounter=").append(idCounter);
       sb.append(", ClassLoaders=").append(classLoaders);
       sb.append(", Packages=").append(packages);
+      sb.append(", Routes=").append(routes.keySet());
       sb.append("]");
 
       return sb.toString();
@@ -0,0 +1,178 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.impl.classloader;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the names that a class loader failed to find, such that repeated
+ * lookups of missing classes and resources don't scan the archives again.
+ *
+ * The cache is cleared when it is full, or when the class loader changes. A miss is only
+ * recorded if the class loader didn't change during the lookup
+ *
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+class MissCache
+{
+   /** The default maximum number of names */
+   static final int DEFAULT_MAX_SIZE = 1024;
+
+   /** The maximum number of names */
+   private int maxSize;
+
+   /** The names */
+   private ConcurrentMap<String, Boolean> names;
+
+   /** The generation; incremented on each invalidation */
+   private AtomicLong generation;
+
+   /** Hits */
+   private AtomicLong hits;
+
+   /** Misses */
+   private AtomicLong misses;
+
+   /**
+    * Constructor
+    */
+   MissCache()
+   {
+      this(DEFAULT_MAX_SIZE);
+   }
+
+   /**
+    * Constructor
+    * @param maxSize The maximum number of names
+    */
+   MissCache(int maxSize)
+   {
+      if (maxSize <= 0)
+         throw new IllegalArgumentException("MaxSize must be positive");
+
+      this.maxSize = maxSize;
+      this.names = new ConcurrentHashMap<String, Boolean>();
+      this.generation = new AtomicLong(0L);
+      this.hits = new AtomicLong(0L);
+      this.misses = new AtomicLong(0L);
+   }
+
+   /**
+    * Is the name a known miss
+    * @param name The name
+    * @return True if the name was missed before; otherwise false
+    */
+   boolean contains(String name)
+   {
+      if (name != null && names.containsKey(name))
+      {
+         hits.incrementAndGet();
+         return true;
+      }
+
+      return false;
+   }
+
+   /**
+    * Get the generation, which must be obtained before the lookup starts
+    * @return The value
+    */
+   long getGeneration()
+   {
+      return generation.get();
+   }
+
+   /**
+    * Record a miss
+    * @param name The name
+    * @param gen The generation obtained before the lookup started
+    */
+   void add(String name, long gen)
+   {
+      if (name == null)
+         return;
+
+      misses.incrementAndGet();
+
+      if (names.size() >= maxSize)
+         names.clear();
+
+      names.put(name, Boolean.TRUE);
+
+      // The class loader changed during the lookup, so the miss may be stale
+      if (generation.get() != gen)
+         names.remove(name);
+   }
+
+   /**
+    * Invalidate the cache
+    */
+   void clear()
+   {
+      generation.incrementAndGet();
+      names.clear();
+   }
+
+   /**
+    * Get the number of names
+    * @return The value
+    */
+   int size()
+   {
+      return names.size();
+   }
+
+   /**
+    * Get the number of lookups answered by the cache
+    * @return The value
+    */
+   long getHitCount()
+   {
+      return hits.get();
+   }
+
+   /**
+    * Get the number of misses recorded
+    * @return The value
+    */
+   long getMissCount()
+   {
+      return misses.get();
+   }
+
+   /**
+    * String representation
+    * @return The string
+    */
+   @Override
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder("MissCache[");
+      sb = sb.append("MaxSize=" + maxSize + ",");
+      sb = sb.append("Size=" + names.size() + ",");
+      sb = sb.append("Hits=" + hits.get() + ",");
+      sb = sb.append("Misses=" + misses.get());
+      sb = sb.append("]");
+      return sb.toString();
+   }
+}
@@ -34,6 +34,12 @@ class NonExportClassLoader extends KernelClassLoader
    /** The repository */
    private ExportClassLoaderRepository eclr;
 
+   /** The classes that weren't found by loadClass(String) */
+   private MissCache classMisses;
+
+   /** The classes that weren't found by findClass(String) */
+   private MissCache findMisses;
+
    /**
     * Constructor
     * @param eclr The repository
@@ -57,6 +63,8 @@ class NonExportClassLoader extends KernelClassLoader
          throw new IllegalArgumentException("ECLR is null");
 
       this.eclr = eclr;
+      this.classMisses = new MissCache();
+      this.findMisses = new MissCache();
    }
 
    /**
@@ -70,6 +78,11 @@ class NonExportClassLoader extends KernelClassLoader
    {
       // Don't call super.loadClass(String) as it is done in ExportClassLoader
 
+      if (classMisses.contains(name))
+         throw new ClassNotFoundException("Unable to load class: " + name);
+
+      long generation = classMisses.getGeneration();
+
       try
       {
          return loadClass(name, false);
@@ -91,6 +104,7 @@ class NonExportClassLoader extends KernelClassLoader
             }
          }
 
+         classMisses.add(name, generation);
          throw cnfe;
       }
    }
@@ -103,6 +117,10 @@ class NonExportClassLoader extends KernelClassLoader
     */
    public Class<?> lookup(String name) throws ClassNotFoundException
    {
+      // A lookup is a subset of loadClass(String), so its misses apply
+      if (classMisses.contains(name))
+         throw new ClassNotFoundException("Unable to load class: " + name);
+
       try
       {
          return loadClass(name, false);
@@ -137,6 +155,11 @@ class NonExportClassLoader extends KernelClassLoader
    @Override
    public Class<?> findClass(String name) throws ClassNotFoundException
    {
+      if (findMisses.contains(name))
+         throw new ClassNotFoundException("Unable to load class: " + name);
+
+      long generation = findMisses.getGeneration();
+
       try
       {
          return super.findClass(name);
@@ -163,6 +186,7 @@ class NonExportClassLoader extends KernelClassLoader
          }
       }
 
+      findMisses.add(name, generation);
       throw new ClassNotFoundException("Unable to load class: " + name);
    }
 
@@ -173,6 +197,36 @@ class NonExportClassLoader extends KernelClassLoader
    public synchronized void addURL(URL url)
    {
       super.addURL(url);
+
+      // The new archive may contain classes that were missed before
+      clearMissCaches();
+   }
+
+   /**
+    * Clear the caches of the classes that weren't found
+    */
+   void clearMissCaches()
+   {
+      classMisses.clear();
+      findMisses.clear();
+   }
+
+   /**
+    * Get the number of lookups answered by the caches of the classes that weren't found
+    * @return The value
+    */
+   long getMissCacheHits()
+   {
+      return classMisses.getHitCount() + findMisses.getHitCount();
+   }
+
+   /**
+    * Get the number of misses recorded in the caches of the classes that weren't found
+    * @return The value
+    */
+   long getMissCacheMisses()
+   {
+      return classMisses.getMissCount() + findMisses.getMissCount();
    }
 
    /**
@@ -186,6 +240,8 @@ class NonExportClassLoader extends KernelClassLoader
 
       sb.append("NonExportClassLoader@").append(Integer.toHexString(System.identityHashCode(this)));
       sb.append("[Eclr=").append(Integer.toHexString(System.identityHashCode(eclr)));
+      sb.append(", ClassMisses=").append(classMisses);
+      sb.append(", FindMisses=").append(findMisses);
       sb.append("]");
 
       return sb.toString();
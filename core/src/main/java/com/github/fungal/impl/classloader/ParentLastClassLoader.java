@@ -39,6 +39,12 @@ public class ParentLastClassLoader extends KernelClassLoader
    /** Children class loader */
    private ChildrenClassLoader children;
 
+   /** The classes that weren't found */
+   private MissCache classMisses;
+
+   /** The resources that weren't found */
+   private MissCache resourceMisses;
+
    /**
     * Constructor
     * @param urls The URLs for JAR archives or directories
@@ -48,6 +54,8 @@ public class ParentLastClassLoader extends KernelClassLoader
    {
       super(new URL[0], parent);
 
+      this.classMisses = new MissCache();
+      this.resourceMisses = new MissCache();
       this.children = SecurityActions.createChildrenClassLoader(urls, ClassLoader.getSystemClassLoader(), this);
    }
 
@@ -62,6 +70,11 @@ public class ParentLastClassLoader extends KernelClassLoader
       if (result != null)
          return result;
 
+      if (classMisses.contains(name))
+         throw new ClassNotFoundException("Unable to load class: " + name);
+
+      long generation = classMisses.getGeneration();
+
       try
       {
          return children.loadClass(name);
@@ -75,7 +88,15 @@ public class ParentLastClassLoader extends KernelClassLoader
          // Default to parent
       }
 
-      return loadClass(name, false);
+      try
+      {
+         return loadClass(name, false);
+      }
+      catch (ClassNotFoundException cnfe)
+      {
+         classMisses.add(name, generation);
+         throw cnfe;
+      }
    }
 
    /**
@@ -105,6 +126,15 @@ public class ParentLastClassLoader extends KernelClassLoader
       return super.findClass(name);
    }
 
+   /**
+    * Get the cache of the classes that weren't found
+    * @return The cache
+    */
+   MissCache getMissCache()
+   {
+      return classMisses;
+   }
+
    /**
     * Lookup a class
     * @param name The fullt qualified class name
@@ -122,12 +152,21 @@ public class ParentLastClassLoader extends KernelClassLoader
    @Override
    public URL getResource(String name)
    {
+      if (resourceMisses.contains(name))
+         return null;
+
+      long generation = resourceMisses.getGeneration();
       URL resource = children.getResource(name);
 
       if (resource != null)
          return resource;
 
-      return super.getResource(name);
+      resource = super.getResource(name);
+
+      if (resource == null)
+         resourceMisses.add(name, generation);
+
+      return resource;
    }
 
    /**
@@ -136,12 +175,41 @@ public class ParentLastClassLoader extends KernelClassLoader
    @Override
    public InputStream getResourceAsStream(String name)
    {
+      if (resourceMisses.contains(name))
+         return null;
+
+      long generation = resourceMisses.getGeneration();
       InputStream is = children.getResourceAsStream(name);
 
       if (is != null)
          return is;
 
-      return super.getResourceAsStream(name);
+      is = super.getResourceAsStream(name);
+
+      if (is == null)
+         resourceMisses.add(name, generation);
+
+      return is;
+   }
+
+   /**
+    * Get the number of class and resource lookups that were answered by the caches of the
+    * names that weren't found, instead of searching the archives
+    * @return The value
+    */
+   public long getMissCacheHits()
+   {
+      return classMisses.getHitCount() + resourceMisses.getHitCount();
+   }
+
+   /**
+    * Get the number of class and resource lookups that weren't found, and were recorded
+    * in the caches
+    * @return The value
+    */
+   public long getMissCacheMisses()
+   {
+      return classMisses.getMissCount() + resourceMisses.getMissCount();
    }
 
    /**
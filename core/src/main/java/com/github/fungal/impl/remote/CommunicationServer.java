@@ -30,6 +30,7 @@ import java.net.Socket;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -164,13 +165,29 @@ public class CommunicationServer implements Runnable
    {
       while (running.get())
       {
+         Socket socket = null;
          try
          {
-            Socket socket = ss.accept();
+            socket = ss.accept();
 
             Runnable r = new Communication(this, socket);
             kernel.getExecutorService().submit(r);
          }
+         catch (RejectedExecutionException ree)
+         {
+            log.warning("Remote connection from " + socket.getRemoteSocketAddress() +
+                        " rejected by the thread pool");
+
+            try
+            {
+               socket.close();
+            }
+            catch (IOException ioe)
+            {
+               if (log.isLoggable(Level.FINE))
+                  log.fine(ioe.getMessage());
+            }
+         }
          catch (IOException ioe)
          {
             if (log.isLoggable(Level.FINE))
@@ -0,0 +1,37 @@
+/*
+ * The Fungal kernel project
+ * Copyright (C) 2011
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package com.github.fungal.spi.deployers;
+
+/**
+ * Limits the deployer phases to deployments matching URL patterns
+ * @author <a href="mailto:jesper.pedersen@comcast.net">Jesper Pedersen</a>
+ */
+public interface DeployerPhasesFilter
+{
+   /**
+    * Get the URL patterns for the deployments that the deployer phases should
+    * be called for. The patterns are regular expressions matched against the
+    * full URL of the deployment. The phases that span several deployments,
+    * like the kernel startup, are always called
+    * @return The patterns
+    */
+   public String[] getUrlPatterns();
+}